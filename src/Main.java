@@ -1,10 +1,19 @@
+import java.io.IOException;
+import server.ApiServer;
 import view.SocialAppSwing;
 import javax.swing.SwingUtilities;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         System.out.println("Iniciando Sistema de Rede Social...\n");
 
+        // --server [porta]: só a API HTTP, sem interface gráfica
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : ApiServer.DEFAULT_PORT;
+            ApiServer.launch(port); // A thread do HttpServer mantém o processo vivo
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> {
             new SocialAppSwing();
         });
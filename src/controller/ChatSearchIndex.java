@@ -0,0 +1,451 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.UUID;
+import model.GroupMessage;
+
+/*
+ * Índice invertido das mensagens de um grupo. Cada mensagem recebe um número
+ * de documento crescente e cada termo guarda os documentos e as posições em
+ * que aparece, o que permite buscas por termo, por prefixo (termo*) e por
+ * frase ("entre aspas"). Todas as partes da consulta precisam casar; os
+ * resultados são ordenados por relevância (BM25) e, no empate, pelas mais
+ * recentes. Mensagens apagadas ou editadas ficam marcadas até a próxima
+ * reconstrução, feita quando passam a ser maioria; enquanto isso, cada termo
+ * conta à parte quantos dos seus documentos continuam valendo, e é essa
+ * contagem que entra no BM25.
+ */
+class ChatSearchIndex {
+    private static final int MIN_REBUILD_SIZE = 64;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    private final List<GroupMessage> docs = new ArrayList<>();
+    private int[] docLengths = new int[16];
+    // Termos distintos de cada documento, para descontar os apagados
+    private final List<Postings[]> docTerms = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<UUID, Integer> docByMessage = new HashMap<>();
+    private int liveCount;
+    private long liveLength;
+
+    void add(GroupMessage message) {
+        int doc = docs.size();
+        List<String> tokens = Tokenizer.tokenize(message.getContent());
+        docs.add(message);
+        if (doc == docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, doc * 2);
+        }
+        docLengths[doc] = tokens.size();
+        docByMessage.put(message.getId(), doc);
+        liveCount++;
+        liveLength += tokens.size();
+
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            positions.computeIfAbsent(tokens.get(i), k -> new ArrayList<>()).add(i);
+        }
+        Postings[] docPostings = new Postings[positions.size()];
+        int t = 0;
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            Postings postings = terms.computeIfAbsent(entry.getKey(), k -> new Postings());
+            postings.add(doc, entry.getValue());
+            docPostings[t++] = postings;
+        }
+        docTerms.add(docPostings);
+    }
+
+    boolean remove(UUID messageId) {
+        Integer doc = docByMessage.remove(messageId);
+        if (doc == null) {
+            return false;
+        }
+        deleted.set(doc);
+        for (Postings postings : docTerms.get(doc)) {
+            postings.live--;
+        }
+        liveCount--;
+        liveLength -= docLengths[doc];
+        if (docs.size() >= MIN_REBUILD_SIZE && docs.size() - liveCount > liveCount) {
+            rebuild();
+        }
+        return true;
+    }
+
+    // Reindexa a mensagem depois de uma edição do conteúdo
+    void update(GroupMessage message) {
+        remove(message.getId());
+        add(message);
+    }
+
+    List<GroupMessage> search(String query, int limit) {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        // A parte mais rara gera os candidatos; as demais só são consultadas para eles
+        clauses.sort(Comparator.comparingLong(Clause::estimate));
+        Hits matched = clauses.get(0).evaluate();
+        for (int i = 1; i < clauses.size() && matched.size > 0; i++) {
+            matched = clauses.get(i).restrict(matched);
+        }
+        Hits hits = matched;
+
+        Comparator<Integer> byRelevance = (a, b) -> {
+            int byScore = Double.compare(hits.scores[a], hits.scores[b]);
+            return byScore != 0 ? byScore : docs.get(hits.docs[a]).getSentAt().compareTo(docs.get(hits.docs[b]).getSentAt());
+        };
+        PriorityQueue<Integer> best = new PriorityQueue<>(byRelevance);
+        for (int i = 0; i < hits.size; i++) {
+            best.add(i);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        GroupMessage[] result = new GroupMessage[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = docs.get(hits.docs[best.poll()]);
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /*
+     * Palavras soltas viram termos (ou prefixos quando terminam em *) e
+     * trechos entre aspas viram frases. Palavras que o tokenizador quebra em
+     * várias partes, como "bem-vindo", também são tratadas como frase.
+     */
+    private List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i % 2 == 1 && i < parts.length - 1) {
+                addPhrase(clauses, Tokenizer.tokenize(parts[i]));
+                continue;
+            }
+            for (String word : parts[i].trim().split("\\s+")) {
+                if (word.endsWith("*")) {
+                    List<String> tokens = Tokenizer.tokenize(word);
+                    if (!tokens.isEmpty()) {
+                        addPhrase(clauses, tokens.subList(0, tokens.size() - 1));
+                        clauses.add(new PrefixClause(tokens.get(tokens.size() - 1)));
+                    }
+                } else {
+                    addPhrase(clauses, Tokenizer.tokenize(word));
+                }
+            }
+        }
+        return clauses;
+    }
+
+    private void addPhrase(List<Clause> clauses, List<String> tokens) {
+        if (tokens.size() == 1) {
+            clauses.add(new TermClause(tokens.get(0)));
+        } else if (tokens.size() > 1) {
+            clauses.add(new PhraseClause(tokens));
+        }
+    }
+
+    private double score(Postings postings, int index) {
+        int df = postings.live;
+        double idf = Math.log(1 + (liveCount - df + 0.5) / (df + 0.5));
+        int tf = postings.frequency(index);
+        double averageLength = liveCount > 0 ? (double) liveLength / liveCount : 1;
+        double norm = K1 * (1 - B + B * docLengths[postings.docs[index]] / averageLength);
+        return idf * tf * (K1 + 1) / (tf + norm);
+    }
+
+    private Hits termHits(Postings postings) {
+        int size = postings != null ? postings.size : 0;
+        Hits hits = new Hits(size);
+        for (int i = 0; i < size; i++) {
+            if (!deleted.get(postings.docs[i])) {
+                hits.add(postings.docs[i], score(postings, i));
+            }
+        }
+        return hits;
+    }
+
+    // Mantém os candidatos que contêm o termo, somando a pontuação dele
+    private Hits probe(Postings postings, Hits candidates) {
+        Hits result = new Hits(candidates.size);
+        if (postings == null) {
+            return result;
+        }
+        int from = 0;
+        for (int i = 0; i < candidates.size && from < postings.size; i++) {
+            int index = Arrays.binarySearch(postings.docs, from, postings.size, candidates.docs[i]);
+            if (index >= 0) {
+                result.add(candidates.docs[i], candidates.scores[i] + score(postings, index));
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+        }
+        return result;
+    }
+
+    private void rebuild() {
+        List<GroupMessage> live = new ArrayList<>(liveCount);
+        for (int doc = deleted.nextClearBit(0); doc < docs.size(); doc = deleted.nextClearBit(doc + 1)) {
+            live.add(docs.get(doc));
+        }
+        terms.clear();
+        docs.clear();
+        docTerms.clear();
+        deleted.clear();
+        docByMessage.clear();
+        liveCount = 0;
+        liveLength = 0;
+        for (GroupMessage message : live) {
+            add(message);
+        }
+    }
+
+    private interface Clause {
+        // Número aproximado de documentos que casam, usado para ordenar as partes da consulta
+        long estimate();
+
+        Hits evaluate();
+
+        default Hits restrict(Hits candidates) {
+            return candidates.intersect(evaluate());
+        }
+    }
+
+    private class TermClause implements Clause {
+        private final String term;
+
+        private TermClause(String term) {
+            this.term = term;
+        }
+
+        @Override
+        public long estimate() {
+            Postings postings = terms.get(term);
+            return postings != null ? postings.live : 0;
+        }
+
+        @Override
+        public Hits evaluate() {
+            return termHits(terms.get(term));
+        }
+
+        @Override
+        public Hits restrict(Hits candidates) {
+            return probe(terms.get(term), candidates);
+        }
+    }
+
+    private class PrefixClause implements Clause {
+        private final String prefix;
+
+        private PrefixClause(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public long estimate() {
+            long total = 0;
+            for (Postings postings : matchingTerms()) {
+                total += postings.live;
+            }
+            return total;
+        }
+
+        // Soma as pontuações de todos os termos com o prefixo, unindo as listas duas a duas
+        @Override
+        public Hits evaluate() {
+            List<Hits> lists = new ArrayList<>();
+            for (Postings postings : matchingTerms()) {
+                lists.add(termHits(postings));
+            }
+            if (lists.isEmpty()) {
+                return new Hits(0);
+            }
+            while (lists.size() > 1) {
+                List<Hits> merged = new ArrayList<>((lists.size() + 1) / 2);
+                for (int i = 0; i < lists.size(); i += 2) {
+                    merged.add(i + 1 < lists.size() ? lists.get(i).union(lists.get(i + 1)) : lists.get(i));
+                }
+                lists = merged;
+            }
+            return lists.get(0);
+        }
+
+        private Collection<Postings> matchingTerms() {
+            return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+        }
+    }
+
+    private class PhraseClause implements Clause {
+        private final List<String> tokens;
+
+        private PhraseClause(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public long estimate() {
+            long rarest = Long.MAX_VALUE;
+            for (String token : tokens) {
+                Postings postings = terms.get(token);
+                rarest = Math.min(rarest, postings != null ? postings.live : 0);
+            }
+            return rarest;
+        }
+
+        @Override
+        public Hits evaluate() {
+            Postings rarest = null;
+            for (String token : tokens) {
+                Postings postings = terms.get(token);
+                if (postings == null) {
+                    return new Hits(0);
+                }
+                if (rarest == null || postings.size < rarest.size) {
+                    rarest = postings;
+                }
+            }
+            return restrict(termHits(rarest), rarest);
+        }
+
+        @Override
+        public Hits restrict(Hits candidates) {
+            return restrict(candidates, null);
+        }
+
+        // Cruza os candidatos com cada termo (exceto skip, já contado) e confere as posições
+        private Hits restrict(Hits candidates, Postings skip) {
+            Postings[] postings = new Postings[tokens.size()];
+            for (int k = 0; k < postings.length; k++) {
+                postings[k] = terms.get(tokens.get(k));
+                if (postings[k] != skip) {
+                    candidates = probe(postings[k], candidates);
+                }
+            }
+
+            Hits phrases = new Hits(candidates.size);
+            for (int i = 0; i < candidates.size; i++) {
+                if (containsPhrase(postings, candidates.docs[i])) {
+                    phrases.add(candidates.docs[i], candidates.scores[i]);
+                }
+            }
+            return phrases;
+        }
+
+        private boolean containsPhrase(Postings[] postings, int doc) {
+            int[] indexes = new int[postings.length];
+            for (int k = 0; k < postings.length; k++) {
+                indexes[k] = Arrays.binarySearch(postings[k].docs, 0, postings[k].size, doc);
+            }
+            Postings first = postings[0];
+            for (int p = first.positionStart[indexes[0]]; p < first.positionStart[indexes[0] + 1]; p++) {
+                int start = first.positions[p];
+                boolean match = true;
+                for (int k = 1; k < postings.length && match; k++) {
+                    Postings next = postings[k];
+                    match = Arrays.binarySearch(next.positions, next.positionStart[indexes[k]],
+                        next.positionStart[indexes[k] + 1], start + k) >= 0;
+                }
+                if (match) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Documentos (crescentes) de um termo e, para cada um, as posições em que ele aparece
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int[] positionStart = new int[5];
+        private int[] positions = new int[4];
+        private int size;
+        // Documentos da lista que não foram apagados
+        private int live;
+
+        private void add(int doc, List<Integer> docPositions) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, docs.length * 2);
+                positionStart = Arrays.copyOf(positionStart, docs.length + 1);
+            }
+            int offset = positionStart[size];
+            if (offset + docPositions.size() > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, offset + docPositions.size()));
+            }
+            for (int position : docPositions) {
+                positions[offset++] = position;
+            }
+            docs[size++] = doc;
+            positionStart[size] = offset;
+            live++;
+        }
+
+        private int frequency(int index) {
+            return positionStart[index + 1] - positionStart[index];
+        }
+    }
+
+    // Documentos em ordem crescente com a pontuação acumulada de cada um
+    private static class Hits {
+        private int[] docs;
+        private double[] scores;
+        private int size;
+
+        private Hits(int capacity) {
+            docs = new int[Math.max(capacity, 1)];
+            scores = new double[docs.length];
+        }
+
+        private void add(int doc, double score) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            docs[size] = doc;
+            scores[size++] = score;
+        }
+
+        private Hits intersect(Hits other) {
+            Hits result = new Hits(Math.min(size, other.size));
+            for (int i = 0, j = 0; i < size && j < other.size; ) {
+                if (docs[i] < other.docs[j]) {
+                    i++;
+                } else if (docs[i] > other.docs[j]) {
+                    j++;
+                } else {
+                    result.add(docs[i], scores[i++] + other.scores[j++]);
+                }
+            }
+            return result;
+        }
+
+        private Hits union(Hits other) {
+            Hits result = new Hits(size + other.size);
+            int i = 0;
+            int j = 0;
+            while (i < size || j < other.size) {
+                if (j == other.size || (i < size && docs[i] < other.docs[j])) {
+                    result.add(docs[i], scores[i++]);
+                } else if (i == size || docs[i] > other.docs[j]) {
+                    result.add(other.docs[j], other.scores[j++]);
+                } else {
+                    result.add(docs[i], scores[i++] + other.scores[j++]);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -2,21 +2,53 @@ package controller;
 
 import model.Event;
 import model.User;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
 import java.util.UUID;
 import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-public class EventController {
-    private List<Event> events;
+/*
+ * Concorrência: criar, editar e apagar um evento rodam com a faixa de lock
+ * do evento, que também cobre o registro no journal (a espera pelo disco
+ * fica para depois de soltá-la). O índice por data é um mapa
+ * ordenado concorrente, então as consultas por período não pegam lock; uma
+ * remarcação tira e põe a chave do evento, e uma consulta simultânea pode
+ * ver o evento só na data antiga ou só na nova.
+ */
+public class EventController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 8;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    private static final UUID MIN_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+    private static final UUID MAX_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private MembershipIndex<Event> events;
+    private NavigableMap<TimeKey, Event> eventsByTime; // ordenados por (eventDateTime, id)
     private UserController userController;
+    private Journal journal;
+    private final StripedLocks locks = new StripedLocks();
     
     public EventController(UserController userController) {
-        this.events = new ArrayList<>();
+        this.events = new MembershipIndex<>();
+        this.eventsByTime = new ConcurrentSkipListMap<>();
         this.userController = userController;
     }
     
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+    
 
     public Event createEvent(String name, String description, LocalDateTime eventDateTime, UUID creatorId) {
         if (name == null || name.trim().isEmpty()) {
@@ -45,46 +77,63 @@ public class EventController {
         }
         
         Event event = new Event(name.trim(), description.trim(), eventDateTime, creatorId);
-        events.add(event);
+        locks.withLock(event.getId(), () -> {
+            store(event);
+            journalPut(event);
+        });
+        awaitJournal();
         return event;
     }
 
     public boolean editEvent(UUID eventId, UUID userId, String newName, String newDescription, LocalDateTime newEventDateTime) {
-        Event event = findEventById(eventId);
-        if (event == null) return false;
+        boolean edited = locks.withLock(eventId, () -> {
+            Event event = findEventById(eventId);
+            if (event == null) return false;
 
-        if (!event.getCreatorId().equals(userId)) {
-            return false; // Apenas o criador pode editar
-        }
-        
-        if (newName != null && !newName.trim().isEmpty()) {
-            event.setName(newName.trim());
-        }
-        
-        if (newDescription != null && !newDescription.trim().isEmpty()) {
-            event.setDescription(newDescription.trim());
-        }
-        
-        if (newEventDateTime != null) {
+            if (!event.getCreatorId().equals(userId)) {
+                return false; // Apenas o criador pode editar
+            }
 
-            if (newEventDateTime.isBefore(LocalDateTime.now())) {
-                return false; // Data no passado
+            if (newName != null && !newName.trim().isEmpty()) {
+                event.setName(newName.trim());
             }
-            event.setEventDateTime(newEventDateTime);
-        }
-        
-        return true;
+
+            if (newDescription != null && !newDescription.trim().isEmpty()) {
+                event.setDescription(newDescription.trim());
+            }
+
+            if (newEventDateTime != null) {
+
+                if (newEventDateTime.isBefore(LocalDateTime.now())) {
+                    return false; // Data no passado
+                }
+                reschedule(event, newEventDateTime);
+            }
+
+            journalPut(event);
+            return true;
+        });
+        awaitJournal();
+        return edited;
     }
 
     public boolean deleteEvent(UUID eventId, UUID userId) {
-        Event event = findEventById(eventId);
-        if (event == null) return false;
+        boolean deleted = locks.withLock(eventId, () -> {
+            Event event = findEventById(eventId);
+            if (event == null) return false;
 
-        if (!event.getCreatorId().equals(userId)) {
-            return false; // Apenas o criador pode deletar
-        }
-        
-        return events.remove(event);
+            if (!event.getCreatorId().equals(userId)) {
+                return false; // Apenas o criador pode deletar
+            }
+
+            boolean removed = unstore(event);
+            if (removed) {
+                appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_DELETE).writeUuid(eventId));
+            }
+            return removed;
+        });
+        awaitJournal();
+        return deleted;
     }
 
     public Event getEventById(UUID eventId) {
@@ -97,56 +146,64 @@ public class EventController {
         }
         
         String searchName = name.toLowerCase().trim();
-        return events.stream()
+        return events.all().stream()
             .filter(event -> event.getName().toLowerCase().contains(searchName))
             .collect(Collectors.toList());
     }
 
     public List<Event> getAllEvents() {
-        return new ArrayList<>(events);
+        return events.all();
+    }
+
+    public List<Event> getEventsByMember(UUID userId) {
+        return events.byMember(userId);
     }
 
     public List<Event> getUpcomingEvents() {
+        return getUpcomingEvents(Integer.MAX_VALUE);
+    }
+
+    // Os limit próximos, do mais cedo para o mais tarde
+    public List<Event> getUpcomingEvents(int limit) {
         LocalDateTime now = LocalDateTime.now();
-        return events.stream()
-            .filter(event -> event.getEventDateTime().isAfter(now))
-            .sorted((e1, e2) -> e1.getEventDateTime().compareTo(e2.getEventDateTime()))
-            .collect(Collectors.toList());
+        return first(eventsByTime.tailMap(new TimeKey(now, MAX_ID), false), limit);
     }
 
     public List<Event> getPastEvents() {
+        return getPastEvents(Integer.MAX_VALUE);
+    }
+
+    // Os limit mais recentes, do mais novo para o mais antigo
+    public List<Event> getPastEvents(int limit) {
         LocalDateTime now = LocalDateTime.now();
-        return events.stream()
-            .filter(event -> event.getEventDateTime().isBefore(now))
-            .sorted((e1, e2) -> e2.getEventDateTime().compareTo(e1.getEventDateTime()))
-            .collect(Collectors.toList());
+        return first(eventsByTime.headMap(new TimeKey(now, MIN_ID), false).descendingMap(), limit);
     }
 
     public List<Event> getTodayEvents() {
-        LocalDateTime now = LocalDateTime.now();
-        return events.stream()
-            .filter(event -> event.isToday())
-            .sorted((e1, e2) -> e1.getEventDateTime().compareTo(e2.getEventDateTime()))
-            .collect(Collectors.toList());
+        return getTodayEvents(Integer.MAX_VALUE);
+    }
+
+    public List<Event> getTodayEvents(int limit) {
+        LocalDateTime startOfDay = LocalDateTime.now().toLocalDate().atStartOfDay();
+        return first(from(startOfDay, startOfDay.plusDays(1)), limit);
     }
 
     public List<Event> getTomorrowEvents() {
-        return events.stream()
-            .filter(event -> event.isTomorrow())
-            .sorted((e1, e2) -> e1.getEventDateTime().compareTo(e2.getEventDateTime()))
-            .collect(Collectors.toList());
+        LocalDateTime startOfTomorrow = LocalDateTime.now().toLocalDate().plusDays(1).atStartOfDay();
+        return new ArrayList<>(from(startOfTomorrow, startOfTomorrow.plusDays(1)).values());
     }
 
     public List<Event> getThisWeekEvents() {
-        return events.stream()
-            .filter(event -> event.isThisWeek())
-            .sorted((e1, e2) -> e1.getEventDateTime().compareTo(e2.getEventDateTime()))
-            .collect(Collectors.toList());
+        return getThisWeekEvents(Integer.MAX_VALUE);
+    }
+
+    public List<Event> getThisWeekEvents(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        return first(between(now, now.plusWeeks(1)), limit);
     }
 
     public List<Event> getEventsByCreator(UUID creatorId) {
-        return events.stream()
-            .filter(event -> event.getCreatorId().equals(creatorId))
+        return events.byOwner(creatorId).stream()
             .sorted((e1, e2) -> e2.getCreatedAt().compareTo(e1.getCreatedAt()))
             .collect(Collectors.toList());
     }
@@ -155,11 +212,7 @@ public class EventController {
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime weekFromNow = now.plusWeeks(1);
         
-        return events.stream()
-            .filter(event -> event.getEventDateTime().isAfter(now) && 
-                           event.getEventDateTime().isBefore(weekFromNow))
-            .sorted((e1, e2) -> e1.getEventDateTime().compareTo(e2.getEventDateTime()))
-            .collect(Collectors.toList());
+        return new ArrayList<>(between(now, weekFromNow).values());
     }
 
     public List<Event> getEventsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
@@ -167,15 +220,14 @@ public class EventController {
             return new ArrayList<>();
         }
         
-        return events.stream()
-            .filter(event -> event.getEventDateTime().isAfter(startDate) && 
-                           event.getEventDateTime().isBefore(endDate))
-            .sorted((e1, e2) -> e1.getEventDateTime().compareTo(e2.getEventDateTime()))
-            .collect(Collectors.toList());
+        if (!startDate.isBefore(endDate)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(between(startDate, endDate).values());
     }
 
     public String getEventStats() {
-        if (events.isEmpty()) {
+        if (events.size() == 0) {
             return "Nenhum evento cadastrado";
         }
         
@@ -206,21 +258,168 @@ public class EventController {
     }
 
     private Event findEventById(UUID eventId) {
-        if (eventId == null) return null;
-        
-        for (Event event : events) {
-            if (event.getId().equals(eventId)) {
-                return event;
-            }
-        }
-        return null;
+        return events.get(eventId);
     }
 
     public void clearAllEvents() {
-        events.clear();
+        locks.withAllLocks(() -> {
+            events.clear();
+            eventsByTime.clear();
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_CLEAR));
+        });
+        awaitJournal();
     }
 
     public int getTotalEvents() {
         return events.size();
     }
+
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        switch (op) {
+            case OP_PUT:
+                UUID id = record.readUuid();
+                String name = record.readString();
+                String description = record.readString();
+                LocalDateTime eventDateTime = record.readDateTime();
+                UUID creatorId = record.readUuid();
+                LocalDateTime createdAt = record.readDateTime();
+                Set<UUID> members = record.readUuids();
+                locks.withLock(id, () -> {
+                    Event event = findEventById(id);
+                    if (event == null) {
+                        event = new Event(name, description, eventDateTime, creatorId);
+                        event.setId(id);
+                        store(event);
+                    } else {
+                        event.setName(name);
+                        event.setDescription(description);
+                        reschedule(event, eventDateTime);
+                    }
+                    event.setCreatedAt(createdAt);
+                    event.setMembers(members);
+                });
+                break;
+            case OP_DELETE:
+                UUID deletedId = record.readUuid();
+                locks.withLock(deletedId, () -> {
+                    Event deleted = findEventById(deletedId);
+                    if (deleted != null) {
+                        unstore(deleted);
+                    }
+                });
+                break;
+            case OP_CLEAR:
+                events.clear();
+                eventsByTime.clear();
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        for (Event event : events.all()) {
+            out.accept(putRecord(event));
+        }
+    }
+
+    private void store(Event event) {
+        events.add(event);
+        eventsByTime.put(new TimeKey(event.getEventDateTime(), event.getId()), event);
+    }
+
+    private boolean unstore(Event event) {
+        eventsByTime.remove(new TimeKey(event.getEventDateTime(), event.getId()));
+        return events.remove(event);
+    }
+
+    // Muda a data do evento reposicionando-o no índice por tempo
+    private void reschedule(Event event, LocalDateTime eventDateTime) {
+        eventsByTime.remove(new TimeKey(event.getEventDateTime(), event.getId()));
+        event.setEventDateTime(eventDateTime);
+        eventsByTime.put(new TimeKey(eventDateTime, event.getId()), event);
+    }
+
+    // Eventos com data em (after, before), em ordem cronológica (vista do índice, sem cópia)
+    private NavigableMap<TimeKey, Event> between(LocalDateTime after, LocalDateTime before) {
+        return eventsByTime.subMap(new TimeKey(after, MAX_ID), false, new TimeKey(before, MIN_ID), false);
+    }
+
+    // Eventos com data em [start, end), em ordem cronológica (vista do índice, sem cópia)
+    private NavigableMap<TimeKey, Event> from(LocalDateTime start, LocalDateTime end) {
+        return eventsByTime.subMap(new TimeKey(start, MIN_ID), true, new TimeKey(end, MIN_ID), false);
+    }
+
+    // Copia só os limit primeiros da vista, na ordem dela
+    private static List<Event> first(NavigableMap<TimeKey, Event> range, int limit) {
+        List<Event> found = new ArrayList<>();
+        if (limit <= 0) return found;
+        for (Event event : range.values()) {
+            found.add(event);
+            if (found.size() == limit) break;
+        }
+        return found;
+    }
+
+    private void journalPut(Event event) {
+        appendToJournal(putRecord(event));
+    }
+
+    // Sob a faixa: o registro entra no journal na ordem das escritas, sem esperar o disco
+    private void appendToJournal(RecordWriter record) {
+        if (journal != null) {
+            journal.appendPending(record);
+        }
+    }
+
+    // Depois de soltar a faixa: só então espera o fsync do que foi anexado
+    private void awaitJournal() {
+        if (journal != null) {
+            journal.awaitPending();
+        }
+    }
+
+    private RecordWriter putRecord(Event event) {
+        return new RecordWriter(JOURNAL_SOURCE, OP_PUT)
+            .writeUuid(event.getId())
+            .writeString(event.getName())
+            .writeString(event.getDescription())
+            .writeDateTime(event.getEventDateTime())
+            .writeUuid(event.getCreatorId())
+            .writeDateTime(event.getCreatedAt())
+            .writeUuids(event.getMembers());
+    }
+
+    private static final class TimeKey implements Comparable<TimeKey> {
+        private final LocalDateTime dateTime;
+        private final UUID id;
+
+        private TimeKey(LocalDateTime dateTime, UUID id) {
+            this.dateTime = dateTime;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int byTime = dateTime.compareTo(other.dateTime);
+            return byTime != 0 ? byTime : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TimeKey && compareTo((TimeKey) obj) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * dateTime.hashCode() + id.hashCode();
+        }
+    }
 }
@@ -2,56 +2,107 @@ package controller;
 
 import model.Post;
 import model.User;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 import java.util.Comparator;
 
 public class FeedController {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int CURSOR_BYTES = 32;
+
     private PostController postController;
     private FriendController friendController;
     private UserController userController;
+    private TimelineStore timelineStore;
     
     public FeedController(PostController postController, FriendController friendController, UserController userController) {
         this.postController = postController;
         this.friendController = friendController;
         this.userController = userController;
     }
+    
+    public void setTimelineStore(TimelineStore timelineStore) {
+        this.timelineStore = timelineStore;
+    }
 
     public List<Post> getFriendsFeed(UUID userId) {
-        if (userId == null) return new ArrayList<>();
-
-        List<UUID> friends = new ArrayList<>(friendController.getFriends(userId));
+        return mergeFriendsPosts(userId, Integer.MAX_VALUE, null, null, null, null);
+    }
 
-        if (friends.isEmpty()) {
-            return new ArrayList<>();
+    public List<Post> getFriendsFeed(UUID userId, int limit) {
+        if (timelineStore == null || userId == null || limit > timelineStore.getCapacity()) {
+            return mergeFriendsPosts(userId, limit, null, null, null, null);
         }
 
-        List<Post> friendsPosts = new ArrayList<>();
-        for (UUID friendId : friends) {
-            friendsPosts.addAll(postController.getPostsByUser(friendId));
+        List<UUID> postIds = timelineStore.read(userId, limit);
+        if (postIds == null) {
+            // Timeline ainda não materializada (ou curta demais após remoções);
+            // um post além da capacidade indica que a timeline ficou truncada.
+            // Se um post novo chegar durante a busca, a reconstrução é descartada.
+            long stamp = timelineStore.beginRebuild(userId);
+            List<Post> recent = mergeFriendsPosts(userId, timelineStore.getCapacity() + 1, null, null, null, null);
+            timelineStore.rebuild(userId, stamp, recent);
+            if (recent.size() <= limit) {
+                return recent;
+            }
+            return new ArrayList<>(recent.subList(0, limit));
         }
 
-        friendsPosts.sort(Comparator.comparing(Post::getCreatedAt).reversed());
-        
-        return friendsPosts;
+        List<Post> feed = new ArrayList<>(postIds.size());
+        for (UUID postId : postIds) {
+            Post post = postController.getPostById(postId);
+            // Posts apagados ou de ex-amigos podem aparecer até o reparo em segundo plano terminar
+            if (post != null && friendController.areFriends(userId, post.getUserId())) {
+                feed.add(post);
+            }
+        }
+        return feed;
     }
 
-    public List<Post> getFriendsFeed(UUID userId, int limit) {
-        List<Post> allPosts = getFriendsFeed(userId);
-        if (allPosts.size() <= limit) {
-            return allPosts;
+    /*
+     * Página do feed de amigos. O cursor (opaco para o cliente) guarda a data
+     * e o id do último post entregue; a próxima página começa estritamente
+     * depois dele na ordem (createdAt, id), então posts criados ou apagados
+     * entre as páginas não causam repetições nem saltos. Use null para a
+     * primeira página.
+     */
+    public FeedPage getFriendsFeedPage(UUID userId, int pageSize, String cursor) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("O tamanho da página deve ser positivo");
+        }
+        LocalDateTime before = null;
+        UUID beforeId = null;
+        if (cursor != null) {
+            ByteBuffer key = decodeCursor(cursor);
+            try {
+                before = LocalDateTime.ofEpochSecond(key.getLong(), key.getInt(), ZoneOffset.UTC);
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Cursor de feed inválido", e);
+            }
+            beforeId = new UUID(key.getLong(), key.getLong());
+        }
+
+        // Um post a mais só para saber se existe próxima página
+        List<Post> posts = mergeFriendsPosts(userId, pageSize + 1, null, before, beforeId, null);
+        String nextCursor = null;
+        if (posts.size() > pageSize) {
+            posts = posts.subList(0, pageSize);
+            nextCursor = encodeCursor(posts.get(pageSize - 1));
         }
-        return allPosts.subList(0, limit);
+        return new FeedPage(withAuthorInfo(posts), nextCursor);
     }
 
     public List<Post> getFriendsFeedByType(UUID userId, String postType) {
-        List<Post> friendsPosts = getFriendsFeed(userId);
-        
-        return friendsPosts.stream()
-            .filter(post -> post.getPostType().equalsIgnoreCase(postType))
-            .collect(Collectors.toList());
+        return mergeFriendsPosts(userId, Integer.MAX_VALUE, null, null, null,
+            post -> post.getPostType().equalsIgnoreCase(postType));
     }
 
     public List<Post> getFriendsFeedMostLiked(UUID userId) {
@@ -69,19 +120,11 @@ public class FeedController {
             return new ArrayList<>();
         }
 
-        List<Post> friendPosts = postController.getPostsByUser(friendId);
-
-        friendPosts.sort(Comparator.comparing(Post::getCreatedAt).reversed());
-        
-        return friendPosts;
+        return new ArrayList<>(postController.getPostsByUserNewestFirst(friendId));
     }
 
     public List<Post> getFriendsFeedByDateRange(UUID userId, java.time.LocalDateTime startDate, java.time.LocalDateTime endDate) {
-        List<Post> friendsPosts = getFriendsFeed(userId);
-        
-        return friendsPosts.stream()
-            .filter(post -> post.getCreatedAt().isAfter(startDate) && post.getCreatedAt().isBefore(endDate))
-            .collect(Collectors.toList());
+        return mergeFriendsPosts(userId, Integer.MAX_VALUE, startDate, endDate, null, null);
     }
 
     public List<Post> getFriendsFeedToday(UUID userId) {
@@ -143,7 +186,10 @@ public class FeedController {
     }
 
     public List<FeedPost> getFriendsFeedWithAuthorInfo(UUID userId) {
-        List<Post> friendsPosts = getFriendsFeed(userId);
+        return withAuthorInfo(getFriendsFeed(userId));
+    }
+
+    private List<FeedPost> withAuthorInfo(List<Post> friendsPosts) {
         List<FeedPost> feedPosts = new ArrayList<>();
         
         for (Post post : friendsPosts) {
@@ -155,6 +201,128 @@ public class FeedController {
         return feedPosts;
     }
 
+    /*
+     * Intercala as listas de posts de cada amigo (já ordenadas do mais recente
+     * para o mais antigo) com um heap de cursores, parando após limit posts.
+     * Só são considerados posts criados depois de after e antes de before
+     * (quando informados) e aceitos pelo filtro. Com beforeId, o limite
+     * superior passa a ser a posição (before, beforeId) na ordem CHRONOLOGICAL.
+     */
+    private List<Post> mergeFriendsPosts(UUID userId, int limit, LocalDateTime after, LocalDateTime before,
+            UUID beforeId, Predicate<Post> filter) {
+        List<Post> feed = new ArrayList<>();
+        if (userId == null || limit <= 0) return feed;
+
+        PriorityQueue<AuthorCursor> heap = new PriorityQueue<>();
+        for (UUID friendId : friendController.getFriends(userId)) {
+            List<Post> posts = postController.getPostsByUserNewestFirst(friendId);
+            int start = before != null ? firstOlderThan(posts, before, beforeId) : 0;
+            if (start < posts.size()) {
+                heap.add(new AuthorCursor(posts, start));
+            }
+        }
+
+        while (!heap.isEmpty() && feed.size() < limit) {
+            AuthorCursor cursor = heap.poll();
+            Post post = cursor.current();
+            if (after != null && !post.getCreatedAt().isAfter(after)) {
+                break; // Todos os posts restantes são ainda mais antigos
+            }
+            if (filter == null || filter.test(post)) {
+                feed.add(post);
+            }
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return feed;
+    }
+
+    private static int firstOlderThan(List<Post> newestFirst, LocalDateTime before, UUID beforeId) {
+        int low = 0;
+        int high = newestFirst.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Post post = newestFirst.get(mid);
+            int byDate = post.getCreatedAt().compareTo(before);
+            if (byDate < 0 || (byDate == 0 && beforeId != null && post.getId().compareTo(beforeId) < 0)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static String encodeCursor(Post post) {
+        ByteBuffer key = ByteBuffer.allocate(CURSOR_BYTES);
+        key.putLong(post.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+        key.putInt(post.getCreatedAt().getNano());
+        key.putLong(post.getId().getMostSignificantBits());
+        key.putLong(post.getId().getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.array());
+    }
+
+    private static ByteBuffer decodeCursor(String cursor) {
+        byte[] key;
+        try {
+            key = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor de feed inválido", e);
+        }
+        if (key.length != CURSOR_BYTES) {
+            throw new IllegalArgumentException("Cursor de feed inválido");
+        }
+        return ByteBuffer.wrap(key);
+    }
+
+    private static class AuthorCursor implements Comparable<AuthorCursor> {
+        private final List<Post> posts;
+        private int index;
+
+        private AuthorCursor(List<Post> posts, int index) {
+            this.posts = posts;
+            this.index = index;
+        }
+
+        private Post current() {
+            return posts.get(index);
+        }
+
+        private boolean advance() {
+            return ++index < posts.size();
+        }
+
+        @Override
+        public int compareTo(AuthorCursor other) {
+            // Heap de mínimo: o post mais recente fica no topo
+            return PostController.CHRONOLOGICAL.compare(other.current(), current());
+        }
+    }
+
+    public static class FeedPage {
+        private List<FeedPost> posts;
+        private String nextCursor;
+
+        public FeedPage(List<FeedPost> posts, String nextCursor) {
+            this.posts = posts;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<FeedPost> getPosts() {
+            return posts;
+        }
+
+        // null quando não há mais posts
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+
     public static class FeedPost {
         private Post post;
         private String authorName;
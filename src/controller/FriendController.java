@@ -3,29 +3,76 @@ package controller;
 import java.util.UUID;
 import java.util.Set;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import model.FriendRequest;
+import model.UserOrdinals;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
+
+/*
+ * Concorrência: cada amizade envolve dois usuários, e adicionar ou remover
+ * pega as faixas de lock dos dois (StripedLocks), então as duas direções e o
+ * registro no journal mudam juntos e amizades de pares diferentes seguem em
+ * paralelo; a espera pelo disco fica para depois de soltar as faixas. Os
+ * conjuntos de amigos são concorrentes: areFriends e getFriends não pegam
+ * lock e veem cada amizade antes ou depois da mudança.
+ */
+public class FriendController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 3;
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    // Seis graus de separação: além disso a busca desiste
+    public static final int MAX_SEPARATION_DEPTH = 6;
 
-public class FriendController {
     private final Map<UUID, Set<UUID>> friendsByUser;
+    private final FriendSuggestions suggestions;
+    private final StripedLocks locks = new StripedLocks();
+    // Incrementada a cada mudança; a foto CSR guarda a versão de que foi construída
+    private final AtomicLong version = new AtomicLong();
+    private final Object graphLock = new Object();
+    private volatile FriendGraph graph = FriendGraph.EMPTY;
+    private volatile long graphVersion;
     private FriendRequestController friendRequestController;
+    private TimelineStore timelineStore;
+    private Journal journal;
     
     public FriendController(FriendRequestController friendRequestController) {
-        this.friendsByUser = new HashMap<>();
+        this.friendsByUser = new ConcurrentHashMap<>();
+        this.suggestions = new FriendSuggestions();
         this.friendRequestController = friendRequestController;
     }
     
     public FriendController() {
-        this.friendsByUser = new HashMap<>();
-
+        this.friendsByUser = new ConcurrentHashMap<>();
+        this.suggestions = new FriendSuggestions();
+    }
+    
+    public void setTimelineStore(TimelineStore timelineStore) {
+        this.timelineStore = timelineStore;
+    }
+    
+    public void setJournal(Journal journal) {
+        this.journal = journal;
     }
 
         private Set<UUID> ensure(Map<UUID, Set<UUID>> map, UUID key)
             {
-                return map.computeIfAbsent(key, k -> new HashSet<UUID>());
+                return map.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+            }
+
+        // Leitura sem efeito colateral: usuário sem amigos não ganha um conjunto vazio no mapa
+        private Set<UUID> friendsOf(UUID userId)
+            {
+                Set<UUID> friends = friendsByUser.get(userId);
+                return friends != null ? friends : Collections.emptySet();
             }
 
         public boolean sendFriendRequest(UUID fromUserId, UUID toUserId) {
@@ -45,15 +92,11 @@ public class FriendController {
 
             if (friendRequestController != null) {
 
-                List<FriendRequest> pendingRequests = friendRequestController.getPendingRequestsReceived(recipientId);
-                for (FriendRequest request : pendingRequests) {
-                    if (request.getSenderId().equals(requesterId)) {
-                        if (friendRequestController.acceptRequest(request.getId())) {
-                            ensure(friendsByUser, recipientId).add(requesterId);
-                            ensure(friendsByUser, requesterId).add(recipientId);
-                            return true;
-                        }
-                    }
+                FriendRequest request = friendRequestController.getPendingRequest(requesterId, recipientId);
+                // Só uma aceitação concorrente da mesma solicitação vence
+                if (request != null && friendRequestController.acceptRequest(request.getId())) {
+                    addFriendship(recipientId, requesterId);
+                    return true;
                 }
                 return false;
             }
@@ -66,13 +109,8 @@ public class FriendController {
 
             if (friendRequestController != null) {
 
-                List<FriendRequest> pendingRequests = friendRequestController.getPendingRequestsReceived(recipientId);
-                for (FriendRequest request : pendingRequests) {
-                    if (request.getSenderId().equals(requesterId)) {
-                        return friendRequestController.rejectRequest(request.getId());
-                    }
-                }
-                return false;
+                FriendRequest request = friendRequestController.getPendingRequest(requesterId, recipientId);
+                return request != null && friendRequestController.rejectRequest(request.getId());
             }
 
             return false;
@@ -81,20 +119,80 @@ public class FriendController {
         public boolean removeFriend(UUID userId, UUID friendId)
             {
                 if (userId == null || friendId == null) return false;
-                boolean a = ensure(friendsByUser, userId).remove(friendId);
-                boolean b = ensure(friendsByUser, friendId).remove(userId);
-                return a || b;
+                boolean removed = locks.withLocks(userId, friendId, () -> {
+                    boolean a = removeFrom(userId, friendId);
+                    boolean b = removeFrom(friendId, userId);
+                    if (a || b) {
+                        version.incrementAndGet();
+                        suggestions.unlink(UserOrdinals.of(userId), UserOrdinals.of(friendId));
+                        journalFriendship(OP_REMOVE, userId, friendId);
+                    }
+                    return a || b;
+                });
+                awaitJournal();
+                if (removed && timelineStore != null) {
+                    timelineStore.repairUnfriend(userId, friendId);
+                }
+                return removed;
             }
 
         public boolean areFriends(UUID a, UUID b)
             {
-                return ensure(friendsByUser, a).contains(b) && ensure(friendsByUser, b).contains(a);
+                return friendsOf(a).contains(b) && friendsOf(b).contains(a);
             }
 
         public Set<UUID> getFriends(UUID userId)
             {
-                return Collections.unmodifiableSet(ensure(friendsByUser, userId));
+                return Collections.unmodifiableSet(friendsOf(userId));
+            }
+
+        /*
+         * "Pessoas que você talvez conheça": amigos de amigos que ainda não
+         * são amigos do usuário, do maior para o menor número de amigos em
+         * comum.
+         */
+        public List<FriendSuggestion> getFriendSuggestions(UUID userId, int limit) {
+            if (userId == null || limit <= 0) return new ArrayList<>();
+            return suggestions.suggest(UserOrdinals.of(userId), limit);
+        }
+
+        /*
+         * Número de amizades no caminho mais curto entre os dois usuários (1
+         * para amigos, 2 para amigos de amigos...), ou -1 se não estiverem
+         * ligados por até maxDepth amizades.
+         */
+        public int getDegreesOfSeparation(UUID userId, UUID otherId, int maxDepth) {
+            return getGraphSnapshot().getDegreesOfSeparation(userId, otherId, maxDepth);
+        }
+
+        // Usuários do caminho mais curto, de userId a otherId; vazio se não houver
+        public List<UUID> getConnectionPath(UUID userId, UUID otherId, int maxDepth) {
+            return getGraphSnapshot().getConnectionPath(userId, otherId, maxDepth);
+        }
+
+        public List<UUID> getMutualFriends(UUID userId, UUID otherId) {
+            return getGraphSnapshot().getMutualFriends(userId, otherId);
+        }
+
+        /*
+         * Foto imutável do grafo atual para consultas e análises em lote.
+         * É reconstruída só na primeira chamada depois de uma mudança; quem
+         * guarda a foto continua vendo o grafo daquele momento.
+         */
+        public FriendGraph getGraphSnapshot() {
+            if (graphVersion == version.get()) {
+                return graph;
             }
+            synchronized (graphLock) {
+                long current = version.get();
+                if (graphVersion != current) {
+                    // Escritas concorrentes à construção podem entrar ou não; a próxima versão as inclui
+                    graph = FriendGraph.build(friendsByUser);
+                    graphVersion = current;
+                }
+                return graph;
+            }
+        }
 
         public Set<UUID> getPendingReceived(UUID recipientId) {
             if (friendRequestController != null) {
@@ -110,17 +208,108 @@ public class FriendController {
 
         public Set<UUID> getPendingSent(UUID senderId) {
             if (friendRequestController != null) {
-                List<FriendRequest> sentRequests = friendRequestController.getRequestsSent(senderId);
+                List<FriendRequest> sentRequests = friendRequestController.getPendingRequestsSent(senderId);
                 Set<UUID> receiverIds = new HashSet<>();
                 for (FriendRequest request : sentRequests) {
-                    if (request.getStatus() == FriendRequest.RequestStatus.PENDING) {
-                        receiverIds.add(request.getReceiverId());
-                    }
+                    receiverIds.add(request.getReceiverId());
                 }
                 return Collections.unmodifiableSet(receiverIds);
             }
             return Collections.emptySet();
         }
-    }
 
+        @Override
+        public byte getJournalSource() {
+            return JOURNAL_SOURCE;
+        }
+
+        @Override
+        public void applyRecord(byte op, RecordReader record) {
+            UUID a = record.readUuid();
+            UUID b = record.readUuid();
+            switch (op) {
+                case OP_ADD:
+                    addFriendship(a, b);
+                    break;
+                case OP_REMOVE:
+                    removeFriend(a, b);
+                    break;
+                default:
+                    throw new IllegalStateException("Operação de journal desconhecida: " + op);
+            }
+        }
 
+        @Override
+        public void writeSnapshot(Consumer<RecordWriter> out) {
+            for (Map.Entry<UUID, Set<UUID>> entry : friendsByUser.entrySet()) {
+                UUID userId = entry.getKey();
+                for (UUID friendId : entry.getValue()) {
+                    if (userId.compareTo(friendId) < 0) {
+                        out.accept(new RecordWriter(JOURNAL_SOURCE, OP_ADD).writeUuid(userId).writeUuid(friendId));
+                    }
+                }
+            }
+        }
+
+        private void addFriendship(UUID a, UUID b) {
+            locks.withLocks(a, b, () -> {
+                boolean added = ensure(friendsByUser, a).add(b);
+                added |= ensure(friendsByUser, b).add(a);
+                if (added) {
+                    version.incrementAndGet();
+                    suggestions.link(UserOrdinals.of(a), UserOrdinals.of(b));
+                    journalFriendship(OP_ADD, a, b);
+                }
+            });
+            awaitJournal();
+            if (timelineStore != null) {
+                // As timelines dos dois passam a incluir posts antigos do novo amigo
+                timelineStore.invalidate(a);
+                timelineStore.invalidate(b);
+            }
+        }
+
+        // Chamado com a faixa de userId: ninguém mais adiciona ao conjunto entre o isEmpty e o remove
+        private boolean removeFrom(UUID userId, UUID friendId) {
+            Set<UUID> friends = friendsByUser.get(userId);
+            if (friends == null || !friends.remove(friendId)) {
+                return false;
+            }
+            if (friends.isEmpty()) {
+                friendsByUser.remove(userId, friends);
+            }
+            return true;
+        }
+
+        // Sob as faixas: o registro entra no journal na ordem das escritas, sem esperar o disco
+        private void journalFriendship(byte op, UUID a, UUID b) {
+            if (journal != null) {
+                journal.appendPending(new RecordWriter(JOURNAL_SOURCE, op).writeUuid(a).writeUuid(b));
+            }
+        }
+
+        // Depois de soltar as faixas: só então espera o fsync do que foi anexado
+        private void awaitJournal() {
+            if (journal != null) {
+                journal.awaitPending();
+            }
+        }
+    
+        public static class FriendSuggestion {
+            private UUID userId;
+            private int mutualFriends;
+
+            public FriendSuggestion(UUID userId, int mutualFriends) {
+                this.userId = userId;
+                this.mutualFriends = mutualFriends;
+            }
+
+            public UUID getUserId() {
+                return userId;
+            }
+
+            public int getMutualFriends() {
+                return mutualFriends;
+            }
+        }
+    }
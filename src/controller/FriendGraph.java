@@ -0,0 +1,511 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import model.UserOrdinals;
+
+/*
+ * Foto imutável do grafo de amizades em formato CSR: os amigos de todos os
+ * usuários ficam num único vetor de ordinais, em ordem crescente, e
+ * offsets[u]..offsets[u + 1] delimita os amigos de u. A foto construída a
+ * partir do FriendController usa os ordinais de UserOrdinals; a gravada em
+ * arquivo leva junto a tabela de UUIDs e pode ser lida de volta por
+ * memory-mapped I/O, sem copiar o grafo para o heap. Análises em lote leem a
+ * foto enquanto as escritas continuam no mapa do FriendController. As
+ * consultas não criam objetos por usuário visitado: a busca em largura usa
+ * vetores de trabalho reaproveitados entre as consultas da mesma thread,
+ * mesmo entre fotos diferentes.
+ */
+public final class FriendGraph {
+    private static final int MAGIC = 0x46475246;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    static final FriendGraph EMPTY = new FriendGraph(IntBuffer.wrap(new int[1]), IntBuffer.wrap(new int[0]), null);
+    // Por thread e não por foto: cada reconstrução do grafo reaproveita os vetores já alocados
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final IntBuffer offsets;
+    private final IntBuffer neighbors;
+    // UUIDs por ordinal (mais e menos significativo); null quando os ordinais são os de UserOrdinals
+    private final LongBuffer userIds;
+    private volatile Map<UUID, Integer> fileOrdinals;
+
+    private FriendGraph(IntBuffer offsets, IntBuffer neighbors, LongBuffer userIds) {
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.userIds = userIds;
+    }
+
+    /*
+     * Uma única passada pelo mapa: ele pode estar mudando (é concorrente), e
+     * tamanhos lidos numa primeira passada não valeriam para a segunda.
+     */
+    static FriendGraph build(Map<UUID, Set<UUID>> friendsByUser) {
+        int[][] lists = new int[Math.max(16, friendsByUser.size())][];
+        int userCount = 0;
+        for (Map.Entry<UUID, Set<UUID>> entry : friendsByUser.entrySet()) {
+            int[] list = new int[8];
+            int degree = 0;
+            for (UUID friend : entry.getValue()) {
+                if (degree == list.length) {
+                    list = Arrays.copyOf(list, degree * 2);
+                }
+                list[degree++] = UserOrdinals.of(friend);
+            }
+            if (degree == 0) {
+                continue;
+            }
+            int user = UserOrdinals.of(entry.getKey());
+            if (user >= lists.length) {
+                lists = Arrays.copyOf(lists, Math.max(user + 1, lists.length * 2));
+            }
+            list = Arrays.copyOf(list, degree);
+            Arrays.sort(list);
+            lists[user] = list;
+            userCount = Math.max(userCount, user + 1);
+            for (int friend : list) {
+                userCount = Math.max(userCount, friend + 1);
+            }
+        }
+
+        int[] offsets = new int[userCount + 1];
+        for (int user = 0; user < userCount; user++) {
+            offsets[user + 1] = offsets[user] + (user < lists.length && lists[user] != null ? lists[user].length : 0);
+        }
+        int[] neighbors = new int[offsets[userCount]];
+        for (int user = 0; user < Math.min(userCount, lists.length); user++) {
+            if (lists[user] != null) {
+                System.arraycopy(lists[user], 0, neighbors, offsets[user], lists[user].length);
+            }
+        }
+        return new FriendGraph(IntBuffer.wrap(offsets), IntBuffer.wrap(neighbors), null);
+    }
+
+    /*
+     * Abre uma foto gravada por write. Cada seção é mapeada somente para
+     * leitura e continua válida depois que o arquivo é fechado.
+     */
+    public static FriendGraph map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("Arquivo de grafo inválido: " + file);
+            }
+            int userCount = header.getInt();
+            int edgeCount = header.getInt();
+            long offsetsStart = HEADER_SIZE;
+            long neighborsStart = offsetsStart + 4L * (userCount + 1);
+            long userIdsStart = neighborsStart + 4L * edgeCount;
+            if (userCount < 0 || edgeCount < 0 || userIdsStart + 16L * userCount != size) {
+                throw new IllegalStateException("Arquivo de grafo corrompido: " + file);
+            }
+            IntBuffer offsets = section(channel, offsetsStart, neighborsStart).asIntBuffer();
+            IntBuffer neighbors = section(channel, neighborsStart, userIdsStart).asIntBuffer();
+            LongBuffer userIds = section(channel, userIdsStart, size).asLongBuffer();
+            return new FriendGraph(offsets, neighbors, userIds);
+        }
+    }
+
+    // Grava num arquivo temporário e só o renomeia depois do fsync, como os snapshots do journal
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int userCount = getUserCount();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(userCount).putInt(neighbors.limit());
+            for (int i = 0; i <= userCount; i++) {
+                buffer = reserve(channel, buffer, 4).putInt(offsets.get(i));
+            }
+            for (int i = 0; i < neighbors.limit(); i++) {
+                buffer = reserve(channel, buffer, 4).putInt(neighbors.get(i));
+            }
+            for (int user = 0; user < userCount; user++) {
+                UUID userId = userOf(user);
+                buffer = reserve(channel, buffer, 16).putLong(userId.getMostSignificantBits())
+                    .putLong(userId.getLeastSignificantBits());
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getUserCount() {
+        return offsets.limit() - 1;
+    }
+
+    public int getFriendshipCount() {
+        return neighbors.limit() / 2;
+    }
+
+    public int getDegree(UUID userId) {
+        return degree(ordinalOf(userId));
+    }
+
+    public boolean areFriends(UUID userId, UUID otherId) {
+        int a = ordinalOf(userId);
+        int b = ordinalOf(otherId);
+        if (degree(a) == 0 || degree(b) == 0) {
+            return false;
+        }
+        int end = offsets.get(a + 1);
+        int position = seek(b, offsets.get(a), end);
+        return position < end && neighbors.get(position) == b;
+    }
+
+    public List<UUID> getFriends(UUID userId) {
+        int user = ordinalOf(userId);
+        List<UUID> friends = new ArrayList<>(degree(user));
+        if (degree(user) > 0) {
+            for (int e = offsets.get(user); e < offsets.get(user + 1); e++) {
+                friends.add(userOf(neighbors.get(e)));
+            }
+        }
+        return friends;
+    }
+
+    // Quantos usuários da foto têm cada número de amigos: o índice é o número de amigos
+    public int[] getDegreeDistribution() {
+        int maxDegree = 0;
+        for (int user = 0; user < getUserCount(); user++) {
+            maxDegree = Math.max(maxDegree, degree(user));
+        }
+        int[] distribution = new int[maxDegree + 1];
+        for (int user = 0; user < getUserCount(); user++) {
+            distribution[degree(user)]++;
+        }
+        return distribution;
+    }
+
+    /*
+     * Número de trios de usuários que são todos amigos entre si. Cada
+     * triângulo u < v < w é contado uma vez, na aresta (u, v), intersectando
+     * os amigos de u e de v maiores que v.
+     */
+    public long countTriangles() {
+        long triangles = 0;
+        for (int u = 0; u < getUserCount(); u++) {
+            int uEnd = offsets.get(u + 1);
+            for (int e = seek(u + 1, offsets.get(u), uEnd); e < uEnd; e++) {
+                int v = neighbors.get(e);
+                int vEnd = offsets.get(v + 1);
+                triangles += intersectionSize(e + 1, uEnd, seek(v + 1, offsets.get(v), vEnd), vEnd);
+            }
+        }
+        return triangles;
+    }
+
+    // Amigos em comum: percorre a lista menor e procura cada amigo na maior
+    public List<UUID> getMutualFriends(UUID userId, UUID otherId) {
+        List<UUID> result = new ArrayList<>();
+        int a = ordinalOf(userId);
+        int b = ordinalOf(otherId);
+        if (degree(a) == 0 || degree(b) == 0) {
+            return result;
+        }
+        int small = degree(a) <= degree(b) ? a : b;
+        int large = small == a ? b : a;
+        int position = offsets.get(large);
+        int end = offsets.get(large + 1);
+        for (int e = offsets.get(small); e < offsets.get(small + 1) && position < end; e++) {
+            int friend = neighbors.get(e);
+            position = seek(friend, position, end);
+            if (position < end && neighbors.get(position) == friend) {
+                result.add(userOf(friend));
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Número de amizades no caminho mais curto entre os dois usuários, ou -1
+     * se não estiverem ligados por até maxDepth amizades.
+     */
+    public int getDegreesOfSeparation(UUID userId, UUID otherId, int maxDepth) {
+        int[] path = path(ordinalOf(userId), ordinalOf(otherId), maxDepth);
+        return path != null ? path.length - 1 : -1;
+    }
+
+    // Usuários do caminho mais curto, de userId a otherId; vazio se não houver
+    public List<UUID> getConnectionPath(UUID userId, UUID otherId, int maxDepth) {
+        List<UUID> result = new ArrayList<>();
+        int[] path = path(ordinalOf(userId), ordinalOf(otherId), maxDepth);
+        if (path != null) {
+            for (int user : path) {
+                result.add(userOf(user));
+            }
+        }
+        return result;
+    }
+
+    int degree(int user) {
+        return user >= 0 && user < getUserCount() ? offsets.get(user + 1) - offsets.get(user) : 0;
+    }
+
+    /*
+     * Ordinais do caminho mais curto de source a target (inclusive), ou null
+     * se não houver caminho com até maxDepth amizades. A busca em largura
+     * parte dos dois lados e expande sempre a fronteira menor, um nível
+     * inteiro por vez.
+     */
+    int[] path(int source, int target, int maxDepth) {
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        if (source == target) {
+            return new int[] {source};
+        }
+        if (maxDepth <= 0 || degree(source) == 0 || degree(target) == 0) {
+            return null;
+        }
+
+        Scratch s = SCRATCH.get();
+        s.prepare(getUserCount());
+        int forwardMark = s.nextMark();
+        int backwardMark = s.nextMark();
+        s.visit(source, forwardMark, -1);
+        s.visit(target, backwardMark, -1);
+        // As duas filas dividem o vetor: a da frente cresce do início e a de trás do fim
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = s.queue.length;
+        int backwardEnd = s.queue.length;
+        s.queue[forwardEnd++] = source;
+        s.queue[--backwardStart] = target;
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+
+        while (forwardDepth + backwardDepth < maxDepth) {
+            int meeting = -1;
+            int meetingParent = -1;
+            boolean forward = forwardEnd - forwardStart <= backwardEnd - backwardStart;
+            if (forward) {
+                int levelEnd = forwardEnd;
+                for (int i = forwardStart; i < levelEnd && meeting < 0; i++) {
+                    int user = s.queue[i];
+                    for (int e = offsets.get(user); e < offsets.get(user + 1); e++) {
+                        int friend = neighbors.get(e);
+                        if (s.marks[friend] == backwardMark) {
+                            meeting = friend;
+                            meetingParent = user;
+                            break;
+                        }
+                        if (s.marks[friend] != forwardMark) {
+                            s.visit(friend, forwardMark, user);
+                            s.queue[forwardEnd++] = friend;
+                        }
+                    }
+                }
+                forwardStart = levelEnd;
+                forwardDepth++;
+            } else {
+                int levelStart = backwardStart;
+                for (int i = backwardEnd - 1; i >= levelStart && meeting < 0; i--) {
+                    int user = s.queue[i];
+                    for (int e = offsets.get(user); e < offsets.get(user + 1); e++) {
+                        int friend = neighbors.get(e);
+                        if (s.marks[friend] == forwardMark) {
+                            meeting = friend;
+                            meetingParent = user;
+                            break;
+                        }
+                        if (s.marks[friend] != backwardMark) {
+                            s.visit(friend, backwardMark, user);
+                            s.queue[--backwardStart] = friend;
+                        }
+                    }
+                }
+                backwardEnd = levelStart;
+                backwardDepth++;
+            }
+
+            if (meeting >= 0) {
+                return s.joinPath(meeting, meetingParent, forward);
+            }
+            if (forwardStart == forwardEnd || backwardStart == backwardEnd) {
+                return null; // Um dos lados esgotou seu componente
+            }
+        }
+        return null;
+    }
+
+    // Ordinal do usuário nesta foto, ou -1 se ele não aparece nela
+    int ordinalOf(UUID userId) {
+        if (userId == null) {
+            return -1;
+        }
+        if (userIds == null) {
+            return UserOrdinals.find(userId);
+        }
+        Map<UUID, Integer> ordinals = fileOrdinals;
+        if (ordinals == null) {
+            // Só a foto lida de arquivo precisa do mapa inverso; montado na primeira consulta por UUID
+            ordinals = new HashMap<>(getUserCount() * 2);
+            for (int user = 0; user < getUserCount(); user++) {
+                ordinals.put(userOf(user), user);
+            }
+            fileOrdinals = ordinals;
+        }
+        Integer ordinal = ordinals.get(userId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    UUID userOf(int user) {
+        if (userIds == null) {
+            return UserOrdinals.userOf(user);
+        }
+        return new UUID(userIds.get(2 * user), userIds.get(2 * user + 1));
+    }
+
+    // Tamanho da interseção de neighbors[a, aEnd) e neighbors[b, bEnd), ambos crescentes
+    private int intersectionSize(int a, int aEnd, int b, int bEnd) {
+        if (aEnd - a > bEnd - b) {
+            return intersectionSize(b, bEnd, a, aEnd);
+        }
+        int count = 0;
+        if ((bEnd - b) / 8 <= aEnd - a) {
+            // Tamanhos parecidos: intercalação linear sai mais barata que saltos
+            while (a < aEnd && b < bEnd) {
+                int x = neighbors.get(a);
+                int y = neighbors.get(b);
+                if (x == y) {
+                    count++;
+                }
+                a += x <= y ? 1 : 0;
+                b += y <= x ? 1 : 0;
+            }
+            return count;
+        }
+        for (int e = a; e < aEnd && b < bEnd; e++) {
+            int value = neighbors.get(e);
+            b = seek(value, b, bEnd);
+            if (b < bEnd && neighbors.get(b) == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Primeira posição em [from, end) com valor >= value, por busca exponencial
+    private int seek(int value, int from, int end) {
+        int low = from;
+        int high = from;
+        int step = 1;
+        while (high < end && neighbors.get(high) < value) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, end);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (neighbors.get(middle) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static ByteBuffer section(FileChannel channel, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Grafo grande demais para mapear em memória");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer reserve(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+        return buffer;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /*
+     * Vetores de trabalho da busca. marks evita limpar o estado entre
+     * consultas: cada lado de cada busca usa uma marca nova e um usuário só
+     * conta como visitado se tiver a marca atual. Os vetores só crescem:
+     * numa foto com menos usuários a busca usa só o começo deles.
+     */
+    private static class Scratch {
+        private int[] marks = new int[0];
+        private int[] parents = new int[0];
+        private int[] queue = new int[0];
+        private int mark;
+
+        private void prepare(int size) {
+            if (marks.length < size) {
+                marks = new int[size];
+                parents = new int[size];
+                queue = new int[size];
+                mark = 0;
+            }
+        }
+
+        private int nextMark() {
+            if (mark == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                mark = 0;
+            }
+            return ++mark;
+        }
+
+        private void visit(int user, int visitMark, int parent) {
+            marks[user] = visitMark;
+            parents[user] = parent;
+        }
+
+        // meeting foi visitado pelo outro lado; meetingParent é quem o alcançou deste lado
+        private int[] joinPath(int meeting, int meetingParent, boolean forward) {
+            int[] fromSource = chain(forward ? meetingParent : meeting);
+            int[] toTarget = chain(forward ? meeting : meetingParent);
+            int[] path = new int[fromSource.length + toTarget.length];
+            for (int i = 0; i < fromSource.length; i++) {
+                path[i] = fromSource[fromSource.length - 1 - i];
+            }
+            System.arraycopy(toTarget, 0, path, fromSource.length, toTarget.length);
+            return path;
+        }
+
+        // Do usuário até a raiz do seu lado, seguindo parents
+        private int[] chain(int user) {
+            int length = 0;
+            for (int u = user; u >= 0; u = parents[u]) {
+                length++;
+            }
+            int[] chain = new int[length];
+            int i = 0;
+            for (int u = user; u >= 0; u = parents[u]) {
+                chain[i++] = u;
+            }
+            return chain;
+        }
+    }
+}
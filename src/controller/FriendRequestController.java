@@ -1,18 +1,50 @@
 package controller;
 
 import model.FriendRequest;
-import model.User;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.time.LocalDateTime;
 
-public class FriendRequestController {
-    private List<FriendRequest> requests;
+/*
+ * Concorrência: toda solicitação envolve remetente e destinatário, e cada
+ * operação sobre ela pega as faixas de lock dos dois. Assim enviar (com as
+ * checagens de pendência e amizade), aceitar e rejeitar são atômicos, e os
+ * índices de cada usuário só mudam sob a faixa dele. A faxina de rejeitadas
+ * antigas é rara e pega todas as faixas. O registro entra no journal sob as
+ * faixas, mas a espera pelo disco fica para depois de soltá-las.
+ */
+public class FriendRequestController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 4;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_CLEANUP = 2;
+
+    private Map<UUID, FriendRequest> requestsById;
+    private Map<UUID, Map<UUID, FriendRequest>> requestsBySender;
+    private Map<UUID, Map<UUID, FriendRequest>> requestsByReceiver;
+    // Pendentes por destinatário e por remetente, indexadas pelo outro usuário
+    private Map<UUID, Map<UUID, FriendRequest>> pendingByReceiver;
+    private Map<UUID, Map<UUID, FriendRequest>> pendingBySender;
+    private Set<UserPair> acceptedPairs;
+    private Map<UUID, FriendRequest> rejected;
     private UserController userController;
     private NotificationController notificationController;
+    private Journal journal;
+    private final StripedLocks locks = new StripedLocks();
     
     public FriendRequestController(UserController userController) {
-        this.requests = new ArrayList<>();
+        // Mapas externos concorrentes; os internos (de um usuário) só mudam sob a faixa dele
+        this.requestsById = new ConcurrentHashMap<>();
+        this.requestsBySender = new ConcurrentHashMap<>();
+        this.requestsByReceiver = new ConcurrentHashMap<>();
+        this.pendingByReceiver = new ConcurrentHashMap<>();
+        this.pendingBySender = new ConcurrentHashMap<>();
+        this.acceptedPairs = ConcurrentHashMap.newKeySet();
+        this.rejected = new ConcurrentHashMap<>();
         this.userController = userController;
         this.notificationController = null; // Será definido posteriormente
     }
@@ -20,113 +52,249 @@ public class FriendRequestController {
     public void setNotificationController(NotificationController notificationController) {
         this.notificationController = notificationController;
     }
+    
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
 
     public boolean sendFriendRequest(UUID senderId, UUID receiverId) {
+        boolean sent = locks.withLocks(senderId, receiverId, () -> {
+            if (hasPendingRequest(senderId, receiverId) || hasPendingRequest(receiverId, senderId)) {
+                return false;
+            }
 
-        if (hasPendingRequest(senderId, receiverId) || hasPendingRequest(receiverId, senderId)) {
-            return false;
-        }
+            if (areAlreadyFriends(senderId, receiverId)) {
+                return false;
+            }
 
-        if (areAlreadyFriends(senderId, receiverId)) {
-            return false;
-        }
+            if (senderId.equals(receiverId)) {
+                return false;
+            }
 
-        if (senderId.equals(receiverId)) {
-            return false;
-        }
-
-        FriendRequest request = new FriendRequest(senderId, receiverId);
-        requests.add(request);
+            FriendRequest request = new FriendRequest(senderId, receiverId);
+            store(request);
+            journalPut(request);
+            return true;
+        });
+        awaitJournal();
 
-        if (notificationController != null) {
-            User sender = userController.getUserById(senderId);
-            String senderName = sender != null ? sender.getName() : "Usuário Desconhecido";
-            notificationController.createFriendRequestNotification(receiverId, senderName);
+        if (sent && notificationController != null) {
+            notificationController.queueFriendRequestNotification(receiverId, senderId);
         }
         
-        return true;
+        return sent;
     }
 
     public boolean acceptRequest(UUID requestId) {
-        FriendRequest request = getRequestById(requestId);
-        if (request != null && request.getStatus() == FriendRequest.RequestStatus.PENDING) {
-            request.setStatus(FriendRequest.RequestStatus.ACCEPTED);
-            return true;
-        }
-        return false;
+        return resolve(requestId, FriendRequest.RequestStatus.ACCEPTED);
     }
 
     public boolean rejectRequest(UUID requestId) {
+        return resolve(requestId, FriendRequest.RequestStatus.REJECTED);
+    }
+
+    // Só a primeira resposta a uma solicitação pendente vale
+    private boolean resolve(UUID requestId, FriendRequest.RequestStatus status) {
         FriendRequest request = getRequestById(requestId);
-        if (request != null && request.getStatus() == FriendRequest.RequestStatus.PENDING) {
-            request.setStatus(FriendRequest.RequestStatus.REJECTED);
-            return true;
+        if (request == null) {
+            return false;
         }
-        return false;
+        boolean resolved = locks.withLocks(request.getSenderId(), request.getReceiverId(), () -> {
+            if (request.getStatus() != FriendRequest.RequestStatus.PENDING || getRequestById(requestId) != request) {
+                return false;
+            }
+            changeStatus(request, status);
+            journalPut(request);
+            return true;
+        });
+        awaitJournal();
+        return resolved;
     }
 
     public List<FriendRequest> getPendingRequestsReceived(UUID userId) {
-        return requests.stream()
-            .filter(r -> r.getReceiverId().equals(userId) && 
-                        r.getStatus() == FriendRequest.RequestStatus.PENDING)
-            .collect(Collectors.toList());
+        return values(pendingByReceiver, userId);
+    }
+
+    public List<FriendRequest> getPendingRequestsSent(UUID userId) {
+        return values(pendingBySender, userId);
+    }
+
+    // Solicitação pendente de senderId para receiverId, ou null
+    public FriendRequest getPendingRequest(UUID senderId, UUID receiverId) {
+        return locks.withLock(receiverId, () -> {
+            Map<UUID, FriendRequest> pending = pendingByReceiver.get(receiverId);
+            return pending != null ? pending.get(senderId) : null;
+        });
     }
 
     public List<FriendRequest> getRequestsSent(UUID userId) {
-        return requests.stream()
-            .filter(r -> r.getSenderId().equals(userId))
-            .collect(Collectors.toList());
+        return values(requestsBySender, userId);
     }
 
     public List<FriendRequest> getAllRequestsForUser(UUID userId) {
-        return requests.stream()
-            .filter(r -> r.getSenderId().equals(userId) || r.getReceiverId().equals(userId))
-            .collect(Collectors.toList());
+        List<FriendRequest> all = getRequestsSent(userId);
+        all.addAll(values(requestsByReceiver, userId));
+        all.sort(Comparator.comparing(FriendRequest::getTimestamp));
+        return all;
     }
 
     public boolean hasPendingRequest(UUID userId1, UUID userId2) {
-        return requests.stream()
-            .anyMatch(r -> r.getSenderId().equals(userId1) && 
-                          r.getReceiverId().equals(userId2) && 
-                          r.getStatus() == FriendRequest.RequestStatus.PENDING);
+        return getPendingRequest(userId1, userId2) != null;
     }
 
     public boolean areAlreadyFriends(UUID userId1, UUID userId2) {
-        boolean request1Accepted = requests.stream()
-            .anyMatch(r -> r.getSenderId().equals(userId1) && 
-                          r.getReceiverId().equals(userId2) && 
-                          r.getStatus() == FriendRequest.RequestStatus.ACCEPTED);
-        
-        boolean request2Accepted = requests.stream()
-            .anyMatch(r -> r.getSenderId().equals(userId2) && 
-                          r.getReceiverId().equals(userId1) && 
-                          r.getStatus() == FriendRequest.RequestStatus.ACCEPTED);
-        
-        return request1Accepted || request2Accepted;
+        return acceptedPairs.contains(new UserPair(userId1, userId2));
     }
 
     private FriendRequest getRequestById(UUID requestId) {
-        return requests.stream()
-            .filter(r -> r.getId().equals(requestId))
-            .findFirst()
-            .orElse(null);
+        return requestsById.get(requestId);
     }
 
     public int getPendingRequestsCount(UUID userId) {
-        return (int) requests.stream()
-            .filter(r -> r.getReceiverId().equals(userId) && 
-                        r.getStatus() == FriendRequest.RequestStatus.PENDING)
-            .count();
+        return locks.withLock(userId, () -> {
+            Map<UUID, FriendRequest> pending = pendingByReceiver.get(userId);
+            return pending != null ? pending.size() : 0;
+        });
     }
 
     public void cleanupOldRejectedRequests() {
         LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        requests.removeIf(r -> r.getStatus() == FriendRequest.RequestStatus.REJECTED && 
-                               r.getTimestamp().isBefore(thirtyDaysAgo));
+        locks.withAllLocks(() -> {
+            removeRejectedBefore(thirtyDaysAgo);
+            if (journal != null) {
+                journal.appendPending(new RecordWriter(JOURNAL_SOURCE, OP_CLEANUP).writeDateTime(thirtyDaysAgo));
+            }
+        });
+        awaitJournal();
     }
 
+    private void removeRejectedBefore(LocalDateTime cutoff) {
+        Iterator<FriendRequest> it = rejected.values().iterator();
+        while (it.hasNext()) {
+            FriendRequest request = it.next();
+            if (request.getTimestamp().isBefore(cutoff)) {
+                it.remove();
+                requestsById.remove(request.getId());
+                remove(requestsBySender, request.getSenderId(), request.getId());
+                remove(requestsByReceiver, request.getReceiverId(), request.getId());
+            }
+        }
+    }
+
+    // Em ordem de envio
     public List<FriendRequest> getAllRequests() {
-        return new ArrayList<>(requests);
+        List<FriendRequest> all = new ArrayList<>(requestsById.values());
+        all.sort(Comparator.comparing(FriendRequest::getTimestamp).thenComparing(FriendRequest::getId));
+        return all;
     }
-}
 
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        switch (op) {
+            case OP_PUT:
+                UUID id = record.readUuid();
+                UUID senderId = record.readUuid();
+                UUID receiverId = record.readUuid();
+                FriendRequest.RequestStatus status = FriendRequest.RequestStatus.valueOf(record.readString());
+                LocalDateTime timestamp = record.readDateTime();
+                locks.withLocks(senderId, receiverId, () -> {
+                    FriendRequest request = getRequestById(id);
+                    if (request == null) {
+                        request = new FriendRequest(senderId, receiverId);
+                        request.setId(id);
+                        store(request);
+                    }
+                    changeStatus(request, status);
+                    request.setTimestamp(timestamp);
+                });
+                break;
+            case OP_CLEANUP:
+                LocalDateTime cutoff = record.readDateTime();
+                locks.withAllLocks(() -> removeRejectedBefore(cutoff));
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        // Em ordem de envio: store() monta as listas de cada usuário na ordem em que as recebe
+        for (FriendRequest request : getAllRequests()) {
+            out.accept(putRecord(request));
+        }
+    }
+
+    // Novas solicitações entram sempre como pendentes
+    private void store(FriendRequest request) {
+        requestsById.put(request.getId(), request);
+        requestsBySender.computeIfAbsent(request.getSenderId(), k -> new LinkedHashMap<>()).put(request.getId(), request);
+        requestsByReceiver.computeIfAbsent(request.getReceiverId(), k -> new LinkedHashMap<>()).put(request.getId(), request);
+        pendingByReceiver.computeIfAbsent(request.getReceiverId(), k -> new LinkedHashMap<>()).put(request.getSenderId(), request);
+        pendingBySender.computeIfAbsent(request.getSenderId(), k -> new LinkedHashMap<>()).put(request.getReceiverId(), request);
+    }
+
+    private void changeStatus(FriendRequest request, FriendRequest.RequestStatus status) {
+        FriendRequest.RequestStatus previous = request.getStatus();
+        if (previous == status) return;
+
+        if (previous == FriendRequest.RequestStatus.PENDING) {
+            remove(pendingByReceiver, request.getReceiverId(), request.getSenderId());
+            remove(pendingBySender, request.getSenderId(), request.getReceiverId());
+        } else if (previous == FriendRequest.RequestStatus.REJECTED) {
+            rejected.remove(request.getId());
+        }
+
+        request.setStatus(status);
+        if (status == FriendRequest.RequestStatus.ACCEPTED) {
+            acceptedPairs.add(new UserPair(request.getSenderId(), request.getReceiverId()));
+        } else if (status == FriendRequest.RequestStatus.REJECTED) {
+            rejected.put(request.getId(), request);
+        }
+    }
+
+    private static void remove(Map<UUID, Map<UUID, FriendRequest>> index, UUID key, UUID innerKey) {
+        Map<UUID, FriendRequest> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(innerKey);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private List<FriendRequest> values(Map<UUID, Map<UUID, FriendRequest>> index, UUID key) {
+        return locks.withLock(key, () -> {
+            Map<UUID, FriendRequest> bucket = index.get(key);
+            return bucket != null ? new ArrayList<>(bucket.values()) : new ArrayList<FriendRequest>();
+        });
+    }
+
+    // Sob as faixas: o registro entra no journal na ordem das escritas, sem esperar o disco
+    private void journalPut(FriendRequest request) {
+        if (journal != null) {
+            journal.appendPending(putRecord(request));
+        }
+    }
+
+    // Depois de soltar as faixas: só então espera o fsync do que foi anexado
+    private void awaitJournal() {
+        if (journal != null) {
+            journal.awaitPending();
+        }
+    }
+
+    private RecordWriter putRecord(FriendRequest request) {
+        return new RecordWriter(JOURNAL_SOURCE, OP_PUT)
+            .writeUuid(request.getId())
+            .writeUuid(request.getSenderId())
+            .writeUuid(request.getReceiverId())
+            .writeString(request.getStatus().name())
+            .writeDateTime(request.getTimestamp());
+    }
+}
@@ -0,0 +1,174 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import model.UserOrdinals;
+
+/*
+ * Sugestões de amizade ("pessoas que você talvez conheça") ordenadas pelo
+ * número de amigos em comum. Mantém a lista de amigos de cada usuário como
+ * vetor de ordinais (UserOrdinals) e conta os amigos de amigos num vetor de
+ * contadores reaproveitado entre as consultas; o usuário e os amigos atuais
+ * são descartados por um bitset. O resultado de cada usuário fica em cache
+ * até uma amizade dele ou de um amigo mudar. Os vetores são compartilhados
+ * entre as consultas, então todo acesso passa pelo monitor da instância.
+ */
+class FriendSuggestions {
+    private int[][] adjacency = new int[1024][];
+    private int[] degrees = new int[1024];
+    private int[] mutualCounts = new int[1024];
+    private long[] excluded = new long[16];
+    private int[] touched = new int[1024];
+    private final Map<Integer, Cached> cache = new HashMap<>();
+
+    synchronized void link(int a, int b) {
+        append(a, b);
+        append(b, a);
+        invalidateAround(a);
+        invalidateAround(b);
+    }
+
+    synchronized void unlink(int a, int b) {
+        invalidateAround(a);
+        invalidateAround(b);
+        removeFrom(a, b);
+        removeFrom(b, a);
+    }
+
+    synchronized List<FriendController.FriendSuggestion> suggest(int user, int limit) {
+        Cached cached = cache.get(user);
+        if (cached == null || (limit > cached.limit && cached.suggestions.size() == cached.limit)) {
+            cached = new Cached(limit, compute(user, limit));
+            cache.put(user, cached);
+        }
+        List<FriendController.FriendSuggestion> suggestions = cached.suggestions;
+        return new ArrayList<>(suggestions.subList(0, Math.min(limit, suggestions.size())));
+    }
+
+    private List<FriendController.FriendSuggestion> compute(int user, int limit) {
+        List<FriendController.FriendSuggestion> result = new ArrayList<>();
+        if (user >= degrees.length || degrees[user] == 0 || limit <= 0) {
+            return result;
+        }
+        int[] friends = adjacency[user];
+        int degree = degrees[user];
+        setExcluded(user, true);
+        for (int i = 0; i < degree; i++) {
+            setExcluded(friends[i], true);
+        }
+
+        // Conta, para cada amigo de amigo, por quantos amigos ele foi alcançado
+        int touchedCount = 0;
+        for (int i = 0; i < degree; i++) {
+            int friend = friends[i];
+            int[] friendsOfFriend = adjacency[friend];
+            for (int j = 0; j < degrees[friend]; j++) {
+                int candidate = friendsOfFriend[j];
+                if ((excluded[candidate >>> 6] & (1L << candidate)) == 0 && mutualCounts[candidate]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = candidate;
+                }
+            }
+        }
+
+        // Heap de mínimo com os limit melhores: mais amigos em comum e, no empate, o cadastro mais antigo
+        PriorityQueue<Long> best = new PriorityQueue<>();
+        for (int i = 0; i < touchedCount; i++) {
+            int candidate = touched[i];
+            long key = ((long) mutualCounts[candidate] << 32) | (Integer.MAX_VALUE - candidate);
+            if (best.size() < limit) {
+                best.add(key);
+            } else if (key > best.peek()) {
+                best.poll();
+                best.add(key);
+            }
+            mutualCounts[candidate] = 0;
+        }
+
+        setExcluded(user, false);
+        for (int i = 0; i < degree; i++) {
+            setExcluded(friends[i], false);
+        }
+
+        FriendController.FriendSuggestion[] ordered = new FriendController.FriendSuggestion[best.size()];
+        for (int i = ordered.length - 1; i >= 0; i--) {
+            long key = best.poll();
+            int candidate = Integer.MAX_VALUE - (int) key;
+            ordered[i] = new FriendController.FriendSuggestion(UserOrdinals.userOf(candidate), (int) (key >>> 32));
+        }
+        result.addAll(Arrays.asList(ordered));
+        return result;
+    }
+
+    // O próprio usuário e os amigos dele: só as sugestões deles dependem desta amizade
+    private void invalidateAround(int user) {
+        cache.remove(user);
+        if (user < degrees.length) {
+            for (int i = 0; i < degrees[user]; i++) {
+                cache.remove(adjacency[user][i]);
+            }
+        }
+    }
+
+    private void append(int user, int friend) {
+        ensureCapacity(Math.max(user, friend) + 1);
+        int[] friends = adjacency[user];
+        if (friends == null) {
+            friends = new int[4];
+        } else if (degrees[user] == friends.length) {
+            friends = Arrays.copyOf(friends, friends.length * 2);
+        }
+        friends[degrees[user]++] = friend;
+        adjacency[user] = friends;
+    }
+
+    private void removeFrom(int user, int friend) {
+        if (user >= degrees.length) {
+            return;
+        }
+        int[] friends = adjacency[user];
+        for (int i = 0; i < degrees[user]; i++) {
+            if (friends[i] == friend) {
+                // A ordem não importa: o último ocupa a posição liberada
+                friends[i] = friends[--degrees[user]];
+                return;
+            }
+        }
+    }
+
+    private void setExcluded(int user, boolean value) {
+        if (value) {
+            excluded[user >>> 6] |= 1L << user;
+        } else {
+            excluded[user >>> 6] &= ~(1L << user);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > adjacency.length) {
+            int capacity = Math.max(size, adjacency.length * 2);
+            adjacency = Arrays.copyOf(adjacency, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+            mutualCounts = Arrays.copyOf(mutualCounts, capacity);
+        }
+        if (excluded.length * 64 < adjacency.length) {
+            excluded = Arrays.copyOf(excluded, (adjacency.length + 63) / 64);
+        }
+    }
+
+    private static class Cached {
+        private final int limit;
+        private final List<FriendController.FriendSuggestion> suggestions;
+
+        private Cached(int limit, List<FriendController.FriendSuggestion> suggestions) {
+            this.limit = limit;
+            this.suggestions = suggestions;
+        }
+    }
+}
@@ -3,21 +3,59 @@ package controller;
 import model.GroupMessage;
 import model.Group;
 import model.User;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-public class GroupChatController {
-    private List<GroupMessage> messages;
+/*
+ * Concorrência: o histórico e o índice de busca de cada grupo só são lidos e
+ * alterados com a faixa de lock do grupo, e o registro de cada mensagem
+ * entra no journal antes de soltá-la; a espera pelo disco fica para depois.
+ * Grupos diferentes conversam em paralelo. As
+ * checagens de participação (GroupController) são feitas antes de pegar a
+ * faixa. Apagar todas as mensagens pega todas as faixas.
+ */
+public class GroupChatController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 7;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_CLEAR_GROUP = 3;
+    private static final byte OP_CLEAR = 4;
+
+    private Map<UUID, GroupChatLog> logsByGroup;
+    private Map<UUID, UUID> groupByMessage;
+    private Map<UUID, ChatSearchIndex> indexesByGroup;
     private GroupController groupController;
     private UserController userController;
+    private Journal journal;
+    private volatile GroupMessageListener listener;
+    private final StripedLocks locks = new StripedLocks();
     
     public GroupChatController(GroupController groupController, UserController userController) {
-        this.messages = new ArrayList<>();
+        this.logsByGroup = new ConcurrentHashMap<>();
+        this.groupByMessage = new ConcurrentHashMap<>();
+        this.indexesByGroup = new ConcurrentHashMap<>();
         this.groupController = groupController;
         this.userController = userController;
     }
+    
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public void setMessageListener(GroupMessageListener listener) {
+        this.listener = listener;
+    }
 
     public GroupMessage sendMessage(UUID groupId, UUID senderId, String content) {
         if (content == null || content.trim().isEmpty()) {
@@ -42,52 +80,83 @@ public class GroupChatController {
         }
         
         GroupMessage message = new GroupMessage(groupId, senderId, content.trim());
-        messages.add(message);
+        locks.withLock(groupId, () -> {
+            store(message);
+            journalPut(message);
+            GroupMessageListener current = listener;
+            if (current != null) {
+                current.messageSent(message);
+            }
+        });
+        awaitJournal();
         return message;
     }
 
     public List<GroupMessage> getGroupMessages(UUID groupId) {
         if (groupId == null) return new ArrayList<>();
         
-        return messages.stream()
-            .filter(msg -> msg.getGroupId().equals(groupId))
-            .sorted((m1, m2) -> m1.getSentAt().compareTo(m2.getSentAt()))
-            .collect(Collectors.toList());
+        return locks.withLock(groupId, () -> {
+            List<GroupMessage> groupMessages = new ArrayList<>();
+            GroupChatLog log = logsByGroup.get(groupId);
+            if (log != null) {
+                log.forEach(groupMessages::add);
+            }
+            return groupMessages;
+        });
     }
 
     public List<GroupMessage> getGroupMessages(UUID groupId, int limit) {
-        List<GroupMessage> groupMessages = getGroupMessages(groupId);
-        if (groupMessages.size() <= limit) {
-            return groupMessages;
-        }
-        return groupMessages.subList(groupMessages.size() - limit, groupMessages.size());
+        if (groupId == null) return new ArrayList<>();
+
+        return locks.withLock(groupId, () -> {
+            GroupChatLog log = logsByGroup.get(groupId);
+            return log != null ? log.tail(limit) : new ArrayList<GroupMessage>();
+        });
+    }
+
+    /*
+     * Até limit mensagens enviadas antes de beforeMessageId, em ordem
+     * cronológica; usado para carregar o histórico em páginas a partir da
+     * mensagem mais antiga já exibida.
+     */
+    public List<GroupMessage> getGroupMessagesBefore(UUID groupId, UUID beforeMessageId, int limit) {
+        if (groupId == null || beforeMessageId == null) return new ArrayList<>();
+
+        return locks.withLock(groupId, () -> {
+            GroupChatLog log = logsByGroup.get(groupId);
+            return log != null ? log.before(beforeMessageId, limit) : new ArrayList<GroupMessage>();
+        });
     }
 
     public List<GroupMessage> getGroupMessagesByUser(UUID groupId, UUID userId) {
         if (groupId == null || userId == null) return new ArrayList<>();
         
-        return messages.stream()
-            .filter(msg -> msg.getGroupId().equals(groupId) && msg.getSenderId().equals(userId))
-            .sorted((m1, m2) -> m1.getSentAt().compareTo(m2.getSentAt()))
-            .collect(Collectors.toList());
+        return locks.withLock(groupId, () -> {
+            List<GroupMessage> userMessages = new ArrayList<>();
+            GroupChatLog log = logsByGroup.get(groupId);
+            if (log != null) {
+                log.forEach(msg -> {
+                    if (msg.getSenderId().equals(userId)) {
+                        userMessages.add(msg);
+                    }
+                });
+            }
+            return userMessages;
+        });
     }
 
     public boolean deleteMessage(UUID messageId, UUID userId) {
         if (messageId == null || userId == null) return false;
         
-        for (int i = 0; i < messages.size(); i++) {
-            GroupMessage message = messages.get(i);
-            if (message.getId().equals(messageId)) {
-
-                if (message.getSenderId().equals(userId) || 
-                    groupController.canModify(message.getGroupId(), userId)) {
-                    messages.remove(i);
-                    return true;
-                }
-                return false; // Sem permissão
+        return withMessage(messageId, message -> {
+            if (message.getSenderId().equals(userId) || 
+                groupController.canModify(message.getGroupId(), userId)) {
+                unstore(message);
+                appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_DELETE).writeUuid(messageId));
+                return true;
             }
-        }
-        return false; // Mensagem não encontrada
+            return false; // Sem permissão
+        });
     }
 
     public boolean editMessage(UUID messageId, UUID userId, String newContent) {
@@ -95,42 +164,38 @@ public class GroupChatController {
             return false;
         }
         
-        for (GroupMessage message : messages) {
-            if (message.getId().equals(messageId)) {
-
-                if (message.getSenderId().equals(userId)) {
-
-                    messages.remove(message);
-                    GroupMessage newMessage = new GroupMessage(message.getGroupId(), userId, newContent.trim());
-                    newMessage.setId(messageId); // Manter o mesmo ID
-                    messages.add(newMessage);
-                    return true;
-                }
-                return false; // Sem permissão
+        return withMessage(messageId, message -> {
+            if (message.getSenderId().equals(userId)) {
+                // Editada no lugar: mantém id, data e posição no histórico
+                message.setContent(newContent.trim());
+                indexesByGroup.get(message.getGroupId()).update(message);
+                journalPut(message);
+                return true;
             }
-        }
-        return false; // Mensagem não encontrada
+            return false; // Sem permissão
+        });
     }
 
     public String getGroupChatStats(UUID groupId) {
         if (groupId == null) return "Grupo não especificado";
         
-        List<GroupMessage> groupMessages = getGroupMessages(groupId);
-        if (groupMessages.isEmpty()) {
-            return "Nenhuma mensagem neste grupo";
-        }
-        
-        long totalMessages = groupMessages.size();
-        long uniqueUsers = groupMessages.stream()
-            .map(GroupMessage::getSenderId)
-            .distinct()
-            .count();
-        
-        GroupMessage firstMessage = groupMessages.get(0);
-        GroupMessage lastMessage = groupMessages.get(groupMessages.size() - 1);
-        
-        return String.format("Total de mensagens: %d\nUsuários ativos: %d\nPrimeira mensagem: %s\nÚltima mensagem: %s",
-            totalMessages, uniqueUsers, firstMessage.getFormattedDate(), lastMessage.getFormattedDate());
+        return locks.withLock(groupId, () -> {
+            GroupChatLog log = logsByGroup.get(groupId);
+            if (log == null || log.size() == 0) {
+                return "Nenhuma mensagem neste grupo";
+            }
+
+            long totalMessages = log.size();
+            Set<UUID> senders = new HashSet<>();
+            log.forEach(msg -> senders.add(msg.getSenderId()));
+            long uniqueUsers = senders.size();
+
+            GroupMessage firstMessage = log.firstLive();
+            GroupMessage lastMessage = log.tail(1).get(0);
+
+                return String.format("Total de mensagens: %d\nUsuários ativos: %d\nPrimeira mensagem: %s\nÚltima mensagem: %s",
+                totalMessages, uniqueUsers, firstMessage.getFormattedDate(), lastMessage.getFormattedDate());
+        });
     }
 
     public boolean clearGroupChat(UUID groupId, UUID userId) {
@@ -140,36 +205,178 @@ public class GroupChatController {
             return false; // Sem permissão
         }
         
-        messages.removeIf(msg -> msg.getGroupId().equals(groupId));
+        locks.withLock(groupId, () -> {
+            removeGroupLog(groupId);
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_CLEAR_GROUP).writeUuid(groupId));
+        });
+        awaitJournal();
         return true;
     }
 
     public List<GroupMessage> searchMessages(UUID groupId, String searchTerm) {
+        return searchMessages(groupId, searchTerm, Integer.MAX_VALUE);
+    }
+
+    /*
+     * Busca no índice do grupo, sem diferenciar maiúsculas nem acentos. Todas
+     * as palavras precisam aparecer; "termo*" busca por prefixo e "entre
+     * aspas" busca a frase exata. Devolve as limit mensagens mais relevantes.
+     */
+    public List<GroupMessage> searchMessages(UUID groupId, String searchTerm, int limit) {
         if (groupId == null || searchTerm == null || searchTerm.trim().isEmpty()) {
             return new ArrayList<>();
         }
         
-        String term = searchTerm.toLowerCase().trim();
-        return messages.stream()
-            .filter(msg -> msg.getGroupId().equals(groupId) && 
-                          msg.getContent().toLowerCase().contains(term))
-            .sorted((m1, m2) -> m1.getSentAt().compareTo(m2.getSentAt()))
-            .collect(Collectors.toList());
+        return locks.withLock(groupId, () -> {
+            ChatSearchIndex index = indexesByGroup.get(groupId);
+            return index != null ? index.search(searchTerm, limit) : new ArrayList<GroupMessage>();
+        });
     }
 
     public int getTotalMessages() {
-        return messages.size();
+        return groupByMessage.size();
     }
 
     public int getGroupMessageCount(UUID groupId) {
         if (groupId == null) return 0;
         
-        return (int) messages.stream()
-            .filter(msg -> msg.getGroupId().equals(groupId))
-            .count();
+        return locks.withLock(groupId, () -> {
+            GroupChatLog log = logsByGroup.get(groupId);
+            return log != null ? log.size() : 0;
+        });
     }
 
     public void clearAllMessages() {
-        messages.clear();
+        locks.withAllLocks(() -> {
+            logsByGroup.clear();
+            groupByMessage.clear();
+            indexesByGroup.clear();
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_CLEAR));
+        });
+        awaitJournal();
+    }
+
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        switch (op) {
+            case OP_PUT:
+                UUID id = record.readUuid();
+                GroupMessage message = new GroupMessage(record.readUuid(), record.readUuid(), record.readString());
+                message.setId(id);
+                message.setSentAt(record.readDateTime());
+                locks.withLock(message.getGroupId(), () -> {
+                    GroupMessage existing = findMessageById(id);
+                    if (existing != null) {
+                        existing.setContent(message.getContent());
+                        indexesByGroup.get(existing.getGroupId()).update(existing);
+                    } else {
+                        store(message);
+                    }
+                });
+                break;
+            case OP_DELETE:
+                withMessage(record.readUuid(), deleted -> {
+                    unstore(deleted);
+                    return true;
+                });
+                break;
+            case OP_CLEAR_GROUP:
+                removeGroupLog(record.readUuid());
+                break;
+            case OP_CLEAR:
+                logsByGroup.clear();
+                groupByMessage.clear();
+                indexesByGroup.clear();
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        for (UUID groupId : logsByGroup.keySet()) {
+            List<RecordWriter> records = new ArrayList<>();
+            locks.withLock(groupId, () -> {
+                GroupChatLog log = logsByGroup.get(groupId);
+                if (log != null) {
+                    log.forEach(message -> records.add(putRecord(message)));
+                }
+            });
+            records.forEach(out);
+        }
+    }
+
+    // Roda a operação com a faixa do grupo da mensagem; false se a mensagem não existe
+    private boolean withMessage(UUID messageId, Predicate<GroupMessage> action) {
+        UUID groupId = groupByMessage.get(messageId);
+        if (groupId == null) {
+            return false; // Mensagem não encontrada
+        }
+        boolean applied = locks.withLock(groupId, () -> {
+            GroupMessage message = findMessageById(messageId);
+            return message != null && action.test(message);
+        });
+        awaitJournal();
+        return applied;
+    }
+
+    // Chamado com a faixa do grupo da mensagem
+    private GroupMessage findMessageById(UUID messageId) {
+        UUID groupId = groupByMessage.get(messageId);
+        GroupChatLog log = groupId != null ? logsByGroup.get(groupId) : null;
+        return log != null ? log.get(messageId) : null;
+    }
+
+    private void store(GroupMessage message) {
+        logsByGroup.computeIfAbsent(message.getGroupId(), k -> new GroupChatLog()).append(message);
+        indexesByGroup.computeIfAbsent(message.getGroupId(), k -> new ChatSearchIndex()).add(message);
+        groupByMessage.put(message.getId(), message.getGroupId());
+    }
+
+    private void unstore(GroupMessage message) {
+        logsByGroup.get(message.getGroupId()).remove(message.getId());
+        indexesByGroup.get(message.getGroupId()).remove(message.getId());
+        groupByMessage.remove(message.getId());
+    }
+
+    private void removeGroupLog(UUID groupId) {
+        indexesByGroup.remove(groupId);
+        GroupChatLog log = logsByGroup.remove(groupId);
+        if (log != null) {
+            log.forEach(message -> groupByMessage.remove(message.getId()));
+        }
+    }
+
+    private void journalPut(GroupMessage message) {
+        appendToJournal(putRecord(message));
+    }
+
+    // Sob a faixa: o registro entra no journal na ordem das escritas, sem esperar o disco
+    private void appendToJournal(RecordWriter record) {
+        if (journal != null) {
+            journal.appendPending(record);
+        }
+    }
+
+    // Depois de soltar a faixa: só então espera o fsync do que foi anexado
+    private void awaitJournal() {
+        if (journal != null) {
+            journal.awaitPending();
+        }
+    }
+
+    private RecordWriter putRecord(GroupMessage message) {
+        return new RecordWriter(JOURNAL_SOURCE, OP_PUT)
+            .writeUuid(message.getId())
+            .writeUuid(message.getGroupId())
+            .writeUuid(message.getSenderId())
+            .writeString(message.getContent())
+            .writeDateTime(message.getSentAt());
     }
 }
@@ -0,0 +1,134 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import model.GroupMessage;
+
+/*
+ * Histórico de mensagens de um grupo, em ordem cronológica. Mensagens novas
+ * entram no fim; remoções apenas marcam a posição como apagada e o log é
+ * compactado quando as marcas passam a ocupar mais espaço que as mensagens.
+ * As leituras ("últimas N" e "N antes de uma mensagem") andam para trás a
+ * partir de uma posição conhecida, sem ordenar nada.
+ */
+class GroupChatLog {
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    private final List<GroupMessage> entries = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<UUID, Integer> positions = new HashMap<>();
+    private int liveCount;
+
+    void append(GroupMessage message) {
+        int position = entries.size();
+        // Só recua se o relógio andou para trás (mensagens restauradas fora de ordem)
+        while (position > 0 && entries.get(position - 1).getSentAt().isAfter(message.getSentAt())) {
+            position--;
+        }
+        if (position == entries.size()) {
+            entries.add(message);
+            positions.put(message.getId(), position);
+        } else {
+            entries.add(position, message);
+            shiftDeleted(position);
+            reindexFrom(position);
+        }
+        liveCount++;
+    }
+
+    GroupMessage get(UUID messageId) {
+        Integer position = positions.get(messageId);
+        return position != null && !deleted.get(position) ? entries.get(position) : null;
+    }
+
+    boolean remove(UUID messageId) {
+        Integer position = positions.get(messageId);
+        if (position == null || deleted.get(position)) {
+            return false;
+        }
+        deleted.set(position);
+        liveCount--;
+        if (entries.size() >= MIN_COMPACT_SIZE && entries.size() - liveCount > liveCount) {
+            compact();
+        }
+        return true;
+    }
+
+    int size() {
+        return liveCount;
+    }
+
+    // As limit mensagens mais recentes, em ordem cronológica
+    List<GroupMessage> tail(int limit) {
+        return readBackwards(entries.size() - 1, limit);
+    }
+
+    /*
+     * As limit mensagens imediatamente anteriores a beforeMessageId, em ordem
+     * cronológica. A mensagem de referência pode já ter sido apagada.
+     */
+    List<GroupMessage> before(UUID beforeMessageId, int limit) {
+        Integer position = positions.get(beforeMessageId);
+        if (position == null) {
+            throw new IllegalArgumentException("Mensagem de referência não encontrada no grupo");
+        }
+        return readBackwards(position - 1, limit);
+    }
+
+    GroupMessage firstLive() {
+        int first = deleted.nextClearBit(0);
+        return first < entries.size() ? entries.get(first) : null;
+    }
+
+    void forEach(Consumer<GroupMessage> action) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (!deleted.get(i)) {
+                action.accept(entries.get(i));
+            }
+        }
+    }
+
+    private List<GroupMessage> readBackwards(int from, int limit) {
+        List<GroupMessage> result = new ArrayList<>(Math.max(0, Math.min(limit, liveCount)));
+        for (int i = from; i >= 0 && result.size() < limit; i = deleted.previousClearBit(i - 1)) {
+            if (!deleted.get(i)) {
+                result.add(entries.get(i));
+            }
+        }
+        // Lido do mais novo para o mais antigo; devolve em ordem cronológica
+        for (int left = 0, right = result.size() - 1; left < right; left++, right--) {
+            GroupMessage swap = result.get(left);
+            result.set(left, result.get(right));
+            result.set(right, swap);
+        }
+        return result;
+    }
+
+    private void compact() {
+        List<GroupMessage> live = new ArrayList<>(liveCount);
+        forEach(live::add);
+        entries.clear();
+        entries.addAll(live);
+        deleted.clear();
+        positions.clear();
+        reindexFrom(0);
+    }
+
+    private void shiftDeleted(int position) {
+        for (int i = deleted.length() - 1; i >= position; i = deleted.previousSetBit(i - 1)) {
+            deleted.clear(i);
+            deleted.set(i + 1);
+        }
+    }
+
+    private void reindexFrom(int position) {
+        for (int i = position; i < entries.size(); i++) {
+            positions.put(entries.get(i).getId(), i);
+        }
+    }
+}
@@ -3,19 +3,51 @@ package controller;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import model.Group;
 import model.Privacy;
 import model.User;
-
-public class GroupController {
-    private List<Group> groups;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
+
+/*
+ * Concorrência: cada operação sobre um grupo (editar, apagar, membros,
+ * moderadores, dono) roda com a faixa de lock do grupo, revalida o grupo e
+ * anexa o registro ao journal antes de soltar a faixa, então as operações de
+ * um mesmo grupo ficam em ordem no journal e as de grupos diferentes não se
+ * esperam; a espera pelo disco fica para depois de soltá-la. Os índices por
+ * usuário são atualizados pelo MembershipIndex, com o lock dele; a busca de
+ * um grupo por id não pega lock. Apagar todos os grupos pega todas as faixas.
+ */
+public class GroupController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 6;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_INFO = 2;
+    private static final byte OP_DELETE = 3;
+    private static final byte OP_MEMBER_ADD = 4;
+    private static final byte OP_MEMBER_REMOVE = 5;
+    private static final byte OP_MODERATOR_ADD = 6;
+    private static final byte OP_MODERATOR_REMOVE = 7;
+    private static final byte OP_OWNER = 8;
+    private static final byte OP_CLEAR = 9;
+
+    private MembershipIndex<Group> groups;
     private UserController userController;
+    private Journal journal;
+    private final StripedLocks locks = new StripedLocks();
     
     public GroupController(UserController userController) {
-        this.groups = new ArrayList<>();
+        this.groups = new MembershipIndex<>();
         this.userController = userController;
     }
+    
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
 
     public Group createGroup(String name, String description, UUID ownerId, Privacy privacy) {
         if (name == null || name.trim().isEmpty()) {
@@ -40,154 +72,157 @@ public class GroupController {
         }
         
         Group group = new Group(name.trim(), description.trim(), ownerId, privacy);
-        groups.add(group);
+        locks.withLock(group.getId(), () -> {
+            groups.add(group);
+            appendToJournal(putRecord(group));
+        });
+        awaitJournal();
         return group;
     }
 
     public boolean editGroup(UUID groupId, UUID userId, String newName, String newDescription, Privacy newPrivacy) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
-        
-        if (!group.canModify(userId)) {
-            return false; // Usuário não tem permissão para modificar
-        }
-        
-        if (newName != null && !newName.trim().isEmpty()) {
-            group.setName(newName.trim());
-        }
-        
-        if (newDescription != null && !newDescription.trim().isEmpty()) {
-            group.setDescription(newDescription.trim());
-        }
-        
-        if (newPrivacy != null) {
-            group.setPrivacy(newPrivacy);
-        }
-        
-        return true;
+        return withGroup(groupId, group -> {
+            if (!group.canModify(userId)) {
+                return false; // Usuário não tem permissão para modificar
+            }
+
+            if (newName != null && !newName.trim().isEmpty()) {
+                group.setName(newName.trim());
+            }
+
+            if (newDescription != null && !newDescription.trim().isEmpty()) {
+                group.setDescription(newDescription.trim());
+            }
+
+            if (newPrivacy != null) {
+                group.setPrivacy(newPrivacy);
+            }
+
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_INFO)
+                .writeUuid(groupId)
+                .writeString(group.getName())
+                .writeString(group.getDescription())
+                .writeString(group.getPrivacy().name()));
+            return true;
+        });
     }
 
     public boolean deleteGroup(UUID groupId, UUID userId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
-        
-        if (!group.isOwner(userId)) {
-            return false; // Apenas o proprietário pode deletar
-        }
-        
-        return groups.remove(group);
+        return withGroup(groupId, group -> {
+            if (!group.isOwner(userId)) {
+                return false; // Apenas o proprietário pode deletar
+            }
+
+            boolean removed = groups.remove(group);
+            if (removed) {
+                appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_DELETE).writeUuid(groupId));
+            }
+            return removed;
+        });
     }
 
     public boolean addMember(UUID groupId, UUID userId, UUID requesterId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
-
         User user = userController.getUserById(userId);
         if (user == null) return false;
 
-        if (!group.canModify(requesterId)) {
-            return false; // Apenas proprietários e moderadores podem adicionar membros
-        }
+        return withGroup(groupId, group -> {
+            if (!group.canModify(requesterId)) {
+                return false; // Apenas proprietários e moderadores podem adicionar membros
+            }
 
-        if (group.isMember(userId)) {
-            return false; // Usuário já é membro
-        }
-        
-        return group.addMember(userId);
+            if (group.isMember(userId)) {
+                return false; // Usuário já é membro
+            }
+
+            return journalMembership(OP_MEMBER_ADD, groupId, userId, group.addMember(userId));
+        });
     }
 
     public boolean joinGroup(UUID groupId, UUID userId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
-
         User user = userController.getUserById(userId);
         if (user == null) return false;
 
-        if (group.getPrivacy() != Privacy.PUBLIC) {
-            return false; // Apenas grupos públicos permitem entrada direta
-        }
+        return withGroup(groupId, group -> {
+            if (group.getPrivacy() != Privacy.PUBLIC) {
+                return false; // Apenas grupos públicos permitem entrada direta
+            }
 
-        if (group.isMember(userId)) {
-            return false; // Usuário já é membro
-        }
-        
-        return group.addMember(userId);
+            if (group.isMember(userId)) {
+                return false; // Usuário já é membro
+            }
+
+            return journalMembership(OP_MEMBER_ADD, groupId, userId, group.addMember(userId));
+        });
     }
 
     public boolean removeMember(UUID groupId, UUID userId, UUID requesterId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
+        return withGroup(groupId, group -> {
+            if (!group.canModify(requesterId)) {
+                return false; // Apenas proprietários e moderadores podem remover membros
+            }
 
-        if (!group.canModify(requesterId)) {
-            return false; // Apenas proprietários e moderadores podem remover membros
-        }
+            if (group.isOwner(userId)) {
+                return false;
+            }
 
-        if (group.isOwner(userId)) {
-            return false;
-        }
-        
-        return group.removeMember(userId);
+            return journalMembership(OP_MEMBER_REMOVE, groupId, userId, group.removeMember(userId));
+        });
     }
 
     public boolean addModerator(UUID groupId, UUID userId, UUID requesterId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
+        return withGroup(groupId, group -> {
+            if (!group.isOwner(requesterId)) {
+                return false;
+            }
 
-        if (!group.isOwner(requesterId)) {
-            return false;
-        }
+            if (!group.isMember(userId)) {
+                return false;
+            }
 
-        if (!group.isMember(userId)) {
-            return false;
-        }
-        
-        return group.addModerator(userId);
+            return journalMembership(OP_MODERATOR_ADD, groupId, userId, group.addModerator(userId));
+        });
     }
 
     public boolean removeModerator(UUID groupId, UUID userId, UUID requesterId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
+        return withGroup(groupId, group -> {
+            if (!group.isOwner(requesterId)) {
+                return false;
+            }
 
-        if (!group.isOwner(requesterId)) {
-            return false;
-        }
+            if (group.isOwner(userId)) {
+                return false;
+            }
 
-        if (group.isOwner(userId)) {
-            return false;
-        }
-        
-        return group.removeModerator(userId);
+            return journalMembership(OP_MODERATOR_REMOVE, groupId, userId, group.removeModerator(userId));
+        });
     }
 
     public boolean leaveGroup(UUID groupId, UUID userId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
+        return withGroup(groupId, group -> {
+            if (group.isOwner(userId)) {
+                return false;
+            }
 
-        if (group.isOwner(userId)) {
-            return false;
-        }
-        
-        return group.removeMember(userId);
+            return journalMembership(OP_MEMBER_REMOVE, groupId, userId, group.removeMember(userId));
+        });
     }
 
     public boolean transferOwnership(UUID groupId, UUID currentOwnerId, UUID newOwnerId) {
-        Group group = findGroupById(groupId);
-        if (group == null) return false;
+        User newOwner = userController.getUserById(newOwnerId);
+        if (newOwner == null) return false;
 
-        if (!group.isOwner(currentOwnerId)) {
-            return false;
-        }
+        return withGroup(groupId, group -> {
+            if (!group.isOwner(currentOwnerId) || !group.isMember(newOwnerId)) {
+                return false;
+            }
 
-        User newOwner = userController.getUserById(newOwnerId);
-        if (newOwner == null || !group.isMember(newOwnerId)) {
-            return false;
-        }
+            group.setOwnerId(newOwnerId);
 
-        group.setOwnerId(newOwnerId);
+            group.addModerator(newOwnerId);
 
-        group.addModerator(newOwnerId);
-        
-        return true;
+            journalMembership(OP_OWNER, groupId, newOwnerId, true);
+            return true;
+        });
     }
 
     public Group getGroupById(UUID groupId) {
@@ -200,37 +235,31 @@ public class GroupController {
         }
         
         String searchName = name.toLowerCase().trim();
-        return groups.stream()
+        return groups.all().stream()
             .filter(group -> group.getName().toLowerCase().contains(searchName))
             .collect(Collectors.toList());
     }
 
     public List<Group> getAllGroups() {
-        return new ArrayList<>(groups);
+        return groups.all();
     }
 
     public List<Group> getPublicGroups() {
-        return groups.stream()
+        return groups.all().stream()
             .filter(group -> group.getPrivacy() == Privacy.PUBLIC)
             .collect(Collectors.toList());
     }
 
     public List<Group> getGroupsByMember(UUID userId) {
-        return groups.stream()
-            .filter(group -> group.isMember(userId))
-            .collect(Collectors.toList());
+        return groups.byMember(userId);
     }
 
     public List<Group> getGroupsByOwner(UUID userId) {
-        return groups.stream()
-            .filter(group -> group.isOwner(userId))
-            .collect(Collectors.toList());
+        return groups.byOwner(userId);
     }
 
     public List<Group> getGroupsByModerator(UUID userId) {
-        return groups.stream()
-            .filter(group -> group.isModerator(userId))
-            .collect(Collectors.toList());
+        return groups.byModerator(userId);
     }
 
     public boolean isMember(UUID groupId, UUID userId) {
@@ -267,21 +296,132 @@ public class GroupController {
     }
 
     private Group findGroupById(UUID groupId) {
-        if (groupId == null) return null;
-        
-        for (Group group : groups) {
-            if (group.getId().equals(groupId)) {
-                return group;
-            }
-        }
-        return null;
+        return groups.get(groupId);
     }
 
     public void clearAllGroups() {
-        groups.clear();
+        locks.withAllLocks(() -> {
+            groups.clear();
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_CLEAR));
+        });
+        awaitJournal();
     }
 
     public int getTotalGroups() {
         return groups.size();
     }
+
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        if (op == OP_CLEAR) {
+            groups.clear();
+            return;
+        }
+
+        UUID groupId = record.readUuid();
+        if (op == OP_PUT) {
+            String name = record.readString();
+            String description = record.readString();
+            UUID ownerId = record.readUuid();
+            Group group = new Group(name, description, ownerId, Privacy.valueOf(record.readString()));
+            group.setId(groupId);
+            group.setCreatedAt(record.readDateTime());
+            group.setMembers(record.readUuids());
+            group.setModerators(record.readUuids());
+            groups.add(group);
+            return;
+        }
+
+        locks.withLock(groupId, () -> {
+            Group group = findGroupById(groupId);
+            if (group != null) {
+                apply(op, group, record);
+            }
+        });
+    }
+
+    private void apply(byte op, Group group, RecordReader record) {
+        switch (op) {
+            case OP_INFO:
+                group.setName(record.readString());
+                group.setDescription(record.readString());
+                group.setPrivacy(Privacy.valueOf(record.readString()));
+                break;
+            case OP_DELETE:
+                groups.remove(group);
+                break;
+            case OP_MEMBER_ADD:
+                group.addMember(record.readUuid());
+                break;
+            case OP_MEMBER_REMOVE:
+                group.removeMember(record.readUuid());
+                break;
+            case OP_MODERATOR_ADD:
+                group.addModerator(record.readUuid());
+                break;
+            case OP_MODERATOR_REMOVE:
+                group.removeModerator(record.readUuid());
+                break;
+            case OP_OWNER:
+                group.setOwnerId(record.readUuid());
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        for (Group group : groups.all()) {
+            out.accept(putRecord(group));
+        }
+    }
+
+    private RecordWriter putRecord(Group group) {
+        return new RecordWriter(JOURNAL_SOURCE, OP_PUT)
+            .writeUuid(group.getId())
+            .writeString(group.getName())
+            .writeString(group.getDescription())
+            .writeUuid(group.getOwnerId())
+            .writeString(group.getPrivacy().name())
+            .writeDateTime(group.getCreatedAt())
+            .writeUuids(group.getMembers())
+            .writeUuids(group.getModerators());
+    }
+
+    // Roda a operação com a faixa do grupo, se ele ainda existir
+    private boolean withGroup(UUID groupId, Predicate<Group> action) {
+        boolean applied = locks.withLock(groupId, () -> {
+            Group group = findGroupById(groupId);
+            return group != null && action.test(group);
+        });
+        awaitJournal();
+        return applied;
+    }
+
+    private boolean journalMembership(byte op, UUID groupId, UUID userId, boolean changed) {
+        if (changed) {
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, op).writeUuid(groupId).writeUuid(userId));
+        }
+        return changed;
+    }
+
+    // Sob a faixa: o registro entra no journal na ordem das escritas, sem esperar o disco
+    private void appendToJournal(RecordWriter record) {
+        if (journal != null) {
+            journal.appendPending(record);
+        }
+    }
+
+    // Depois de soltar a faixa: só então espera o fsync do que foi anexado
+    private void awaitJournal() {
+        if (journal != null) {
+            journal.awaitPending();
+        }
+    }
 }
@@ -0,0 +1,12 @@
+package controller;
+
+import model.GroupMessage;
+
+/*
+ * Observa as mensagens novas dos chats de grupo. Chamado com a faixa de
+ * lock do grupo, então as mensagens de um grupo chegam na ordem do
+ * histórico: não pode bloquear nem voltar ao GroupChatController.
+ */
+public interface GroupMessageListener {
+    void messageSent(GroupMessage message);
+}
@@ -0,0 +1,193 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import model.Group;
+import model.MemberEntity;
+import model.MembershipListener;
+
+/*
+ * Guarda grupos ou eventos por id e mantém os índices reversos usuário ->
+ * entidades (como membro, dono e moderador). As entidades registradas avisam
+ * o índice de cada mudança de participação, então ele nunca precisa varrer
+ * todas as entidades. A busca por id (no caminho de toda checagem de
+ * permissão) vai direto a um mapa concorrente, sem lock. Os índices por
+ * usuário ficam sob um lock de leitura e escrita, o último lock pego: os
+ * avisos chegam com a faixa da entidade já pega, e as consultas só
+ * disputam com as escritas, não entre si.
+ */
+class MembershipIndex<T extends MemberEntity> implements MembershipListener {
+    private final Map<UUID, T> byId = new ConcurrentHashMap<>();
+    private final Map<UUID, T> inOrder = new LinkedHashMap<>();
+    private final Map<UUID, Map<UUID, T>> byMember = new HashMap<>();
+    private final Map<UUID, Map<UUID, T>> byOwner = new HashMap<>();
+    private final Map<UUID, Map<UUID, T>> byModerator = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void add(T entity) {
+        write(() -> {
+            byId.put(entity.getId(), entity);
+            inOrder.put(entity.getId(), entity);
+            for (UUID userId : entity.getMembers()) {
+                link(byMember, userId, entity);
+            }
+            link(byOwner, entity.getOwnerId(), entity);
+            if (entity instanceof Group) {
+                for (UUID userId : ((Group) entity).getModerators()) {
+                    link(byModerator, userId, entity);
+                }
+            }
+            entity.setMembershipListener(this);
+        });
+    }
+
+    boolean remove(T entity) {
+        return write(() -> {
+            if (byId.remove(entity.getId()) == null) {
+                return false;
+            }
+            inOrder.remove(entity.getId());
+            entity.setMembershipListener(null);
+            for (UUID userId : entity.getMembers()) {
+                unlink(byMember, userId, entity);
+            }
+            unlink(byOwner, entity.getOwnerId(), entity);
+            if (entity instanceof Group) {
+                for (UUID userId : ((Group) entity).getModerators()) {
+                    unlink(byModerator, userId, entity);
+                }
+            }
+            return true;
+        });
+    }
+
+    void clear() {
+        write(() -> {
+            for (T entity : inOrder.values()) {
+                entity.setMembershipListener(null);
+            }
+            byId.clear();
+            inOrder.clear();
+            byMember.clear();
+            byOwner.clear();
+            byModerator.clear();
+        });
+    }
+
+    T get(UUID id) {
+        return id != null ? byId.get(id) : null;
+    }
+
+    // Cópia, em ordem de inserção
+    List<T> all() {
+        return read(() -> new ArrayList<>(inOrder.values()));
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    List<T> byMember(UUID userId) {
+        return read(() -> values(byMember, userId));
+    }
+
+    List<T> byOwner(UUID userId) {
+        return read(() -> values(byOwner, userId));
+    }
+
+    List<T> byModerator(UUID userId) {
+        return read(() -> values(byModerator, userId));
+    }
+
+    @Override
+    public void memberAdded(MemberEntity entity, UUID userId) {
+        write(() -> {
+            T indexed = byId.get(entity.getId());
+            if (indexed != null) {
+                link(byMember, userId, indexed);
+            }
+        });
+    }
+
+    @Override
+    public void memberRemoved(MemberEntity entity, UUID userId) {
+        write(() -> unlink(byMember, userId, entity));
+    }
+
+    @Override
+    public void moderatorAdded(MemberEntity entity, UUID userId) {
+        write(() -> {
+            T indexed = byId.get(entity.getId());
+            if (indexed != null) {
+                link(byModerator, userId, indexed);
+            }
+        });
+    }
+
+    @Override
+    public void moderatorRemoved(MemberEntity entity, UUID userId) {
+        write(() -> unlink(byModerator, userId, entity));
+    }
+
+    @Override
+    public void ownerChanged(MemberEntity entity, UUID previousOwnerId, UUID newOwnerId) {
+        write(() -> {
+            T indexed = byId.get(entity.getId());
+            if (indexed != null) {
+                unlink(byOwner, previousOwnerId, entity);
+                link(byOwner, newOwnerId, indexed);
+            }
+        });
+    }
+
+    private <R> R read(Supplier<R> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <R> R write(Supplier<R> action) {
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(Runnable action) {
+        write(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void link(Map<UUID, Map<UUID, T>> index, UUID userId, T entity) {
+        index.computeIfAbsent(userId, k -> new LinkedHashMap<>()).put(entity.getId(), entity);
+    }
+
+    private void unlink(Map<UUID, Map<UUID, T>> index, UUID userId, MemberEntity entity) {
+        Map<UUID, T> entities = index.get(userId);
+        if (entities != null) {
+            entities.remove(entity.getId());
+            if (entities.isEmpty()) {
+                index.remove(userId);
+            }
+        }
+    }
+
+    private List<T> values(Map<UUID, Map<UUID, T>> index, UUID userId) {
+        Map<UUID, T> entities = index.get(userId);
+        return entities != null ? new ArrayList<>(entities.values()) : new ArrayList<>();
+    }
+}
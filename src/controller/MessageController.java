@@ -5,17 +5,55 @@ import model.User;
 import java.util.UUID;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import model.Privacy;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
 
-public class MessageController {
-    private List<Message> messages;
+/*
+ * Concorrência: uma mensagem mexe na caixa de saída do remetente, na de
+ * entrada do destinatário e na conversa dos dois, então enviar, ler e apagar
+ * pegam as faixas de lock dos dois usuários. As consultas de um usuário pegam
+ * só a faixa dele (ou as duas, para a conversa) e veem cada operação inteira
+ * ou nada dela. Limpar tudo pega todas as faixas.
+ */
+public class MessageController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 5;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_READ = 2;
+    private static final byte OP_CONVERSATION_READ = 3;
+    private static final byte OP_DELETE = 4;
+    private static final byte OP_CLEAR = 5;
+
+    // Todas as mensagens, e os índices derivados delas (cada um em ordem de envio)
+    private Map<UUID, Message> messagesById;
+    private Map<UserPair, Map<UUID, Message>> conversations;
+    private Map<UUID, Map<UUID, Message>> inboxes;
+    private Map<UUID, Map<UUID, Message>> outboxes;
+    private Map<UUID, Integer> unreadCounts;
     private FriendController friendController;
     private UserController userController;
     private NotificationController notificationController;
+    private Journal journal;
+    private final StripedLocks locks = new StripedLocks();
+    private static final Comparator<Message> SENT_ORDER =
+        Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId);
 
     public MessageController(FriendController friendController, UserController userController) {
-        this.messages = new ArrayList<>();
+        this.messagesById = new ConcurrentHashMap<>();
+        this.conversations = new ConcurrentHashMap<>();
+        this.inboxes = new ConcurrentHashMap<>();
+        this.outboxes = new ConcurrentHashMap<>();
+        this.unreadCounts = new ConcurrentHashMap<>();
         this.friendController = friendController;
         this.userController = userController;
         this.notificationController = null; // Será definido posteriormente
@@ -24,6 +62,10 @@ public class MessageController {
     public void setNotificationController(NotificationController notificationController) {
         this.notificationController = notificationController;
     }
+    
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
 
     public Message sendMessage(UUID senderId, UUID receiverId, String content) {
         if (content == null || content.trim().isEmpty()) {
@@ -41,80 +83,244 @@ public class MessageController {
             throw new IllegalArgumentException("Usuário não encontrado");
         }
         
-        Message message = new Message(senderId, receiverId, content.trim());
-        messages.add(message);
+        // Criada com as faixas pegas: as caixas ficam em ordem de data de envio
+        Message message = locks.withLocks(senderId, receiverId, () -> {
+            Message sent = new Message(senderId, receiverId, content.trim());
+            store(sent);
+            appendToJournal(putRecord(sent));
+            return sent;
+        });
+        awaitJournal();
 
         if (notificationController != null) {
-            notificationController.createMessageNotification(receiverId, sender.getName(), message.getId());
+            notificationController.queueMessageNotification(receiverId, senderId, message.getId());
         }
         
         return message;
     }
 
     public List<Message> getMessages(UUID userId) {
-        return messages.stream()
-                .filter(msg -> msg.getReceiverId().equals(userId) || msg.getSenderId().equals(userId))
-                .collect(Collectors.toList());
+        // Intercala entrada e saída, ambas já em ordem de envio
+        List<Message> received = getMessagesReceived(userId);
+        List<Message> sent = getMessagesSent(userId);
+        List<Message> all = new ArrayList<>(received.size() + sent.size());
+        int r = 0;
+        int s = 0;
+        while (r < received.size() || s < sent.size()) {
+            if (s >= sent.size() || (r < received.size()
+                    && !received.get(r).getCreatedAt().isAfter(sent.get(s).getCreatedAt()))) {
+                all.add(received.get(r++));
+            } else {
+                all.add(sent.get(s++));
+            }
+        }
+        return all;
     }
 
     public List<Message> getMessagesSent(UUID userId) {
-        return messages.stream()
-                .filter(msg -> msg.getSenderId().equals(userId))
-                .collect(Collectors.toList());
+        return locks.withLock(userId, () -> new ArrayList<>(mailbox(outboxes, userId)));
     }
 
     public List<Message> getMessagesReceived(UUID userId) {
-        return messages.stream()
-                .filter(msg -> msg.getReceiverId().equals(userId))
-                .collect(Collectors.toList());
+        return locks.withLock(userId, () -> new ArrayList<>(mailbox(inboxes, userId)));
     }
 
     public List<Message> getConversation(UUID user1Id, UUID user2Id) {
-        return messages.stream()
-                .filter(msg -> 
-                    (msg.getSenderId().equals(user1Id) && msg.getReceiverId().equals(user2Id)) ||
-                    (msg.getSenderId().equals(user2Id) && msg.getReceiverId().equals(user1Id))
-                )
-                .collect(Collectors.toList());
+        return locks.withLocks(user1Id, user2Id, () -> {
+            Map<UUID, Message> conversation = conversations.get(new UserPair(user1Id, user2Id));
+            return conversation != null ? new ArrayList<>(conversation.values()) : new ArrayList<Message>();
+        });
     }
 
     public boolean markMessageAsRead(UUID messageId) {
-        for (Message msg : messages) {
-            if (msg.getId().equals(messageId)) {
-                msg.markAsRead();
-                return true;
+        Message msg = messagesById.get(messageId);
+        if (msg == null) return false;
+
+        boolean found = locks.withLocks(msg.getSenderId(), msg.getReceiverId(), () -> {
+            if (messagesById.get(messageId) != msg) {
+                return false; // Apagada enquanto esperava o lock
             }
-        }
-        return false;
+            boolean wasUnread = !msg.isRead();
+            markRead(msg);
+            if (wasUnread) {
+                appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_READ).writeUuid(messageId));
+            }
+            return true;
+        });
+        awaitJournal();
+        return found;
     }
 
     public void markConversationAsRead(UUID user1Id, UUID user2Id) {
-        messages.stream()
-                .filter(msg -> 
-                    msg.getReceiverId().equals(user1Id) && 
-                    msg.getSenderId().equals(user2Id) && 
-                    !msg.isRead()
-                )
-                .forEach(Message::markAsRead);
+        locks.withLocks(user1Id, user2Id, () -> {
+            Map<UUID, Message> conversation = conversations.get(new UserPair(user1Id, user2Id));
+            boolean changed = false;
+            if (conversation != null) {
+                for (Message msg : conversation.values()) {
+                    if (msg.getReceiverId().equals(user1Id) && !msg.isRead()) {
+                        markRead(msg);
+                        changed = true;
+                    }
+                }
+            }
+            // Abrir uma conversa já lida não custa um fsync
+            if (changed) {
+                appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_CONVERSATION_READ).writeUuid(user1Id).writeUuid(user2Id));
+            }
+        });
+        awaitJournal();
     }
 
     public boolean deleteMessage(UUID messageId, UUID userId) {
-        return messages.removeIf(msg -> 
-            msg.getId().equals(messageId) && msg.getSenderId().equals(userId)
-        );
+        Message msg = messagesById.get(messageId);
+        if (msg == null || !msg.getSenderId().equals(userId)) return false;
+
+        boolean deleted = locks.withLocks(msg.getSenderId(), msg.getReceiverId(), () -> {
+            if (messagesById.get(messageId) != msg) {
+                return false;
+            }
+            unstore(msg);
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_DELETE).writeUuid(messageId).writeUuid(userId));
+            return true;
+        });
+        awaitJournal();
+        return deleted;
     }
 
     public int getUnreadMessageCount(UUID userId) {
-        return (int) messages.stream()
-                .filter(msg -> msg.getReceiverId().equals(userId) && !msg.isRead())
-                .count();
+        return unreadCounts.getOrDefault(userId, 0);
     }
 
+    // Em ordem de envio
     public List<Message> getAllMessages() {
-        return new ArrayList<>(messages);
+        List<Message> all = new ArrayList<>(messagesById.values());
+        all.sort(SENT_ORDER);
+        return all;
     }
 
     public void clearAllMessages() {
-        messages.clear();
+        locks.withAllLocks(() -> {
+            messagesById.clear();
+            conversations.clear();
+            inboxes.clear();
+            outboxes.clear();
+            unreadCounts.clear();
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_CLEAR));
+        });
+        awaitJournal();
+    }
+
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        switch (op) {
+            case OP_PUT:
+                UUID id = record.readUuid();
+                Message message = new Message(record.readUuid(), record.readUuid(), record.readString());
+                message.setId(id);
+                message.setCreatedAt(record.readDateTime());
+                if (record.readBoolean()) {
+                    message.markAsRead();
+                }
+                locks.withLocks(message.getSenderId(), message.getReceiverId(), () -> store(message));
+                break;
+            case OP_READ:
+                markMessageAsRead(record.readUuid());
+                break;
+            case OP_CONVERSATION_READ:
+                markConversationAsRead(record.readUuid(), record.readUuid());
+                break;
+            case OP_DELETE:
+                deleteMessage(record.readUuid(), record.readUuid());
+                break;
+            case OP_CLEAR:
+                clearAllMessages();
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        // Em ordem de envio: store() monta as caixas e conversas na ordem em que as recebe
+        for (Message message : getAllMessages()) {
+            out.accept(putRecord(message));
+        }
+    }
+
+    private void store(Message message) {
+        messagesById.put(message.getId(), message);
+        conversations.computeIfAbsent(new UserPair(message.getSenderId(), message.getReceiverId()), k -> new LinkedHashMap<>())
+            .put(message.getId(), message);
+        inboxes.computeIfAbsent(message.getReceiverId(), k -> new LinkedHashMap<>()).put(message.getId(), message);
+        outboxes.computeIfAbsent(message.getSenderId(), k -> new LinkedHashMap<>()).put(message.getId(), message);
+        if (!message.isRead()) {
+            unreadCounts.merge(message.getReceiverId(), 1, Integer::sum);
+        }
+    }
+
+    private void unstore(Message message) {
+        messagesById.remove(message.getId());
+        removeFrom(conversations, new UserPair(message.getSenderId(), message.getReceiverId()), message);
+        removeFrom(inboxes, message.getReceiverId(), message);
+        removeFrom(outboxes, message.getSenderId(), message);
+        if (!message.isRead()) {
+            decrementUnread(message.getReceiverId());
+        }
+    }
+
+    private void markRead(Message message) {
+        if (!message.isRead()) {
+            message.markAsRead();
+            decrementUnread(message.getReceiverId());
+        }
+    }
+
+    private void decrementUnread(UUID userId) {
+        unreadCounts.computeIfPresent(userId, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static <K> void removeFrom(Map<K, Map<UUID, Message>> index, K key, Message message) {
+        Map<UUID, Message> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(message.getId());
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static Collection<Message> mailbox(Map<UUID, Map<UUID, Message>> index, UUID userId) {
+        Map<UUID, Message> bucket = index.get(userId);
+        return bucket != null ? bucket.values() : Collections.emptyList();
+    }
+
+    // Sob as faixas: o registro entra no journal na ordem das escritas, sem esperar o disco
+    private void appendToJournal(RecordWriter record) {
+        if (journal != null) {
+            journal.appendPending(record);
+        }
+    }
+
+    // Depois de soltar as faixas: só então espera o fsync do que foi anexado
+    private void awaitJournal() {
+        if (journal != null) {
+            journal.awaitPending();
+        }
+    }
+
+    private RecordWriter putRecord(Message message) {
+        return new RecordWriter(JOURNAL_SOURCE, OP_PUT)
+            .writeUuid(message.getId())
+            .writeUuid(message.getSenderId())
+            .writeUuid(message.getReceiverId())
+            .writeString(message.getContent())
+            .writeDateTime(message.getCreatedAt())
+            .writeBoolean(message.isRead());
     }
 }
@@ -1,94 +1,277 @@
 package controller;
 
 import model.Notification;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-public class NotificationController {
-    private List<Notification> notifications;
+/*
+ * Concorrência: cada notificação pertence à caixa de um único usuário, e
+ * toda operação sobre a caixa (criar, ler, marcar, apagar) pega a faixa de
+ * lock desse usuário. Operações em caixas diferentes não disputam lock, e
+ * cada uma é atômica junto com o registro no journal; a espera pelo disco
+ * fica para depois de soltar a faixa.
+ */
+public class NotificationController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 9;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_READ = 2;
+    private static final byte OP_READ_ALL = 3;
+    private static final byte OP_DELETE = 4;
+    private static final byte OP_DELETE_ALL = 5;
+
+    private static final Comparator<Notification> CHRONOLOGICAL =
+        Comparator.comparing(Notification::getCreatedAt).thenComparing(Notification::getId);
+
+    private Map<UUID, Notification> notificationsById;
+    private Map<UUID, Inbox> inboxes; // cada Inbox só muda sob a faixa do dono
     private UserController userController;
+    private Journal journal;
+    private volatile NotificationListener listener;
+    private final StripedLocks locks = new StripedLocks();
+    private final NotificationQueue queue;
 
     public NotificationController(UserController userController) {
-        this.notifications = new ArrayList<>();
+        this.notificationsById = new ConcurrentHashMap<>();
+        this.inboxes = new ConcurrentHashMap<>();
         this.userController = userController;
+        this.queue = new NotificationQueue(this, userController);
+    }
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public void setNotificationListener(NotificationListener listener) {
+        this.listener = listener;
     }
 
     public Notification createNotification(UUID userId, String type, String title, String message, UUID relatedId) {
-        Notification notification = new Notification(userId, type, title, message, relatedId);
-        notifications.add(notification);
+        return add(new Notification(userId, type, title, message, relatedId));
+    }
+
+    /*
+     * Notificações de curtidas, mensagens e solicitações de amizade, criadas
+     * depois pela fila (NotificationQueue), agrupando rajadas: quem curte ou
+     * envia não espera pela caixa do destinatário.
+     */
+    public void queuePostLikeNotification(UUID userId, UUID likerId, UUID postId) {
+        queue.postLike(userId, likerId, postId);
+    }
+
+    public void queueMessageNotification(UUID userId, UUID senderId, UUID messageId) {
+        queue.message(userId, senderId, messageId);
+    }
+
+    public void queueFriendRequestNotification(UUID userId, UUID requesterId) {
+        queue.friendRequest(userId, requesterId);
+    }
+
+    // Profundidade e contadores da fila de notificações
+    public Map<String, Long> getQueueStats() {
+        return queue.getStats();
+    }
+
+    private Notification add(Notification notification) {
+        locks.withLock(notification.getUserId(), () -> {
+            store(notification);
+            appendToJournal(putRecord(notification));
+            published(notification);
+        });
+        awaitJournal();
         return notification;
     }
 
+    /*
+     * Guarda um lote da fila esperando o journal uma vez só, pelo último
+     * registro. Cada notificação fica visível assim que guardada, antes de
+     * chegar ao disco: numa queda perde-se no máximo o lote em andamento,
+     * nunca a curtida ou a mensagem que o gerou.
+     */
+    void addBatch(List<Notification> batch) {
+        long last = -1;
+        for (Notification notification : batch) {
+            long seq = locks.withLock(notification.getUserId(), () -> {
+                store(notification);
+                long appended = journal != null ? journal.appendDeferred(putRecord(notification)) : -1;
+                published(notification);
+                return appended;
+            });
+            last = Math.max(last, seq);
+        }
+        if (journal != null) {
+            journal.awaitDurable(last);
+        }
+    }
+
+    private void published(Notification notification) {
+        NotificationListener current = listener;
+        if (current != null) {
+            current.notificationCreated(notification, inboxes.get(notification.getUserId()).unread);
+        }
+    }
+
+    public Notification getNotificationById(UUID notificationId) {
+        return notificationsById.get(notificationId);
+    }
+
     public List<Notification> getNotificationsByUser(UUID userId) {
-        return notifications.stream()
-                .filter(n -> n.getUserId().equals(userId))
-                .sorted(Comparator.comparing(Notification::getCreatedAt).reversed())
-                .collect(Collectors.toList());
+        return newestFirst(userId, n -> true);
     }
 
     public List<Notification> getUnreadNotificationsByUser(UUID userId) {
-        return notifications.stream()
-                .filter(n -> n.getUserId().equals(userId) && !n.isRead())
-                .sorted(Comparator.comparing(Notification::getCreatedAt).reversed())
-                .collect(Collectors.toList());
+        return newestFirst(userId, n -> !n.isRead());
     }
 
     public boolean markAsRead(UUID notificationId) {
-        for (Notification notification : notifications) {
-            if (notification.getId().equals(notificationId)) {
-                notification.setRead(true);
-                return true;
+        Notification notification = notificationsById.get(notificationId);
+        if (notification == null) return false;
+
+        boolean found = locks.withLock(notification.getUserId(), () -> {
+            if (notificationsById.get(notificationId) != notification) {
+                return false; // Apagada enquanto esperava o lock
             }
-        }
-        return false;
+            Inbox inbox = inboxes.get(notification.getUserId());
+            boolean wasUnread = !notification.isRead();
+            markRead(inbox, notification);
+            if (wasUnread) {
+                journalId(OP_READ, notificationId);
+                unreadChanged(notification.getUserId(), inbox.unread);
+            }
+            return true;
+        });
+        awaitJournal();
+        return found;
     }
 
     public void markAllAsRead(UUID userId) {
-        notifications.stream()
-                .filter(n -> n.getUserId().equals(userId) && !n.isRead())
-                .forEach(n -> n.setRead(true));
+        locks.withLock(userId, () -> {
+            Inbox inbox = inboxes.get(userId);
+            boolean hadUnread = inbox != null && inbox.unread > 0;
+            if (hadUnread) {
+                for (Notification notification : inbox.entries) {
+                    markRead(inbox, notification);
+                }
+                // Só quando algo mudou: zerar um contador já zerado não custa um fsync
+                journalId(OP_READ_ALL, userId);
+                unreadChanged(userId, 0);
+            }
+        });
+        awaitJournal();
     }
 
     public int getUnreadCount(UUID userId) {
-        return (int) notifications.stream()
-                .filter(n -> n.getUserId().equals(userId) && !n.isRead())
-                .count();
+        return locks.withLock(userId, () -> {
+            Inbox inbox = inboxes.get(userId);
+            return inbox != null ? inbox.unread : 0;
+        });
+    }
+
+    // Reenvia o total de não lidas ao listener, na mesma ordem das demais alterações
+    public void publishUnreadCount(UUID userId) {
+        locks.withLock(userId, () -> {
+            Inbox inbox = inboxes.get(userId);
+            unreadChanged(userId, inbox != null ? inbox.unread : 0);
+        });
     }
 
     public boolean deleteNotification(UUID notificationId) {
-        return notifications.removeIf(n -> n.getId().equals(notificationId));
+        Notification notification = notificationsById.get(notificationId);
+        if (notification == null) return false;
+
+        boolean deleted = locks.withLock(notification.getUserId(), () -> {
+            if (!notificationsById.remove(notificationId, notification)) {
+                return false;
+            }
+            Inbox inbox = inboxes.get(notification.getUserId());
+            int index = Collections.binarySearch(inbox.entries, notification, CHRONOLOGICAL);
+            if (index >= 0) {
+                inbox.entries.remove(index);
+            }
+            inbox.typeCounts.computeIfPresent(notification.getType(), (type, count) -> count > 1 ? count - 1 : null);
+            if (!notification.isRead()) {
+                inbox.unread--;
+            }
+            if (inbox.entries.isEmpty()) {
+                inboxes.remove(notification.getUserId());
+            }
+            journalId(OP_DELETE, notificationId);
+            if (!notification.isRead()) {
+                unreadChanged(notification.getUserId(), inbox.unread);
+            }
+            return true;
+        });
+        awaitJournal();
+        return deleted;
     }
 
     public void deleteAllNotifications(UUID userId) {
-        notifications.removeIf(n -> n.getUserId().equals(userId));
+        locks.withLock(userId, () -> {
+            Inbox inbox = inboxes.remove(userId);
+            if (inbox == null) {
+                return;
+            }
+            for (Notification notification : inbox.entries) {
+                notificationsById.remove(notification.getId());
+            }
+            journalId(OP_DELETE_ALL, userId);
+            if (inbox.unread > 0) {
+                unreadChanged(userId, 0);
+            }
+        });
+        awaitJournal();
     }
 
     public List<Notification> getNotificationsByType(UUID userId, String type) {
-        return notifications.stream()
-                .filter(n -> n.getUserId().equals(userId) && n.getType().equals(type))
-                .sorted(Comparator.comparing(Notification::getCreatedAt).reversed())
-                .collect(Collectors.toList());
+        return newestFirst(userId, n -> n.getType().equals(type));
     }
 
     public Notification createFriendRequestNotification(UUID userId, String requesterName) {
-        return createNotification(userId, "FRIEND_REQUEST", 
+        return add(friendRequestNotification(userId, requesterName));
+    }
+
+    public Notification createMessageNotification(UUID userId, String senderName, UUID messageId) {
+        return add(messageNotification(userId, senderName, 1, messageId));
+    }
+
+    public Notification createPostLikeNotification(UUID userId, String likerName, UUID postId) {
+        return add(postLikeNotification(userId, Collections.singletonList(likerName), 1, postId));
+    }
+
+    static Notification friendRequestNotification(UUID userId, String requesterName) {
+        return new Notification(userId, "FRIEND_REQUEST", 
             "Nova solicitação de amizade", 
             requesterName + " quer ser seu amigo!", 
             null);
     }
 
-    public Notification createMessageNotification(UUID userId, String senderName, UUID messageId) {
-        return createNotification(userId, "MESSAGE", 
+    // Várias mensagens do mesmo remetente numa notificação só, apontando para a última
+    static Notification messageNotification(UUID userId, String senderName, int messages, UUID latestMessageId) {
+        return new Notification(userId, "MESSAGE", 
             "Nova mensagem", 
-            senderName + " enviou uma mensagem para você", 
-            messageId);
+            senderName + (messages == 1 ? " enviou uma mensagem para você" : " enviou " + messages + " mensagens para você"), 
+            latestMessageId);
     }
 
-    public Notification createPostLikeNotification(UUID userId, String likerName, UUID postId) {
-        return createNotification(userId, "POST_LIKE", 
-            "Post curtido", 
-            likerName + " curtiu seu post", 
-            postId);
+    /*
+     * Várias curtidas do mesmo post numa notificação só. likerNames vem do
+     * mais recente para o mais antigo; likers é o total de pessoas.
+     */
+    static Notification postLikeNotification(UUID userId, List<String> likerNames, int likers, UUID postId) {
+        String message;
+        if (likers == 1) {
+            message = likerNames.get(0) + " curtiu seu post";
+        } else if (likers == 2) {
+            message = likerNames.get(0) + " e " + likerNames.get(1) + " curtiram seu post";
+        } else {
+            message = likerNames.get(0) + " e mais " + (likers - 1) + " pessoas curtiram seu post";
+        }
+        return new Notification(userId, "POST_LIKE", "Post curtido", message, postId);
     }
 
     public Notification createGroupInviteNotification(UUID userId, String groupName, String inviterName, UUID groupId) {
@@ -106,23 +289,154 @@ public class NotificationController {
     }
 
     public Map<String, Integer> getNotificationStats(UUID userId) {
-        Map<String, Integer> stats = new HashMap<>();
-        List<Notification> userNotifications = getNotificationsByUser(userId);
-        
-        stats.put("total", userNotifications.size());
-        stats.put("unread", getUnreadCount(userId));
-
-        Map<String, Long> typeCounts = userNotifications.stream()
-                .collect(Collectors.groupingBy(Notification::getType, Collectors.counting()));
-        
-        for (Map.Entry<String, Long> entry : typeCounts.entrySet()) {
-            stats.put(entry.getKey().toLowerCase(), entry.getValue().intValue());
-        }
-        
-        return stats;
+        return locks.withLock(userId, () -> {
+            Map<String, Integer> stats = new HashMap<>();
+            Inbox inbox = inboxes.get(userId);
+            
+            stats.put("total", inbox != null ? inbox.entries.size() : 0);
+            stats.put("unread", inbox != null ? inbox.unread : 0);
+
+            if (inbox != null) {
+                for (Map.Entry<String, Integer> entry : inbox.typeCounts.entrySet()) {
+                    stats.put(entry.getKey().toLowerCase(), entry.getValue());
+                }
+            }
+            
+            return stats;
+        });
     }
 
+    // Em ordem de criação
     public List<Notification> getAllNotifications() {
-        return new ArrayList<>(notifications);
+        List<Notification> all = new ArrayList<>(notificationsById.values());
+        all.sort(CHRONOLOGICAL);
+        return all;
+    }
+
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        switch (op) {
+            case OP_PUT:
+                UUID id = record.readUuid();
+                Notification notification = new Notification(record.readUuid(), record.readString(),
+                    record.readString(), record.readString(), record.readNullableUuid());
+                notification.setId(id);
+                notification.setCreatedAt(record.readDateTime());
+                notification.setRead(record.readBoolean());
+                locks.withLock(notification.getUserId(), () -> store(notification));
+                break;
+            case OP_READ:
+                markAsRead(record.readUuid());
+                break;
+            case OP_READ_ALL:
+                markAllAsRead(record.readUuid());
+                break;
+            case OP_DELETE:
+                deleteNotification(record.readUuid());
+                break;
+            case OP_DELETE_ALL:
+                deleteAllNotifications(record.readUuid());
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        // Em ordem de criação: store() insere cada uma procurando a posição do fim da caixa para trás
+        for (Notification notification : getAllNotifications()) {
+            out.accept(putRecord(notification));
+        }
+    }
+
+    private void store(Notification notification) {
+        notificationsById.put(notification.getId(), notification);
+
+        Inbox inbox = inboxes.computeIfAbsent(notification.getUserId(), k -> new Inbox());
+        int index = inbox.entries.size();
+        while (index > 0 && CHRONOLOGICAL.compare(inbox.entries.get(index - 1), notification) > 0) {
+            index--;
+        }
+        inbox.entries.add(index, notification);
+        inbox.typeCounts.merge(notification.getType(), 1, Integer::sum);
+        if (!notification.isRead()) {
+            inbox.unread++;
+        }
+    }
+
+    private void unreadChanged(UUID userId, int unread) {
+        NotificationListener current = listener;
+        if (current != null) {
+            current.unreadCountChanged(userId, unread);
+        }
+    }
+
+    private void markRead(Inbox inbox, Notification notification) {
+        if (!notification.isRead()) {
+            notification.setRead(true);
+            inbox.unread--;
+        }
+    }
+
+    private List<Notification> newestFirst(UUID userId, Predicate<Notification> filter) {
+        return locks.withLock(userId, () -> {
+            List<Notification> result = new ArrayList<>();
+            Inbox inbox = inboxes.get(userId);
+            if (inbox != null) {
+                for (int i = inbox.entries.size() - 1; i >= 0; i--) {
+                    Notification notification = inbox.entries.get(i);
+                    if (filter.test(notification)) {
+                        result.add(notification);
+                    }
+                }
+            }
+            return result;
+        });
+    }
+
+    private RecordWriter putRecord(Notification notification) {
+        return new RecordWriter(JOURNAL_SOURCE, OP_PUT)
+            .writeUuid(notification.getId())
+            .writeUuid(notification.getUserId())
+            .writeString(notification.getType())
+            .writeString(notification.getTitle())
+            .writeString(notification.getMessage())
+            .writeNullableUuid(notification.getRelatedId())
+            .writeDateTime(notification.getCreatedAt())
+            .writeBoolean(notification.isRead());
+    }
+
+    private void journalId(byte op, UUID id) {
+        appendToJournal(new RecordWriter(JOURNAL_SOURCE, op).writeUuid(id));
+    }
+
+    // Sob a faixa: o registro entra no journal na ordem das escritas, sem esperar o disco
+    private void appendToJournal(RecordWriter record) {
+        if (journal != null) {
+            journal.appendPending(record);
+        }
+    }
+
+    // Depois de soltar a faixa: só então espera o fsync do que foi anexado
+    private void awaitJournal() {
+        if (journal != null) {
+            journal.awaitPending();
+        }
+    }
+
+    /*
+     * Notificações de um usuário em ordem cronológica, com os contadores
+     * mantidos a cada alteração.
+     */
+    private static class Inbox {
+        private final List<Notification> entries = new ArrayList<>();
+        private final Map<String, Integer> typeCounts = new HashMap<>();
+        private int unread;
     }
 }
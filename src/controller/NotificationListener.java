@@ -0,0 +1,17 @@
+package controller;
+
+import java.util.UUID;
+import model.Notification;
+
+/*
+ * Observa as caixas de notificação, para quem entrega as mudanças aos
+ * clientes conectados em vez de esperar que consultem de novo. Chamado
+ * com a faixa de lock do usuário, na ordem das alterações: não pode
+ * bloquear nem voltar ao NotificationController.
+ */
+public interface NotificationListener {
+    void notificationCreated(Notification notification, int unreadCount);
+
+    default void unreadCountChanged(UUID userId, int unreadCount) {
+    }
+}
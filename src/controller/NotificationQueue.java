@@ -0,0 +1,221 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import model.Notification;
+import model.User;
+
+/*
+ * Fila das notificações de curtidas, mensagens e solicitações de amizade.
+ * Quem curte ou envia só enfileira o pedido; uma thread de fundo drena a
+ * fila em lotes, junta os pedidos iguais do lote ("João e mais 41 pessoas
+ * curtiram seu post", "Ana enviou 3 mensagens para você") e grava tudo com
+ * uma única espera pelo journal.
+ *
+ * A fila é limitada. Cheia, quem enfileira cria a própria notificação na
+ * hora (caller-runs): fica mais lento, mas não perde nada nem acumula
+ * memória sem fim.
+ */
+final class NotificationQueue {
+    static final int DEFAULT_CAPACITY = 16 * 1024;
+    private static final int MAX_BATCH = 1024;
+    // Quanto o consumidor espera por mais pedidos antes de fechar um lote
+    private static final long LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final String UNKNOWN_USER = "Usuário Desconhecido";
+
+    private enum Kind { POST_LIKE, MESSAGE, FRIEND_REQUEST }
+
+    private static final class Request {
+        final Kind kind;
+        final UUID recipientId;
+        final UUID actorId;
+        final UUID subjectId;
+
+        Request(Kind kind, UUID recipientId, UUID actorId, UUID subjectId) {
+            this.kind = kind;
+            this.recipientId = recipientId;
+            this.actorId = actorId;
+            this.subjectId = subjectId;
+        }
+
+        // Curtidas agrupam por post; mensagens e solicitações, por remetente
+        Object groupKey() {
+            return List.of(kind, recipientId, kind == Kind.POST_LIKE ? subjectId : actorId);
+        }
+    }
+
+    // Pedidos iguais de um lote, na ordem em que chegaram
+    private static final class Group {
+        final Request first;
+        final Set<UUID> actors = new LinkedHashSet<>();
+        UUID latestSubjectId;
+        int requests;
+
+        Group(Request first) {
+            this.first = first;
+        }
+
+        void add(Request request) {
+            actors.add(request.actorId);
+            latestSubjectId = request.subjectId;
+            requests++;
+        }
+    }
+
+    private final NotificationController notifications;
+    private final UserController users;
+    private final BlockingQueue<Request> queue;
+    private final int capacity;
+    private volatile Thread consumer;
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    NotificationQueue(NotificationController notifications, UserController users) {
+        this(notifications, users, DEFAULT_CAPACITY);
+    }
+
+    NotificationQueue(NotificationController notifications, UserController users, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("A capacidade da fila deve ser positiva");
+        }
+        this.notifications = notifications;
+        this.users = users;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void postLike(UUID recipientId, UUID likerId, UUID postId) {
+        submit(new Request(Kind.POST_LIKE, recipientId, likerId, postId));
+    }
+
+    void message(UUID recipientId, UUID senderId, UUID messageId) {
+        submit(new Request(Kind.MESSAGE, recipientId, senderId, messageId));
+    }
+
+    void friendRequest(UUID recipientId, UUID requesterId) {
+        submit(new Request(Kind.FRIEND_REQUEST, recipientId, requesterId, null));
+    }
+
+    Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("depth", (long) queue.size());
+        stats.put("capacity", (long) capacity);
+        stats.put("maxDepth", maxDepth.get());
+        stats.put("queued", queued.sum());
+        stats.put("delivered", delivered.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("callerRuns", callerRuns.sum());
+        return stats;
+    }
+
+    private void submit(Request request) {
+        ensureConsumer();
+        if (queue.offer(request)) {
+            queued.increment();
+            return;
+        }
+        callerRuns.increment();
+        deliver(List.of(request));
+    }
+
+    private void ensureConsumer() {
+        if (consumer != null) {
+            return;
+        }
+        synchronized (this) {
+            if (consumer == null) {
+                Thread thread = new Thread(this::drainLoop, "notification-fanout");
+                thread.setDaemon(true);
+                thread.start();
+                consumer = thread;
+            }
+        }
+    }
+
+    private void drainLoop() {
+        List<Request> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + LINGER_NANOS;
+                while (batch.size() < MAX_BATCH) {
+                    maxDepth.accumulateAndGet(queue.size(), Math::max);
+                    if (queue.drainTo(batch, MAX_BATCH - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                deliver(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Notificações são melhor esforço: um lote com erro não para a fila
+                System.err.println("Erro ao criar notificações: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(List<Request> requests) {
+        Map<Object, Group> groups = new LinkedHashMap<>();
+        for (Request request : requests) {
+            groups.computeIfAbsent(request.groupKey(), key -> new Group(request)).add(request);
+        }
+
+        Map<UUID, String> names = new HashMap<>();
+        List<Notification> batch = new ArrayList<>(groups.size());
+        for (Group group : groups.values()) {
+            batch.add(build(group, names));
+        }
+        notifications.addBatch(batch);
+        delivered.add(batch.size());
+        coalesced.add(requests.size() - batch.size());
+    }
+
+    private Notification build(Group group, Map<UUID, String> names) {
+        UUID recipientId = group.first.recipientId;
+        switch (group.first.kind) {
+            case POST_LIKE:
+                // Do mais recente para o mais antigo; só os dois primeiros nomes aparecem
+                List<UUID> likers = new ArrayList<>(group.actors);
+                List<String> likerNames = new ArrayList<>(2);
+                for (int i = likers.size() - 1; i >= 0 && likerNames.size() < 2; i--) {
+                    likerNames.add(name(likers.get(i), names));
+                }
+                return NotificationController.postLikeNotification(recipientId, likerNames, likers.size(), group.first.subjectId);
+            case MESSAGE:
+                return NotificationController.messageNotification(recipientId, name(group.first.actorId, names),
+                    group.requests, group.latestSubjectId);
+            default:
+                return NotificationController.friendRequestNotification(recipientId, name(group.first.actorId, names));
+        }
+    }
+
+    private String name(UUID userId, Map<UUID, String> names) {
+        return names.computeIfAbsent(userId, id -> {
+            User user = users != null ? users.getUserById(id) : null;
+            return user != null ? user.getName() : UNKNOWN_USER;
+        });
+    }
+}
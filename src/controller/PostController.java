@@ -1,21 +1,88 @@
 package controller;
 import java.util.List;
 import java.util.UUID;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import model.Post;
 import model.TextPost;
 import model.ImagePost;
 import model.VideoPost;
+import model.Privacy;
 import model.User;
+import model.UserOrdinals;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
 
-public class PostController {
-    List<Post> posts;
+/*
+ * Concorrência: o mapa por id é concorrente; os demais índices (por tipo e a
+ * busca) ficam sob um lock de leitura e escrita, em que só criar, editar e
+ * apagar escrevem. Editar e apagar pegam também a faixa de lock do post
+ * (sempre antes do lock dos índices). Os posts de cada autor são um vetor
+ * substituído a cada mudança, e a visão do mais recente para o mais antigo
+ * lê sem lock o vetor que pegou. Notificações e timelines são atualizadas
+ * depois, fora dos locks.
+ *
+ * Curtir e descurtir não pegam lock do post: as curtidas são um conjunto
+ * concorrente com contador distribuído (PostLikes), que o post editado
+ * herda do original. A ordem no journal vem de três regras: o registro de
+ * criação e o de edição são gravados antes de o post novo entrar no mapa
+ * (ninguém curte um post que o journal ainda não conhece); as curtidas de
+ * um mesmo usuário são serializadas pela faixa dele; e uma curtida gravada
+ * com o id antigo depois da edição é redirecionada no replay (replacedBy).
+ * Os registros entram no journal sob o lock, mas a espera pelo disco fica
+ * para depois de soltá-lo.
+ */
+public class PostController implements Journaled {
+    public static final byte JOURNAL_SOURCE = 2;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_EDIT = 2;
+    private static final byte OP_DELETE = 3;
+    private static final byte OP_LIKE = 4;
+    private static final byte OP_UNLIKE = 5;
+    private static final byte OP_REPLACED = 6;
+
+    // Índices dos posts; todos são atualizados juntos em store/unstore
+    private Map<UUID, Post> postsById;
+    private Map<UUID, Post[]> postsByAuthor; // cada vetor em ordem CHRONOLOGICAL, nunca alterado no lugar
+    private Map<String, Map<UUID, Post>> postsByType;
+    private PostSearchIndex searchIndex;
+
+    // Ordem total dos posts: data de criação e, no empate, o id
+    public static final Comparator<Post> CHRONOLOGICAL =
+        Comparator.comparing(Post::getCreatedAt).thenComparing(Post::getId);
     private NotificationController notificationController;
     private UserController userController;
+    private FriendController friendController;
+    private TimelineStore timelineStore;
+    private Journal journal;
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final StripedLocks locks = new StripedLocks();
+    // Por usuário, não por post: quem curte o mesmo post em paralelo quase nunca cai na mesma faixa
+    private final StripedLocks likerLocks = new StripedLocks(1024);
+
+    // Edições vistas no replay (id antigo -> id novo), para curtidas gravadas com o id antigo.
+    // As do snapshot anterior valem só para o log logo depois dele e não são regravadas.
+    private final Map<UUID, UUID> replacedBy = new ConcurrentHashMap<>();
+    private final Map<UUID, UUID> inheritedReplacedBy = new ConcurrentHashMap<>();
 
     public PostController() {
-        posts = new ArrayList<>();
+        postsById = new ConcurrentHashMap<>();
+        postsByAuthor = new ConcurrentHashMap<>();
+        postsByType = new HashMap<>();
+        searchIndex = new PostSearchIndex();
         this.notificationController = null; // Será definido posteriormente
         this.userController = null; // Será definido posteriormente
     }
@@ -27,22 +94,37 @@ public class PostController {
     public void setUserController(UserController userController) {
         this.userController = userController;
     }
+    
+    public void setFriendController(FriendController friendController) {
+        this.friendController = friendController;
+    }
+    
+    public void setTimelineStore(TimelineStore timelineStore) {
+        this.timelineStore = timelineStore;
+    }
+    
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
 
     public Post createTextPost(UUID userId, String textContent) {
         Post post = new TextPost(userId, textContent);
-        posts.add(post);
+        add(post);
+        publish(post);
         return post;
     }
 
     public Post createImagePost(UUID userId, String imageUrl, String description) {
         Post post = new ImagePost(userId, imageUrl, description);
-        posts.add(post);
+        add(post);
+        publish(post);
         return post;
     }
 
     public Post createVideoPost(UUID userId, String videoUrl, String description, int duration) {
         Post post = new VideoPost(userId, videoUrl, description, duration);
-        posts.add(post);
+        add(post);
+        publish(post);
         return post;
     }
 
@@ -63,16 +145,41 @@ public class PostController {
             default:
                 post = new TextPost(userId, content);
         }
-        posts.add(post);
+        add(post);
+        publish(post);
         return post;
     }
 
     public boolean editPost(UUID postId, String newContent, String newPostType) {
         Post post = findPostById(postId);
         if (post == null) return false;
+        Post newPost = edited(post, newContent, newPostType);
+
+        boolean replaced = locks.withLock(postId, () -> {
+            if (findPostById(postId) != post) {
+                return false; // Editado ou apagado enquanto esperava o lock
+            }
+            // Curtidas que ainda chegarem ao post antigo contam no novo
+            newPost.adoptLikes(post);
+            appendToJournal(writePost(new RecordWriter(JOURNAL_SOURCE, OP_EDIT).writeUuid(postId), newPost));
 
-        posts.remove(post);
+            // Troca nos índices de uma vez, sem estado intermediário sem nenhum dos dois posts
+            write(() -> {
+                unstore(post);
+                store(newPost);
+                return null;
+            });
+            return true;
+        });
+        awaitJournal();
+        if (!replaced) return false;
 
+        publish(newPost);
+        repairDeleted(post);
+        return true;
+    }
+
+    private Post edited(Post post, String newContent, String newPostType) {
         Post newPost;
         switch (newPostType.toUpperCase()) {
             case "TEXT":
@@ -87,36 +194,68 @@ public class PostController {
             default:
                 newPost = new TextPost(post.getUserId(), newContent);
         }
+        return newPost;
+    }
 
-        for (UUID like : post.getLikes()) {
-            newPost.like(like);
-        }
-
-        posts.add(newPost);
-        return true;
+    // O journal vem antes (e fora do lock dos índices, pois espera o disco)
+    private void add(Post post) {
+        journalPut(post);
+        write(() -> {
+            store(post);
+            return null;
+        });
     }
 
     private Post findPostById(UUID postId) {
-        for (Post p : posts) {
-            if (p.getId().equals(postId)) {
-                return p;
-            }
-        }
-        return null;
+        return postsById.get(postId);
     }
 
     public boolean deletePost(UUID postId) {
-        return posts.removeIf(post -> post.getId().equals(postId));
+        Post deleted = locks.withLock(postId, () -> {
+            Post post = write(() -> {
+                Post found = postsById.get(postId);
+                if (found != null) {
+                    unstore(found);
+                }
+                return found;
+            });
+            if (post != null) {
+                appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_DELETE).writeUuid(postId));
+            }
+            return post;
+        });
+        awaitJournal();
+        if (deleted == null) return false;
+
+        repairDeleted(deleted);
+        return true;
     }
 
     public List<Post> getPostsByUser(UUID userId) {
-        List<Post> userPosts = new ArrayList<>();
-        for (Post post : posts) {
-            if (post.getUserId().equals(userId)) {
-                userPosts.add(post);
-            }
+        Post[] authored = postsByAuthor.get(userId);
+        return authored != null ? new ArrayList<>(Arrays.asList(authored)) : new ArrayList<>();
+    }
+
+    /*
+     * Visão somente leitura dos posts do usuário, do mais recente para o mais
+     * antigo, sem cópia. Mostra os posts do momento da chamada.
+     */
+    public List<Post> getPostsByUserNewestFirst(UUID userId) {
+        Post[] authored = postsByAuthor.get(userId);
+        if (authored == null) {
+            return Collections.emptyList();
         }
-        return userPosts;
+        return new AbstractList<Post>() {
+            @Override
+            public Post get(int index) {
+                return authored[authored.length - 1 - index];
+            }
+
+            @Override
+            public int size() {
+                return authored.length;
+            }
+        };
     }
 
     public Post getPostById(UUID postId) {
@@ -126,14 +265,18 @@ public class PostController {
     public boolean likePost(UUID postId, UUID userId) {
         Post post = findPostById(postId);
         if (post == null) return false;
-        
-        boolean liked = post.like(userId);
 
-        if (liked && notificationController != null && userController != null && 
-            !post.getUserId().equals(userId)) {
-            User liker = userController.getUserById(userId);
-            String likerName = liker != null ? liker.getName() : "Usuário Desconhecido";
-            notificationController.createPostLikeNotification(post.getUserId(), likerName, postId);
+        boolean liked = likerLocks.withLock(userId, () -> {
+            if (!post.like(userId)) {
+                return false;
+            }
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_LIKE).writeUuid(postId).writeUuid(userId));
+            return true;
+        });
+        awaitJournal();
+
+        if (liked && notificationController != null && !post.getUserId().equals(userId)) {
+            notificationController.queuePostLikeNotification(post.getUserId(), userId, postId);
         }
         
         return liked;
@@ -142,40 +285,296 @@ public class PostController {
     public boolean unlikePost(UUID postId, UUID userId) {
         Post post = findPostById(postId);
         if (post == null) return false;
-        return post.unlike(userId);
+
+        boolean unliked = likerLocks.withLock(userId, () -> {
+            if (!post.unlike(userId)) {
+                return false;
+            }
+            appendToJournal(new RecordWriter(JOURNAL_SOURCE, OP_UNLIKE).writeUuid(postId).writeUuid(userId));
+            return true;
+        });
+        awaitJournal();
+        return unliked;
+    }
+
+    // Amigos do usuário que curtiram o post, por interseção de bitmaps
+    public List<UUID> getFriendsWhoLiked(UUID postId, UUID userId) {
+        Post post = findPostById(postId);
+        if (post == null || friendController == null) return new ArrayList<>();
+        return post.getLikesAmong(UserOrdinals.toBitmap(friendController.getFriends(userId)));
+    }
+
+    public int countFriendsWhoLiked(UUID postId, UUID userId) {
+        Post post = findPostById(postId);
+        if (post == null || friendController == null) return 0;
+        return post.countLikesAmong(UserOrdinals.toBitmap(friendController.getFriends(userId)));
+    }
+
+    /*
+     * Busca textual nos posts que viewerId pode ver (os dele, os de amigos e
+     * os de perfis públicos), do mais para o menos relevante. A busca ignora
+     * maiúsculas e acentos e considera o texto dos posts de texto e a
+     * descrição de imagens e vídeos.
+     */
+    public List<Post> searchPosts(UUID viewerId, String query, int limit) {
+        if (query == null || query.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return read(() -> searchIndex.search(query, limit, post -> isVisibleTo(post, viewerId)));
     }
 
+    private boolean isVisibleTo(Post post, UUID viewerId) {
+        UUID authorId = post.getUserId();
+        if (authorId.equals(viewerId)) {
+            return true;
+        }
+        User author = userController != null ? userController.getUserById(authorId) : null;
+        if (author != null && author.getPrivacy() == Privacy.PUBLIC) {
+            return true;
+        }
+        return viewerId != null && friendController != null && friendController.areFriends(viewerId, authorId);
+    }
+
+    // Em ordem CHRONOLOGICAL
     public List<Post> getAllPosts() {
-        return new ArrayList<>(posts);
+        List<Post> all = new ArrayList<>(postsById.values());
+        all.sort(CHRONOLOGICAL);
+        return all;
     }
 
     public List<TextPost> getTextPosts() {
-        List<TextPost> textPosts = new ArrayList<>();
-        for (Post post : posts) {
-            if (post instanceof TextPost) {
-                textPosts.add((TextPost) post);
+        return getPostsOfType("TEXT", TextPost.class);
+    }
+
+    public List<ImagePost> getImagePosts() {
+        return getPostsOfType("IMAGE", ImagePost.class);
+    }
+
+    public List<VideoPost> getVideoPosts() {
+        return getPostsOfType("VIDEO", VideoPost.class);
+    }
+
+    private <T extends Post> List<T> getPostsOfType(String postType, Class<T> type) {
+        return read(() -> {
+            Map<UUID, Post> typed = postsByType.get(postType);
+            List<T> result = new ArrayList<>(typed != null ? typed.size() : 0);
+            if (typed != null) {
+                for (Post post : typed.values()) {
+                    result.add(type.cast(post));
+                }
             }
+            return result;
+        });
+    }
+
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        switch (op) {
+            case OP_PUT:
+                Post stored = readPost(record);
+                write(() -> {
+                    store(stored);
+                    return null;
+                });
+                break;
+            case OP_EDIT:
+                UUID oldId = record.readUuid();
+                Post edited = readPost(record);
+                write(() -> {
+                    Post old = postsById.get(oldId);
+                    if (old != null) {
+                        // As curtidas do antigo já refletem o log até aqui; as da gravação podem estar atrasadas
+                        edited.adoptLikes(old);
+                        unstore(old);
+                    }
+                    store(edited);
+                    return null;
+                });
+                replacedBy.put(oldId, edited.getId());
+                break;
+            case OP_DELETE:
+                deletePost(record.readUuid());
+                break;
+            case OP_LIKE:
+            case OP_UNLIKE:
+                Post post = resolve(record.readUuid());
+                UUID userId = record.readUuid();
+                if (post != null) {
+                    if (op == OP_LIKE) {
+                        post.like(userId);
+                    } else {
+                        post.unlike(userId);
+                    }
+                }
+                break;
+            case OP_REPLACED:
+                inheritedReplacedBy.put(record.readUuid(), record.readUuid());
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
         }
-        return textPosts;
     }
 
-    public List<ImagePost> getImagePosts() {
-        List<ImagePost> imagePosts = new ArrayList<>();
-        for (Post post : posts) {
-            if (post instanceof ImagePost) {
-                imagePosts.add((ImagePost) post);
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        for (Post post : getAllPosts()) {
+            out.accept(writePost(new RecordWriter(JOURNAL_SOURCE, OP_PUT), post));
+        }
+        // Uma curtida com o id antigo pode ter caído no log seguinte a este snapshot
+        for (Map.Entry<UUID, UUID> entry : replacedBy.entrySet()) {
+            out.accept(new RecordWriter(JOURNAL_SOURCE, OP_REPLACED).writeUuid(entry.getKey()).writeUuid(entry.getValue()));
+        }
+    }
+
+    // O post com este id ou, se ele foi editado, a versão atual dele
+    private Post resolve(UUID postId) {
+        for (int hops = 0; postId != null && hops < 64; hops++) {
+            Post post = postsById.get(postId);
+            if (post != null) {
+                return post;
             }
+            UUID next = replacedBy.get(postId);
+            postId = next != null ? next : inheritedReplacedBy.get(postId);
         }
-        return imagePosts;
+        return null;
     }
 
-    public List<VideoPost> getVideoPosts() {
-        List<VideoPost> videoPosts = new ArrayList<>();
-        for (Post post : posts) {
-            if (post instanceof VideoPost) {
-                videoPosts.add((VideoPost) post);
+    private void store(Post post) {
+        postsById.put(post.getId(), post);
+        postsByType.computeIfAbsent(post.getPostType(), k -> new LinkedHashMap<>()).put(post.getId(), post);
+
+        Post[] authored = postsByAuthor.getOrDefault(post.getUserId(), new Post[0]);
+        int index = authored.length;
+        // Quase sempre o post novo é o mais recente; só recua se o relógio andou para trás
+        while (index > 0 && CHRONOLOGICAL.compare(authored[index - 1], post) > 0) {
+            index--;
+        }
+        Post[] updated = new Post[authored.length + 1];
+        System.arraycopy(authored, 0, updated, 0, index);
+        updated[index] = post;
+        System.arraycopy(authored, index, updated, index + 1, authored.length - index);
+        postsByAuthor.put(post.getUserId(), updated);
+        searchIndex.add(post);
+    }
+
+    private void unstore(Post post) {
+        postsById.remove(post.getId());
+        searchIndex.remove(post.getId());
+
+        Map<UUID, Post> typed = postsByType.get(post.getPostType());
+        if (typed != null) {
+            typed.remove(post.getId());
+        }
+
+        Post[] authored = postsByAuthor.get(post.getUserId());
+        if (authored != null) {
+            int index = Arrays.binarySearch(authored, post, CHRONOLOGICAL);
+            if (index < 0) {
+                return;
             }
+            if (authored.length == 1) {
+                postsByAuthor.remove(post.getUserId());
+                return;
+            }
+            Post[] updated = new Post[authored.length - 1];
+            System.arraycopy(authored, 0, updated, 0, index);
+            System.arraycopy(authored, index + 1, updated, index, updated.length - index);
+            postsByAuthor.put(post.getUserId(), updated);
+        }
+    }
+
+    private <T> T read(Supplier<T> action) {
+        indexLock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> action) {
+        indexLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            indexLock.writeLock().unlock();
         }
-        return videoPosts;
+    }
+
+    private void publish(Post post) {
+        if (timelineStore != null && friendController != null) {
+            timelineStore.publish(post, friendController.getFriends(post.getUserId()));
+        }
+    }
+
+    private void repairDeleted(Post post) {
+        if (timelineStore != null && friendController != null) {
+            timelineStore.repairDeletedPost(post.getId(), friendController.getFriends(post.getUserId()));
+        }
+    }
+
+    private void journalPut(Post post) {
+        if (journal != null) {
+            journal.append(writePost(new RecordWriter(JOURNAL_SOURCE, OP_PUT), post));
+        }
+    }
+
+    // Sob o lock: o registro entra no journal na ordem das escritas, sem esperar o disco
+    private void appendToJournal(RecordWriter record) {
+        if (journal != null) {
+            journal.appendPending(record);
+        }
+    }
+
+    // Depois de soltar o lock: só então espera o fsync do que foi anexado
+    private void awaitJournal() {
+        if (journal != null) {
+            journal.awaitPending();
+        }
+    }
+
+    private RecordWriter writePost(RecordWriter record, Post post) {
+        record.writeUuid(post.getId())
+            .writeUuid(post.getUserId())
+            .writeDateTime(post.getCreatedAt())
+            .writeString(post.getPostType());
+        if (post instanceof ImagePost) {
+            ImagePost imagePost = (ImagePost) post;
+            record.writeString(imagePost.getImageUrl()).writeString(imagePost.getDescription());
+        } else if (post instanceof VideoPost) {
+            VideoPost videoPost = (VideoPost) post;
+            record.writeString(videoPost.getVideoUrl()).writeString(videoPost.getDescription()).writeInt(videoPost.getDuration());
+        } else {
+            record.writeString(post.getContent());
+        }
+        return record.writeUuids(post.getLikes());
+    }
+
+    private Post readPost(RecordReader record) {
+        UUID id = record.readUuid();
+        UUID userId = record.readUuid();
+        LocalDateTime createdAt = record.readDateTime();
+        Post post;
+        switch (record.readString()) {
+            case "IMAGE":
+                post = new ImagePost(userId, record.readString(), record.readString());
+                break;
+            case "VIDEO":
+                post = new VideoPost(userId, record.readString(), record.readString(), record.readInt());
+                break;
+            default:
+                post = new TextPost(userId, record.readString());
+        }
+        post.setId(id);
+        post.setCreatedAt(createdAt);
+        for (UUID like : record.readUuids()) {
+            post.like(like);
+        }
+        return post;
     }
 }
@@ -0,0 +1,262 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.Predicate;
+import model.ImagePost;
+import model.Post;
+import model.TextPost;
+import model.VideoPost;
+
+/*
+ * Índice invertido dos posts para busca textual: o texto dos TextPosts e a
+ * descrição de imagens e vídeos. A pontuação é BM25 e a recuperação dos K
+ * melhores usa WAND: cada termo tem um teto de pontuação e documentos cuja
+ * soma de tetos não alcança o K-ésimo melhor até agora são pulados sem serem
+ * avaliados. O filtro de visibilidade é aplicado a cada candidato durante a
+ * recuperação, então posts que o usuário não pode ver não ocupam vagas.
+ */
+class PostSearchIndex {
+    private static final int MIN_REBUILD_SIZE = 64;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final List<Post> docs = new ArrayList<>();
+    private int[] docLengths = new int[16];
+    private final BitSet deleted = new BitSet();
+    private final Map<UUID, Integer> docByPost = new HashMap<>();
+    private int liveCount;
+    private long liveLength;
+
+    void add(Post post) {
+        int doc = docs.size();
+        List<String> tokens = Tokenizer.tokenize(indexedText(post));
+        docs.add(post);
+        if (doc == docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, doc * 2);
+        }
+        docLengths[doc] = tokens.size();
+        docByPost.put(post.getId(), doc);
+        liveCount++;
+        liveLength += tokens.size();
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            terms.computeIfAbsent(entry.getKey(), k -> new Postings()).add(doc, entry.getValue());
+        }
+    }
+
+    boolean remove(UUID postId) {
+        Integer doc = docByPost.remove(postId);
+        if (doc == null) {
+            return false;
+        }
+        deleted.set(doc);
+        liveCount--;
+        liveLength -= docLengths[doc];
+        for (String term : new LinkedHashSet<>(Tokenizer.tokenize(indexedText(docs.get(doc))))) {
+            terms.get(term).liveCount--;
+        }
+        if (docs.size() >= MIN_REBUILD_SIZE && docs.size() - liveCount > liveCount) {
+            rebuild();
+        }
+        return true;
+    }
+
+    // Os limit posts visíveis mais relevantes para a consulta, do mais para o menos relevante
+    List<Post> search(String query, int limit, Predicate<Post> visible) {
+        List<TermCursor> found = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(Tokenizer.tokenize(query))) {
+            Postings postings = terms.get(term);
+            if (postings != null && postings.liveCount > 0) {
+                found.add(new TermCursor(postings));
+            }
+        }
+        if (found.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        TermCursor[] cursors = found.toArray(new TermCursor[0]);
+        PriorityQueue<ScoredDoc> best = new PriorityQueue<>();
+        while (true) {
+            sortByDoc(cursors);
+            // No empate o documento mais novo vence, então quem apenas iguala o limiar ainda entra
+            double threshold = best.size() == limit ? best.peek().score : 0;
+
+            // Pivô: primeiro cursor em que a soma dos tetos alcança o limiar
+            int pivot = -1;
+            double bound = 0;
+            for (int i = 0; i < cursors.length && cursors[i].doc() != Integer.MAX_VALUE; i++) {
+                bound += cursors[i].upperBound;
+                if (bound >= threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break; // Nenhum documento restante pode entrar no top K
+            }
+
+            int pivotDoc = cursors[pivot].doc();
+            if (cursors[0].doc() == pivotDoc) {
+                double score = 0;
+                for (TermCursor cursor : cursors) {
+                    if (cursor.doc() == pivotDoc) {
+                        score += cursor.score();
+                        cursor.advanceTo(pivotDoc + 1);
+                    }
+                }
+                if (!deleted.get(pivotDoc) && score >= threshold && visible.test(docs.get(pivotDoc))) {
+                    best.add(new ScoredDoc(pivotDoc, score));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            } else {
+                // Documentos antes do pivô não somam o suficiente: salta direto para ele
+                for (int i = 0; i < pivot; i++) {
+                    cursors[i].advanceTo(pivotDoc);
+                }
+            }
+        }
+
+        Post[] result = new Post[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = docs.get(best.poll().doc);
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    static String indexedText(Post post) {
+        if (post instanceof TextPost) {
+            return ((TextPost) post).getTextContent();
+        } else if (post instanceof ImagePost) {
+            return ((ImagePost) post).getDescription();
+        } else if (post instanceof VideoPost) {
+            return ((VideoPost) post).getDescription();
+        }
+        return post.getContent();
+    }
+
+    private double idf(Postings postings) {
+        return Math.log(1 + (liveCount - postings.liveCount + 0.5) / (postings.liveCount + 0.5));
+    }
+
+    private static void sortByDoc(TermCursor[] cursors) {
+        // Poucos termos e quase sempre já ordenados: inserção basta
+        for (int i = 1; i < cursors.length; i++) {
+            TermCursor cursor = cursors[i];
+            int j = i - 1;
+            while (j >= 0 && cursors[j].doc() > cursor.doc()) {
+                cursors[j + 1] = cursors[j];
+                j--;
+            }
+            cursors[j + 1] = cursor;
+        }
+    }
+
+    private void rebuild() {
+        List<Post> live = new ArrayList<>(liveCount);
+        for (int doc = deleted.nextClearBit(0); doc < docs.size(); doc = deleted.nextClearBit(doc + 1)) {
+            live.add(docs.get(doc));
+        }
+        terms.clear();
+        docs.clear();
+        deleted.clear();
+        docByPost.clear();
+        liveCount = 0;
+        liveLength = 0;
+        for (Post post : live) {
+            add(post);
+        }
+    }
+
+    private class TermCursor {
+        private final Postings postings;
+        private final double idf;
+        private final double averageLength;
+        private final double upperBound;
+        private int index;
+
+        private TermCursor(Postings postings) {
+            this.postings = postings;
+            this.idf = idf(postings);
+            this.averageLength = liveCount > 0 ? (double) liveLength / liveCount : 1;
+            // O BM25 cresce com tf e o menor normalizador possível é K1 * (1 - B)
+            this.upperBound = idf * postings.maxFrequency * (K1 + 1) / (postings.maxFrequency + K1 * (1 - B));
+        }
+
+        private int doc() {
+            return index < postings.size ? postings.docs[index] : Integer.MAX_VALUE;
+        }
+
+        private double score() {
+            int tf = postings.frequencies[index];
+            double norm = K1 * (1 - B + B * docLengths[postings.docs[index]] / averageLength);
+            return idf * tf * (K1 + 1) / (tf + norm);
+        }
+
+        // Busca exponencial a partir da posição atual: os saltos costumam ser curtos
+        private void advanceTo(int target) {
+            int step = 1;
+            int low = index;
+            int high = index;
+            while (high < postings.size && postings.docs[high] < target) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high + 1, postings.size);
+            int found = Arrays.binarySearch(postings.docs, low, high, target);
+            index = found >= 0 ? found : -found - 1;
+        }
+    }
+
+    private static class ScoredDoc implements Comparable<ScoredDoc> {
+        private final int doc;
+        private final double score;
+
+        private ScoredDoc(int doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredDoc other) {
+            // Heap de mínimo; no empate vence o post indexado por último
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(doc, other.doc);
+        }
+    }
+
+    // Documentos (crescentes) em que o termo aparece e quantas vezes em cada um
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+        private int liveCount;
+        private int maxFrequency;
+
+        private void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size++] = frequency;
+            liveCount++;
+            maxFrequency = Math.max(maxFrequency, frequency);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import persistence.Journal;
+import persistence.Journaled;
+
+public class SocialNetwork {
+    private final UserController userController;
+    private final NotificationController notificationController;
+    private final FriendRequestController friendRequestController;
+    private final FriendController friendController;
+    private final PostController postController;
+    private final MessageController messageController;
+    private final GroupController groupController;
+    private final GroupChatController groupChatController;
+    private final EventController eventController;
+    private final FeedController feedController;
+    private final TimelineStore timelineStore;
+
+    public SocialNetwork() {
+        userController = new UserController();
+        notificationController = new NotificationController(userController);
+        friendRequestController = new FriendRequestController(userController);
+        friendRequestController.setNotificationController(notificationController);
+        friendController = new FriendController(friendRequestController);
+        userController.setFriendController(friendController);
+        postController = new PostController();
+        postController.setNotificationController(notificationController);
+        postController.setUserController(userController);
+        messageController = new MessageController(friendController, userController);
+        messageController.setNotificationController(notificationController);
+        groupController = new GroupController(userController);
+        groupChatController = new GroupChatController(groupController, userController);
+        eventController = new EventController(userController);
+        feedController = new FeedController(postController, friendController, userController);
+
+        timelineStore = new TimelineStore();
+        postController.setFriendController(friendController);
+        postController.setTimelineStore(timelineStore);
+        friendController.setTimelineStore(timelineStore);
+        feedController.setTimelineStore(timelineStore);
+    }
+
+    public List<Journaled> getJournaledControllers() {
+        return Arrays.asList(userController, postController, friendController, friendRequestController,
+            messageController, groupController, groupChatController, eventController, notificationController);
+    }
+
+    /*
+     * Restaura o estado a partir do snapshot e do log em dataDir e conecta o
+     * journal aos controllers. Os snapshots são reconstruídos em uma
+     * instância separada, sem tocar no estado desta.
+     */
+    public Journal openJournal(Path dataDir) throws IOException {
+        Journal journal = new Journal(dataDir);
+        for (Journaled controller : getJournaledControllers()) {
+            journal.register(controller);
+        }
+        journal.setStateFactory(() -> new SocialNetwork().getJournaledControllers());
+        journal.replay();
+        return journal;
+    }
+
+    public UserController getUserController() {
+        return userController;
+    }
+
+    public NotificationController getNotificationController() {
+        return notificationController;
+    }
+
+    public FriendRequestController getFriendRequestController() {
+        return friendRequestController;
+    }
+
+    public FriendController getFriendController() {
+        return friendController;
+    }
+
+    public PostController getPostController() {
+        return postController;
+    }
+
+    public MessageController getMessageController() {
+        return messageController;
+    }
+
+    public GroupController getGroupController() {
+        return groupController;
+    }
+
+    public GroupChatController getGroupChatController() {
+        return groupChatController;
+    }
+
+    public EventController getEventController() {
+        return eventController;
+    }
+
+    public FeedController getFeedController() {
+        return feedController;
+    }
+}
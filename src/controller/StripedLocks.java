@@ -0,0 +1,103 @@
+package controller;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+ * Locks por faixa: cada chave (id de usuário, post, grupo...) cai sempre na
+ * mesma faixa, então operações sobre a mesma entidade são serializadas e
+ * operações sobre entidades diferentes quase nunca disputam o mesmo lock.
+ * Quem precisa de duas chaves pega as faixas em ordem crescente de índice,
+ * o que impede deadlock entre duas operações que cruzam as mesmas chaves.
+ * Os locks são reentrantes: o replay do journal chama os métodos públicos
+ * que já pegam as faixas.
+ */
+final class StripedLocks {
+    static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] locks;
+
+    StripedLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    StripedLocks(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("O número de faixas deve ser uma potência de 2");
+        }
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    <T> T withLock(Object key, Supplier<T> action) {
+        ReentrantLock lock = locks[stripe(key)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void withLock(Object key, Runnable action) {
+        withLock(key, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    <T> T withLocks(Object first, Object second, Supplier<T> action) {
+        int a = stripe(first);
+        int b = stripe(second);
+        ReentrantLock lower = locks[Math.min(a, b)];
+        ReentrantLock upper = locks[Math.max(a, b)];
+        lower.lock();
+        try {
+            upper.lock();
+            try {
+                return action.get();
+            } finally {
+                upper.unlock();
+            }
+        } finally {
+            lower.unlock();
+        }
+    }
+
+    void withLocks(Object first, Object second, Runnable action) {
+        withLocks(first, second, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Todas as faixas, em ordem: para operações que mexem em tudo (limpar, faxina)
+    <T> T withAllLocks(Supplier<T> action) {
+        int locked = 0;
+        try {
+            for (; locked < locks.length; locked++) {
+                locks[locked].lock();
+            }
+            return action.get();
+        } finally {
+            while (locked > 0) {
+                locks[--locked].unlock();
+            }
+        }
+    }
+
+    void withAllLocks(Runnable action) {
+        withAllLocks(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private int stripe(Object key) {
+        int hash = key != null ? key.hashCode() : 0;
+        // Espalha os bits altos, como o HashMap, antes de pegar só os baixos
+        return (hash ^ (hash >>> 16)) & (locks.length - 1);
+    }
+}
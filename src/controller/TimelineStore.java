@@ -0,0 +1,205 @@
+package controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import model.Post;
+
+/*
+ * Timelines materializadas por usuário (fan-out on write). Cada timeline
+ * guarda até capacity ids de posts dos amigos, do mais recente para o mais
+ * antigo. As timelines são criadas sob demanda pelo FeedController e, a
+ * partir daí, mantidas pelos posts novos; remoções de amizade e de posts são
+ * reparadas em uma thread de fundo. Cada timeline é protegida pela faixa de
+ * lock do dono: publicações e leituras de usuários diferentes não disputam
+ * o mesmo lock.
+ */
+public class TimelineStore {
+    public static final int DEFAULT_CAPACITY = 500;
+    private static final int STRIPES = 1024;
+
+    private final int capacity;
+    // Mapa concorrente; cada timeline só é lida e alterada sob a faixa do dono
+    private final Map<UUID, Timeline> timelines;
+    private final StripedLocks locks = new StripedLocks(STRIPES);
+    private final AtomicLong stamps = new AtomicLong();
+    private ExecutorService repairExecutor;
+
+    public TimelineStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TimelineStore(int capacity) {
+        this.capacity = capacity;
+        this.timelines = new ConcurrentHashMap<>();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void publish(Post post, Collection<UUID> followers) {
+        Entry entry = new Entry(post.getId(), post.getUserId());
+        for (UUID followerId : followers) {
+            locks.withLock(followerId, () -> {
+                Timeline timeline = timelines.get(followerId);
+                if (timeline == null) {
+                    return;
+                }
+                if (timeline.pending) {
+                    // A reconstrução em andamento pode não ter visto este post
+                    timelines.remove(followerId);
+                    return;
+                }
+                timeline.entries.addFirst(entry);
+                if (timeline.entries.size() > capacity) {
+                    timeline.entries.removeLast();
+                    timeline.truncated = true;
+                }
+            });
+        }
+    }
+
+    /*
+     * Devolve os limit posts mais recentes da timeline, ou null quando ela
+     * ainda não foi materializada ou não tem posts suficientes para a página.
+     */
+    public List<UUID> read(UUID userId, int limit) {
+        return locks.withLock(userId, () -> {
+            Timeline timeline = timelines.get(userId);
+            if (timeline == null || timeline.pending || (timeline.truncated && timeline.entries.size() < limit)) {
+                return null;
+            }
+            List<UUID> postIds = new ArrayList<>(Math.min(limit, timeline.entries.size()));
+            for (Entry entry : timeline.entries) {
+                if (postIds.size() >= limit) break;
+                postIds.add(entry.postId);
+            }
+            return postIds;
+        });
+    }
+
+    /*
+     * Marca o início de uma reconstrução, antes de buscar os posts. Um post
+     * publicado ou uma invalidação no meio do caminho descartam a marca, e o
+     * rebuild com o carimbo devolvido deixa de valer.
+     */
+    public long beginRebuild(UUID userId) {
+        long stamp = stamps.incrementAndGet();
+        Timeline marker = new Timeline(stamp);
+        locks.withLock(userId, () -> {
+            timelines.put(userId, marker);
+        });
+        return stamp;
+    }
+
+    /*
+     * Substitui a timeline pelos posts já ordenados do mais recente para o
+     * mais antigo, se nada mudou desde beginRebuild. Devolve false quando a
+     * reconstrução perdeu para uma publicação ou invalidação concorrente.
+     */
+    public boolean rebuild(UUID userId, long stamp, List<Post> newestFirst) {
+        Timeline timeline = new Timeline(0);
+        for (Post post : newestFirst) {
+            if (timeline.entries.size() >= capacity) {
+                timeline.truncated = true;
+                break;
+            }
+            timeline.entries.addLast(new Entry(post.getId(), post.getUserId()));
+        }
+        return locks.withLock(userId, () -> {
+            Timeline current = timelines.get(userId);
+            if (current == null || !current.pending || current.stamp != stamp) {
+                return false;
+            }
+            timelines.put(userId, timeline);
+            return true;
+        });
+    }
+
+    public void invalidate(UUID userId) {
+        locks.withLock(userId, () -> {
+            timelines.remove(userId);
+        });
+    }
+
+    public void repairUnfriend(UUID userId, UUID friendId) {
+        repair(() -> {
+            removeAuthor(userId, friendId);
+            removeAuthor(friendId, userId);
+        });
+    }
+
+    public void repairDeletedPost(UUID postId, Collection<UUID> followers) {
+        List<UUID> affected = new ArrayList<>(followers);
+        repair(() -> {
+            for (UUID followerId : affected) {
+                edit(followerId, entries -> entries.removeIf(entry -> entry.postId.equals(postId)));
+            }
+        });
+    }
+
+    private void removeAuthor(UUID userId, UUID authorId) {
+        edit(userId, entries -> entries.removeIf(entry -> entry.authorId.equals(authorId)));
+    }
+
+    // Reparo de uma timeline; uma reconstrução em andamento é descartada
+    private void edit(UUID userId, Consumer<ArrayDeque<Entry>> change) {
+        locks.withLock(userId, () -> {
+            Timeline timeline = timelines.get(userId);
+            if (timeline == null) {
+                return;
+            }
+            if (timeline.pending) {
+                timelines.remove(userId);
+            } else {
+                change.accept(timeline.entries);
+            }
+        });
+    }
+
+    private synchronized void repair(Runnable task) {
+        if (timelines.isEmpty()) {
+            return; // Nenhuma timeline materializada, nada a reparar
+        }
+        if (repairExecutor == null) {
+            repairExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "timeline-repair");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        repairExecutor.execute(task);
+    }
+
+    private static class Timeline {
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private boolean truncated;
+        // Marca de reconstrução em andamento (sem posts), com o carimbo de beginRebuild
+        private final boolean pending;
+        private final long stamp;
+
+        private Timeline(long stamp) {
+            this.pending = stamp != 0;
+            this.stamp = stamp;
+        }
+    }
+
+    private static class Entry {
+        private final UUID postId;
+        private final UUID authorId;
+
+        private Entry(UUID postId, UUID authorId) {
+            this.postId = postId;
+            this.authorId = authorId;
+        }
+    }
+}
@@ -1,62 +1,324 @@
 package controller;
-import java.util.ArrayList; 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import model.Privacy;
 import model.User;
+import model.UserOrdinals;
+import persistence.Journal;
+import persistence.Journaled;
+import persistence.RecordReader;
+import persistence.RecordWriter;
 
-public class UserController 
+/*
+ * Concorrência: cadastro e edição são raros e precisam checar email e nome
+ * únicos entre todos os usuários, então os índices ficam sob um único lock
+ * de leitura e escrita. Criar, editar e remover são atômicos; as consultas
+ * veem o estado antes ou depois de cada escrita, nunca no meio. O registro
+ * entra no journal sob o lock (na mesma ordem das escritas), mas a espera
+ * pelo disco acontece depois de soltá-lo: getUserById, no caminho de quase
+ * toda operação, não espera o fsync de um cadastro.
+ */
+public class UserController implements Journaled
 {
-    private List<User> users;
-     
+    public static final byte JOURNAL_SOURCE = 1;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+
+    private Map<UUID, User> usersById;
+    private Map<String, User> usersByEmail;
+    private Map<String, User> usersByName;
+    private UserSearchIndex searchIndex; // só usuários públicos
+    private FriendController friendController;
+    private Journal journal;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Posição no journal do último registro anexado pela escrita em andamento (só sob o lock de escrita)
+    private long pendingSeq = -1;
+
     public UserController()
         {
-            this.users = new ArrayList<>();
+            this.usersById = new LinkedHashMap<>();
+            this.usersByEmail = new HashMap<>();
+            this.usersByName = new HashMap<>();
+            this.searchIndex = new UserSearchIndex();
         }
     public User createUser(String name, String email, String password, Privacy privacy)
         {
-            User user = new User(name, email, password, privacy);   
-            users.add(user);
-            return user;
+            if (isBlank(name) || isBlank(email) || isBlank(password))
+                {
+                    throw new IllegalArgumentException("Nome, email e senha são obrigatórios");
+                }
+            if (privacy == null)
+                {
+                    throw new IllegalArgumentException("Privacidade do usuário não pode ser nula");
+                }
+            return write(() -> {
+                if (usersByEmail.containsKey(email))
+                    {
+                        throw new IllegalArgumentException("Já existe um usuário com este email");
+                    }
+                if (usersByName.containsKey(name))
+                    {
+                        throw new IllegalArgumentException("Já existe um usuário com este nome");
+                    }
+                User user = new User(name, email, password, privacy);
+                index(user);
+                journalPut(user);
+                return user;
+            });
         }
     public boolean editUser(UUID id, String name, String email, String password, Privacy privacy)
         {
-            for (User user : users)
-                {
-                    if (user.getId().equals(id))
-                        {
-                            user.setName(name);
-                            user.setEmail(email);
-                            user.setPassword(password);
-                            user.setPrivacy(privacy);
-                            return true;
-                        }
-                }
-            return false;
+            return write(() -> {
+                User user = usersById.get(id);
+                if (user == null)
+                    {
+                        return false;
+                    }
+
+                User emailOwner = usersByEmail.get(email);
+                User nameOwner = usersByName.get(name);
+                if ((emailOwner != null && emailOwner != user) || (nameOwner != null && nameOwner != user))
+                    {
+                        return false; // Email ou nome já pertence a outro usuário
+                    }
+
+                usersByEmail.remove(user.getEmail());
+                usersByName.remove(user.getName());
+                searchIndex.remove(user);
+                user.setName(name);
+                user.setEmail(email);
+                user.setPassword(password);
+                user.setPrivacy(privacy);
+                usersByEmail.put(email, user);
+                usersByName.put(name, user);
+                if (privacy == Privacy.PUBLIC)
+                    {
+                        searchIndex.add(user);
+                    }
+                journalPut(user);
+                return true;
+            });
         }
     public boolean deleteUser(UUID id)
         {
-            for( User user : users)
-                {
-                    if(user.getId().equals(id))
-                        {
-                            users.remove(user);
-                            return true;
-                        }
-                }
-            return false;
+            return write(() -> {
+                User user = usersById.remove(id);
+                if (user == null)
+                    {
+                        return false;
+                    }
+                usersByEmail.remove(user.getEmail());
+                usersByName.remove(user.getName());
+                searchIndex.remove(user);
+                if (journal != null)
+                    {
+                        pendingSeq = journal.appendDeferred(new RecordWriter(JOURNAL_SOURCE, OP_DELETE).writeUuid(id));
+                    }
+                return true;
+            });
+        }
+
+    public void setJournal(Journal journal)
+        {
+            this.journal = journal;
+        }
+
+    public void setFriendController(FriendController friendController)
+        {
+            this.friendController = friendController;
         }
-    
+
     public List<User> getAllUsers() {
-        return new ArrayList<>(users);
+        return read(() -> new ArrayList<>(usersById.values()));
     }
-    
+
     public User getUserById(UUID id) {
-        for (User user : users) {
-            if (user.getId().equals(id)) {
-                return user;
-            }
+        return read(() -> usersById.get(id));
+    }
+
+    public User getUserByEmail(String email) {
+        return read(() -> usersByEmail.get(email));
+    }
+
+    public User getUserByName(String name) {
+        return read(() -> usersByName.get(name));
+    }
+
+    public User authenticate(String email, String password) {
+        User user = getUserByEmail(email);
+        // Senha do pedido primeiro: um usuário gravado sem senha por versões antigas não quebra o login
+        if (user != null && password != null && password.equals(user.getPassword())) {
+            return user;
         }
         return null;
     }
+
+    /*
+     * Busca por nome ou email para autocompletar: primeiro quem tem nome,
+     * sobrenome ou email começando pela consulta e, se faltarem resultados,
+     * nomes parecidos (tolerando erros de digitação). Usuários privados só
+     * aparecem para eles mesmos e para os amigos.
+     */
+    public List<User> searchUsers(UUID viewerId, String query, int limit) {
+        if (query == null || query.trim().isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Amigos lidos antes do lock: o FriendController tem os próprios locks
+        List<UUID> friendIds = viewerId != null && friendController != null
+            ? new ArrayList<>(friendController.getFriends(viewerId)) : new ArrayList<>();
+        return read(() -> searchVisible(viewerId, friendIds, query, limit));
+    }
+
+    private List<User> searchVisible(UUID viewerId, List<UUID> friendIds, String query, int limit) {
+        // Os privados visíveis são poucos (o próprio usuário e amigos): conferidos um a um
+        List<User> visiblePrivate = new ArrayList<>();
+        User viewer = viewerId != null ? usersById.get(viewerId) : null;
+        if (viewer != null && viewer.getPrivacy() == Privacy.PRIVATE) {
+            visiblePrivate.add(viewer);
+        }
+        for (UUID friendId : friendIds) {
+            User friend = usersById.get(friendId);
+            if (friend != null && friend.getPrivacy() == Privacy.PRIVATE) {
+                visiblePrivate.add(friend);
+            }
+        }
+        visiblePrivate.sort(Comparator.comparing(User::getName));
+
+        Set<User> found = new LinkedHashSet<>();
+        for (User user : visiblePrivate) {
+            if (found.size() < limit && UserSearchIndex.matchesPrefix(user, query)) {
+                found.add(user);
+            }
+        }
+        found.addAll(searchIndex.complete(query, limit - found.size(), user -> true));
+
+        if (found.size() < limit) {
+            Map<User, Double> similarities = new HashMap<>();
+            for (User user : visiblePrivate) {
+                double similarity = UserSearchIndex.similarity(user, query);
+                if (similarity > 0) {
+                    similarities.put(user, similarity);
+                }
+            }
+            List<User> similar = new ArrayList<>(similarities.keySet());
+            similar.sort(Comparator.comparing((User user) -> similarities.get(user)).reversed());
+            for (User user : similar) {
+                if (found.size() < limit) {
+                    found.add(user);
+                }
+            }
+            found.addAll(searchIndex.fuzzy(query, limit - found.size(), user -> !found.contains(user)));
+        }
+        return new ArrayList<>(found);
+    }
+
+    public int getTotalUsers() {
+        return read(() -> usersById.size());
+    }
+
+    @Override
+    public byte getJournalSource() {
+        return JOURNAL_SOURCE;
+    }
+
+    @Override
+    public void applyRecord(byte op, RecordReader record) {
+        switch (op) {
+            case OP_PUT:
+                String name = record.readString();
+                String email = record.readString();
+                String password = record.readString();
+                Privacy privacy = Privacy.valueOf(record.readString());
+                UUID id = record.readUuid();
+                write(() -> {
+                    if (!editUser(id, name, email, password, privacy)) {
+                        User user = new User(name, email, password, privacy);
+                        user.setId(id);
+                        index(user);
+                    }
+                    return null;
+                });
+                break;
+            case OP_DELETE:
+                deleteUser(record.readUuid());
+                break;
+            default:
+                throw new IllegalStateException("Operação de journal desconhecida: " + op);
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Consumer<RecordWriter> out) {
+        for (User user : getAllUsers()) {
+            out.accept(putRecord(user));
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> action) {
+        T result;
+        long seq;
+        lock.writeLock().lock();
+        try {
+            pendingSeq = -1;
+            result = action.get();
+            seq = pendingSeq;
+            pendingSeq = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (journal != null) {
+            journal.awaitDurable(seq);
+        }
+        return result;
+    }
+
+    private void journalPut(User user) {
+        if (journal != null) {
+            pendingSeq = journal.appendDeferred(putRecord(user));
+        }
+    }
+
+    private RecordWriter putRecord(User user) {
+        return new RecordWriter(JOURNAL_SOURCE, OP_PUT)
+            .writeString(user.getName())
+            .writeString(user.getEmail())
+            .writeString(user.getPassword())
+            .writeString(user.getPrivacy().name())
+            .writeUuid(user.getId());
+    }
+
+    private void index(User user) {
+        usersById.put(user.getId(), user);
+        usersByEmail.put(user.getEmail(), user);
+        usersByName.put(user.getName(), user);
+        if (user.getPrivacy() == Privacy.PUBLIC) {
+            searchIndex.add(user);
+        }
+        // Ordinais na ordem de cadastro deixam os bitmaps de curtidas mais compactos
+        UserOrdinals.of(user.getId());
+    }
 }
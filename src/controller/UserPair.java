@@ -0,0 +1,35 @@
+package controller;
+
+import java.util.UUID;
+
+/*
+ * Par não ordenado de usuários, usado como chave de índices em que
+ * (a, b) e (b, a) são a mesma relação.
+ */
+final class UserPair {
+    private final UUID first;
+    private final UUID second;
+
+    UserPair(UUID a, UUID b) {
+        if (a.compareTo(b) <= 0) {
+            this.first = a;
+            this.second = b;
+        } else {
+            this.first = b;
+            this.second = a;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof UserPair)) return false;
+        UserPair other = (UserPair) obj;
+        return first.equals(other.first) && second.equals(other.second);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * first.hashCode() + second.hashCode();
+    }
+}
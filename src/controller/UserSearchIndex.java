@@ -0,0 +1,371 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import model.User;
+import model.UserOrdinals;
+
+/*
+ * Índice de busca de usuários por nome e email. O autocompletar usa um
+ * dicionário ordenado de chaves (nome completo, nome a partir de cada
+ * sobrenome e email, sem acentos): as chaves com um prefixo formam um
+ * intervalo contíguo, percorrido em ordem alfabética até juntar limit
+ * usuários. A tolerância a erros de digitação trabalha no vocabulário de
+ * palavras dos nomes, que é pequeno: cada palavra da consulta é trocada por
+ * palavras parecidas (por trigramas) e os usuários com todas elas saem da
+ * interseção das listas de cada palavra. Os usuários são identificados pelo
+ * ordinal (UserOrdinals).
+ */
+class UserSearchIndex {
+    // Similaridade (Jaccard dos trigramas) mínima para aceitar uma palavra como correção
+    private static final double MIN_WORD_SIMILARITY = 0.4;
+    private static final int MAX_WORD_CANDIDATES = 5;
+    private static final int MAX_COMBINATIONS = 256;
+
+    private final NavigableMap<String, IntList> prefixes = new TreeMap<>();
+    private final Map<String, IntList> usersByWord = new HashMap<>();
+    private final Map<String, Set<String>> wordsByTrigram = new HashMap<>();
+    private final Map<Integer, User> users = new HashMap<>();
+
+    void add(User user) {
+        int ordinal = UserOrdinals.of(user.getId());
+        users.put(ordinal, user);
+        for (String key : keysOf(user)) {
+            prefixes.computeIfAbsent(key, k -> new IntList()).add(ordinal);
+        }
+        for (String word : new LinkedHashSet<>(Tokenizer.tokenize(user.getName()))) {
+            IntList wordUsers = usersByWord.get(word);
+            if (wordUsers == null) {
+                wordUsers = new IntList();
+                usersByWord.put(word, wordUsers);
+                for (String trigram : trigramsOf(word)) {
+                    wordsByTrigram.computeIfAbsent(trigram, k -> new HashSet<>()).add(word);
+                }
+            }
+            wordUsers.add(ordinal);
+        }
+    }
+
+    // Deve ser chamado antes de alterar nome ou email do usuário
+    void remove(User user) {
+        int ordinal = UserOrdinals.find(user.getId());
+        if (ordinal < 0 || users.remove(ordinal) == null) {
+            return;
+        }
+        for (String key : keysOf(user)) {
+            removeFrom(prefixes, key, ordinal);
+        }
+        for (String word : new LinkedHashSet<>(Tokenizer.tokenize(user.getName()))) {
+            removeFrom(usersByWord, word, ordinal);
+            if (!usersByWord.containsKey(word)) {
+                for (String trigram : trigramsOf(word)) {
+                    Set<String> words = wordsByTrigram.get(trigram);
+                    words.remove(word);
+                    if (words.isEmpty()) {
+                        wordsByTrigram.remove(trigram);
+                    }
+                }
+            }
+        }
+    }
+
+    // Usuários com alguma chave começando pela consulta, em ordem alfabética da chave
+    List<User> complete(String query, int limit, Predicate<User> accept) {
+        Set<User> found = new LinkedHashSet<>();
+        for (String prefix : queryForms(query)) {
+            if (prefix.isEmpty()) {
+                continue;
+            }
+            for (IntList ordinals : prefixes.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                for (int i = 0; i < ordinals.size && found.size() < limit; i++) {
+                    User user = users.get(ordinals.values[i]);
+                    if (accept.test(user)) {
+                        found.add(user);
+                    }
+                }
+                if (found.size() >= limit) {
+                    return new ArrayList<>(found);
+                }
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /*
+     * Usuários cujo nome tem, para cada palavra da consulta, uma palavra
+     * igual ou parecida. As combinações de correções são testadas da mais
+     * para a menos parecida; em cada uma, a lista de usuários da palavra mais
+     * rara é percorrida e as demais avançam junto com ela (todas estão em
+     * ordem crescente), parando ao juntar limit usuários.
+     */
+    List<User> fuzzy(String query, int limit, Predicate<User> accept) {
+        List<String> tokens = new ArrayList<>(new LinkedHashSet<>(Tokenizer.tokenize(query)));
+        if (tokens.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        int perToken = MAX_WORD_CANDIDATES;
+        while (perToken > 1 && Math.pow(perToken, tokens.size()) > MAX_COMBINATIONS) {
+            perToken--;
+        }
+        List<List<WordMatch>> options = new ArrayList<>();
+        for (String token : tokens) {
+            List<WordMatch> similar = similarWords(token);
+            if (similar.isEmpty()) {
+                return new ArrayList<>();
+            }
+            options.add(similar.subList(0, Math.min(perToken, similar.size())));
+        }
+
+        List<Combination> combinations = new ArrayList<>();
+        combine(options, 0, new WordMatch[tokens.size()], 0, combinations);
+        combinations.sort(Comparator.comparingDouble((Combination combination) -> combination.similarity).reversed());
+
+        Set<User> found = new LinkedHashSet<>();
+        for (Combination combination : combinations) {
+            IntList[] lists = combination.userLists();
+            IntList rarest = lists[0];
+            int[] positions = new int[lists.length];
+            for (int i = 0; i < rarest.size && found.size() < limit; i++) {
+                int ordinal = rarest.values[i];
+                boolean inAll = true;
+                for (int k = 1; k < lists.length && inAll; k++) {
+                    positions[k] = lists[k].seek(ordinal, positions[k]);
+                    inAll = positions[k] < lists[k].size && lists[k].values[positions[k]] == ordinal;
+                }
+                if (inAll) {
+                    User user = users.get(ordinal);
+                    if (accept.test(user)) {
+                        found.add(user);
+                    }
+                }
+            }
+            if (found.size() >= limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    // Mesmos critérios das buscas indexadas, para checar um usuário fora do índice
+    static boolean matchesPrefix(User user, String query) {
+        for (String prefix : queryForms(query)) {
+            if (prefix.isEmpty()) {
+                continue;
+            }
+            for (String key : keysOf(user)) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Média das similaridades de cada palavra da consulta com a palavra mais parecida do nome; 0 se alguma faltar
+    static double similarity(User user, String query) {
+        List<String> tokens = Tokenizer.tokenize(query);
+        List<String> words = Tokenizer.tokenize(user.getName());
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        double total = 0;
+        for (String token : tokens) {
+            double best = 0;
+            for (String word : words) {
+                best = Math.max(best, wordSimilarity(token, word));
+            }
+            if (best < MIN_WORD_SIMILARITY) {
+                return 0;
+            }
+            total += best;
+        }
+        return total / tokens.size();
+    }
+
+    /*
+     * Palavras do vocabulário parecidas com token, da mais para a menos
+     * parecida. Uma palavra que existe no vocabulário não é corrigida.
+     */
+    private List<WordMatch> similarWords(String token) {
+        List<WordMatch> matches = new ArrayList<>();
+        if (usersByWord.containsKey(token)) {
+            matches.add(new WordMatch(token, 1.0));
+            return matches;
+        }
+        Set<String> tokenTrigrams = trigramsOf(token);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : tokenTrigrams) {
+            Set<String> words = wordsByTrigram.get(trigram);
+            if (words != null) {
+                for (String word : words) {
+                    shared.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            int count = entry.getValue();
+            double similarity = (double) count / (tokenTrigrams.size() + trigramsOf(entry.getKey()).size() - count);
+            if (similarity >= MIN_WORD_SIMILARITY) {
+                matches.add(new WordMatch(entry.getKey(), similarity));
+            }
+        }
+        matches.sort(Comparator.comparingDouble((WordMatch match) -> match.similarity).reversed()
+            .thenComparing(match -> match.word));
+        return matches;
+    }
+
+    private void combine(List<List<WordMatch>> options, int index, WordMatch[] chosen, double similarity,
+            List<Combination> out) {
+        if (index == options.size()) {
+            out.add(new Combination(chosen.clone(), similarity));
+            return;
+        }
+        for (WordMatch match : options.get(index)) {
+            chosen[index] = match;
+            combine(options, index + 1, chosen, similarity + match.similarity, out);
+        }
+    }
+
+    private static double wordSimilarity(String a, String b) {
+        if (a.equals(b)) {
+            return 1.0;
+        }
+        Set<String> trigramsA = trigramsOf(a);
+        Set<String> trigramsB = trigramsOf(b);
+        int count = 0;
+        for (String trigram : trigramsA) {
+            if (trigramsB.contains(trigram)) {
+                count++;
+            }
+        }
+        return (double) count / (trigramsA.size() + trigramsB.size() - count);
+    }
+
+    private static Set<String> keysOf(User user) {
+        Set<String> keys = new LinkedHashSet<>();
+        List<String> tokens = Tokenizer.tokenize(user.getName());
+        for (int i = 0; i < tokens.size(); i++) {
+            keys.add(String.join(" ", tokens.subList(i, tokens.size())));
+        }
+        if (user.getEmail() != null) {
+            keys.add(Tokenizer.fold(user.getEmail().trim()));
+        }
+        return keys;
+    }
+
+    // A consulta como nome (termos separados por espaço) e como email (texto cru)
+    private static Set<String> queryForms(String query) {
+        Set<String> forms = new LinkedHashSet<>();
+        forms.add(normalize(query));
+        forms.add(Tokenizer.fold(query.trim()));
+        return forms;
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", Tokenizer.tokenize(text));
+    }
+
+    // Trigramas da palavra com duas posições de preenchimento no início e uma no fim
+    private static Set<String> trigramsOf(String word) {
+        Set<String> result = new HashSet<>();
+        String padded = "  " + word + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    private static void removeFrom(Map<String, IntList> index, String key, int ordinal) {
+        IntList list = index.get(key);
+        if (list != null) {
+            list.remove(ordinal);
+            if (list.size == 0) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static class WordMatch {
+        private final String word;
+        private final double similarity;
+
+        private WordMatch(String word, double similarity) {
+            this.word = word;
+            this.similarity = similarity;
+        }
+    }
+
+    private class Combination {
+        private final WordMatch[] words;
+        private final double similarity;
+
+        private Combination(WordMatch[] words, double similarity) {
+            this.words = words;
+            this.similarity = similarity;
+        }
+
+        // Listas de usuários de cada palavra, da mais curta para a mais longa
+        private IntList[] userLists() {
+            IntList[] lists = new IntList[words.length];
+            for (int i = 0; i < words.length; i++) {
+                lists[i] = usersByWord.get(words[i].word);
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+            return lists;
+        }
+    }
+
+    // Lista ordenada de ordinais sem repetição
+    private static class IntList {
+        private int[] values = new int[2];
+        private int size;
+
+        private void add(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+        }
+
+        private void remove(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                size--;
+            }
+        }
+
+        // Primeira posição a partir de from com valor >= value, por busca exponencial
+        private int seek(int value, int from) {
+            int low = from;
+            int high = from;
+            int step = 1;
+            while (high < size && values[high] < value) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high + 1, size);
+            int index = Arrays.binarySearch(values, low, high, value);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
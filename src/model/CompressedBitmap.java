@@ -0,0 +1,594 @@
+package model;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/*
+ * Conjunto de inteiros não negativos comprimido no estilo "roaring": os
+ * valores são agrupados pelos 16 bits altos e cada grupo usa o contêiner mais
+ * compacto para sua densidade — lista ordenada (até 4096 valores), mapa de
+ * bits de 8 KB ou sequência de intervalos.
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    // Acima disso um contêiner de intervalos ocupa mais que o mapa de bits
+    private static final int RUN_MAX = 2047;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public CompressedBitmap() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    public boolean add(int value) {
+        checkValue(value);
+        char key = (char) (value >>> 16);
+        int index = indexOf(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add((char) value);
+        return containers[index].cardinality() != before;
+    }
+
+    public boolean remove(int value) {
+        if (value < 0) return false;
+        int index = indexOf((char) (value >>> 16));
+        if (index < 0) return false;
+
+        Container container = containers[index];
+        int before = container.cardinality();
+        Container updated = container.remove((char) value);
+        if (updated.cardinality() == before) return false;
+
+        if (updated.cardinality() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = updated;
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) return false;
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container intersection = containers[i].and(other.containers[j]);
+                if (intersection.cardinality() > 0) {
+                    result.insertContainer(result.size, keys[i], intersection);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public int andCardinality(CompressedBitmap other) {
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                cardinality += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int containerIndex;
+            private int[] values = new int[0];
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                while (position >= values.length && containerIndex < size) {
+                    values = containers[containerIndex].toArray(keys[containerIndex] << 16);
+                    containerIndex++;
+                    position = 0;
+                }
+                return position < values.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return values[position++];
+            }
+        };
+    }
+
+    // Tamanho aproximado em bytes dos dados comprimidos
+    public long getSizeInBytes() {
+        long bytes = size * 2L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private int indexOf(char key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else if (keys[mid] > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Valor negativo não pode ser armazenado no bitmap: " + value);
+        }
+    }
+
+    private abstract static class Container {
+        abstract boolean contains(char value);
+        // Devolvem o contêiner resultante, que pode ser de outro tipo
+        abstract Container add(char value);
+        abstract Container remove(char value);
+        abstract int cardinality();
+        abstract void forEach(int high, IntConsumer action);
+        abstract long sizeInBytes();
+        abstract BitmapContainer toBitmap();
+
+        int[] toArray(int high) {
+            int[] values = new int[cardinality()];
+            int[] position = new int[1];
+            forEach(high, value -> values[position[0]++] = value);
+            return values;
+        }
+
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            return toBitmap().andBitmap(other.toBitmap()).shrink();
+        }
+
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            return toBitmap().andBitmapCardinality(other.toBitmap());
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            values = new char[4];
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) return this;
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return values.length * 2L;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.set(values[i]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int cardinality;
+
+        void set(char value) {
+            long mask = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & mask) == 0) {
+                words[word] |= mask;
+                cardinality++;
+            }
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int before = cardinality;
+            set(value);
+            // Reavalia a codificação de tempos em tempos; curtidas de usuários
+            // com ordinais consecutivos viram poucos intervalos
+            if (cardinality != before && cardinality % ARRAY_MAX == 0) {
+                return toRunsIfSmaller();
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long mask = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & mask) != 0) {
+                words[word] &= ~mask;
+                cardinality--;
+            }
+            return shrink();
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    action.accept(high | (word << 6) | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return BITMAP_WORDS * 8L;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        BitmapContainer andBitmap(BitmapContainer other) {
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result.words[i] = words[i] & other.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result;
+        }
+
+        int andBitmapCardinality(BitmapContainer other) {
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                count += Long.bitCount(words[i] & other.words[i]);
+            }
+            return count;
+        }
+
+        Container shrink() {
+            if (cardinality > ARRAY_MAX) return this;
+            char[] values = new char[Math.max(cardinality, 4)];
+            int[] count = new int[1];
+            forEach(0, value -> values[count[0]++] = (char) value);
+            return new ArrayContainer(values, count[0]);
+        }
+
+        private Container toRunsIfSmaller() {
+            int runs = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                long next = i + 1 < BITMAP_WORDS ? words[i + 1] : 0;
+                // Conta os fins de intervalo: bit 1 seguido de bit 0
+                runs += Long.bitCount(word & ~((word >>> 1) | (next << 63)));
+                if (runs > RUN_MAX) return this;
+            }
+            return RunContainer.fromBitmap(this, runs);
+        }
+    }
+
+    /*
+     * Intervalos ordenados e disjuntos, guardados como pares (início,
+     * comprimento - 1).
+     */
+    private static final class RunContainer extends Container {
+        private char[] runs;
+        private int runCount;
+        private int cardinality;
+
+        private RunContainer(char[] runs, int runCount, int cardinality) {
+            this.runs = runs;
+            this.runCount = runCount;
+            this.cardinality = cardinality;
+        }
+
+        static RunContainer fromBitmap(BitmapContainer bitmap, int runCount) {
+            char[] runs = new char[Math.max(runCount, 1) * 2];
+            int count = 0;
+            int start = -1;
+            int previous = -2;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = bitmap.words[word];
+                while (bits != 0) {
+                    int value = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (value != previous + 1) {
+                        if (start >= 0) {
+                            runs[count++] = (char) start;
+                            runs[count++] = (char) (previous - start);
+                        }
+                        start = value;
+                    }
+                    previous = value;
+                }
+            }
+            if (start >= 0) {
+                runs[count++] = (char) start;
+                runs[count++] = (char) (previous - start);
+            }
+            return new RunContainer(runs, count / 2, bitmap.cardinality);
+        }
+
+        private int start(int run) {
+            return runs[2 * run];
+        }
+
+        private int end(int run) {
+            return runs[2 * run] + runs[2 * run + 1];
+        }
+
+        // Índice do último intervalo que começa em value ou antes; -1 se nenhum
+        private int floorRun(int value) {
+            int low = 0;
+            int high = runCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (start(mid) <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        @Override
+        boolean contains(char value) {
+            int run = floorRun(value);
+            return run >= 0 && value <= end(run);
+        }
+
+        @Override
+        Container add(char value) {
+            int run = floorRun(value);
+            if (run >= 0 && value <= end(run)) return this;
+
+            boolean extendsPrevious = run >= 0 && end(run) + 1 == value;
+            boolean extendsNext = run + 1 < runCount && start(run + 1) == value + 1;
+            if (extendsPrevious && extendsNext) {
+                setRun(run, start(run), end(run + 1));
+                removeRun(run + 1);
+            } else if (extendsPrevious) {
+                setRun(run, start(run), value);
+            } else if (extendsNext) {
+                setRun(run + 1, value, end(run + 1));
+            } else {
+                insertRun(run + 1, value, value);
+            }
+            cardinality++;
+            return runCount > RUN_MAX ? toBitmap() : this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int run = floorRun(value);
+            if (run < 0 || value > end(run)) return this;
+
+            int start = start(run);
+            int end = end(run);
+            if (start == end) {
+                removeRun(run);
+            } else if (value == start) {
+                setRun(run, start + 1, end);
+            } else if (value == end) {
+                setRun(run, start, end - 1);
+            } else {
+                setRun(run, start, value - 1);
+                insertRun(run + 1, value + 1, end);
+            }
+            cardinality--;
+            if (runCount > RUN_MAX) return toBitmap();
+            return cardinality <= ARRAY_MAX && cardinality < runCount * 2 ? toBitmap().shrink() : this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int run = 0; run < runCount; run++) {
+                for (int value = start(run), end = end(run); value <= end; value++) {
+                    action.accept(high | value);
+                }
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return runs.length * 2L;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int run = 0; run < runCount; run++) {
+                for (int value = start(run), end = end(run); value <= end; value++) {
+                    bitmap.words[value >>> 6] |= 1L << value;
+                }
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+
+        private void setRun(int run, int start, int end) {
+            runs[2 * run] = (char) start;
+            runs[2 * run + 1] = (char) (end - start);
+        }
+
+        private void insertRun(int run, int start, int end) {
+            if (runCount * 2 == runs.length) {
+                runs = Arrays.copyOf(runs, runs.length * 2);
+            }
+            System.arraycopy(runs, 2 * run, runs, 2 * run + 2, 2 * (runCount - run));
+            runCount++;
+            setRun(run, start, end);
+        }
+
+        private void removeRun(int run) {
+            System.arraycopy(runs, 2 * run + 2, runs, 2 * run, 2 * (runCount - run - 1));
+            runCount--;
+        }
+    }
+}
@@ -25,6 +25,10 @@ public abstract class Content {
         return id;
     }
 
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
     public UUID getAuthorId() {
         return authorId;
     }
@@ -33,6 +37,10 @@ public abstract class Content {
         return createdAt;
     }
 
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public String getContent() {
         return content;
     }
@@ -5,7 +5,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
 public class Event extends MemberEntity {
-    private LocalDateTime eventDateTime;
+    private volatile LocalDateTime eventDateTime;
     
     public Event(String name, String description, LocalDateTime eventDateTime, UUID creatorId) {
         super(name, description, creatorId);
@@ -14,8 +14,9 @@ public class Event extends MemberEntity {
     
     @Override
     public boolean addMember(UUID userId) {
-        if (canAddMember(userId)) {
-            return members.add(userId);
+        if (canAddMember(userId) && members.add(userId)) {
+            fireMemberAdded(userId);
+            return true;
         }
         return false;
     }
@@ -25,7 +26,11 @@ public class Event extends MemberEntity {
         if (isOwner(userId)) {
             return false;
         }
-        return members.remove(userId);
+        if (members.remove(userId)) {
+            fireMemberRemoved(userId);
+            return true;
+        }
+        return false;
     }
     
     @Override
@@ -8,7 +8,7 @@ public class FriendRequest {
     private UUID id;
     private UUID senderId;
     private UUID receiverId;
-    private RequestStatus status;
+    private volatile RequestStatus status;
     private LocalDateTime timestamp;
     
     public enum RequestStatus {
@@ -42,7 +42,9 @@ public class FriendRequest {
     public RequestStatus getStatus() { return status; }
     public LocalDateTime getTimestamp() { return timestamp; }
 
+    public void setId(UUID id) { this.id = id; }
     public void setStatus(RequestStatus status) { this.status = status; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 
     public String getFormattedDate() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
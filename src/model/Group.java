@@ -3,26 +3,28 @@ package model;
 import java.util.UUID;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class Group extends MemberEntity 
 {
-   private Privacy privacy;
-   private Set<UUID> moderators;
+   private volatile Privacy privacy;
+   private volatile Set<UUID> moderators;
    
    public Group(String name, String description, UUID ownerId, Privacy privacy) {
        super(name, description, ownerId);
        this.privacy = privacy;
-       this.moderators = new HashSet<>();
+       this.moderators = ConcurrentHashMap.newKeySet();
        
        this.moderators.add(ownerId);
    }
    
    @Override
    public boolean addMember(UUID userId) {
-       if (canAddMember(userId)) {
-           return members.add(userId);
+       if (canAddMember(userId) && members.add(userId)) {
+           fireMemberAdded(userId);
+           return true;
        }
        return false;
    }
@@ -32,8 +34,14 @@ public class Group extends MemberEntity
        if (isOwner(userId)) {
            return false;
        }
-       moderators.remove(userId);
-       return members.remove(userId);
+       if (moderators.remove(userId)) {
+           fireModeratorRemoved(userId);
+       }
+       if (members.remove(userId)) {
+           fireMemberRemoved(userId);
+           return true;
+       }
+       return false;
    }
    
    @Override
@@ -63,29 +71,51 @@ public class Group extends MemberEntity
        return new HashSet<>(moderators);
    }
    
+   public void setModerators(Set<UUID> moderators) {
+       Set<UUID> previous = this.moderators;
+       Set<UUID> updated = ConcurrentHashMap.newKeySet();
+       updated.addAll(moderators);
+       updated.add(ownerId);
+       this.moderators = updated;
+       for (UUID userId : previous) {
+           if (!this.moderators.contains(userId)) {
+               fireModeratorRemoved(userId);
+           }
+       }
+       for (UUID userId : this.moderators) {
+           if (!previous.contains(userId)) {
+               fireModeratorAdded(userId);
+           }
+       }
+   }
+   
    public void setPrivacy(Privacy privacy) {
        this.privacy = privacy;
    }
    
    public void setOwnerId(UUID newOwnerId) {
-       if (!members.contains(newOwnerId)) {
-           members.add(newOwnerId);
+       if (members.add(newOwnerId)) {
+           fireMemberAdded(newOwnerId);
+       }
+       if (moderators.add(newOwnerId)) {
+           fireModeratorAdded(newOwnerId);
        }
-       moderators.add(newOwnerId);
+       UUID previousOwnerId = this.ownerId;
        this.ownerId = newOwnerId;
+       fireOwnerChanged(previousOwnerId, newOwnerId);
    }
    
    public boolean addModerator(UUID userId) {
-       if (userId != null && members.contains(userId) && !moderators.contains(userId)) {
-           moderators.add(userId);
+       if (userId != null && members.contains(userId) && moderators.add(userId)) {
+           fireModeratorAdded(userId);
            return true;
        }
        return false;
    }
    
    public boolean removeModerator(UUID userId) {
-       if (userId != null && !userId.equals(ownerId) && moderators.contains(userId)) {
-           moderators.remove(userId);
+       if (userId != null && !userId.equals(ownerId) && moderators.remove(userId)) {
+           fireModeratorRemoved(userId);
            return true;
        }
        return false;
@@ -8,7 +8,7 @@ public class GroupMessage {
     private UUID id;
     private UUID groupId;
     private UUID senderId;
-    private String content;
+    private volatile String content;
     private LocalDateTime sentAt;
     
     public GroupMessage(UUID groupId, UUID senderId, String content) {
@@ -39,9 +39,17 @@ public class GroupMessage {
         return content;
     }
     
+    public void setContent(String content) {
+        this.content = content;
+    }
+    
     public LocalDateTime getSentAt() {
         return sentAt;
     }
+    
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
 
     public String getFormattedDate() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
@@ -4,14 +4,17 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class MemberEntity {
     protected UUID id;
-    protected String name;
-    protected String description;
-    protected UUID ownerId;
+    protected volatile String name;
+    protected volatile String description;
+    protected volatile UUID ownerId;
     protected LocalDateTime createdAt;
-    protected Set<UUID> members;
+    // Conjunto concorrente: lido sem lock enquanto o controller altera a participação
+    protected volatile Set<UUID> members;
+    private volatile MembershipListener membershipListener;
 
     public MemberEntity(String name, String description, UUID ownerId) {
         this.id = UUID.randomUUID();
@@ -19,7 +22,7 @@ public abstract class MemberEntity {
         this.description = description;
         this.ownerId = ownerId;
         this.createdAt = LocalDateTime.now();
-        this.members = new HashSet<>();
+        this.members = ConcurrentHashMap.newKeySet();
         
         this.members.add(ownerId);
     }
@@ -34,6 +37,10 @@ public abstract class MemberEntity {
         return id;
     }
 
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
@@ -58,10 +65,67 @@ public abstract class MemberEntity {
         return createdAt;
     }
 
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public Set<UUID> getMembers() {
         return new HashSet<>(members);
     }
 
+    public void setMembers(Set<UUID> members) {
+        Set<UUID> previous = this.members;
+        Set<UUID> updated = ConcurrentHashMap.newKeySet();
+        updated.addAll(members);
+        updated.add(ownerId);
+        this.members = updated;
+        for (UUID userId : previous) {
+            if (!this.members.contains(userId)) {
+                fireMemberRemoved(userId);
+            }
+        }
+        for (UUID userId : this.members) {
+            if (!previous.contains(userId)) {
+                fireMemberAdded(userId);
+            }
+        }
+    }
+
+    public void setMembershipListener(MembershipListener membershipListener) {
+        this.membershipListener = membershipListener;
+    }
+
+    // Usados pelas subclasses sempre que members, moderadores ou dono mudam
+    protected void fireMemberAdded(UUID userId) {
+        if (membershipListener != null) {
+            membershipListener.memberAdded(this, userId);
+        }
+    }
+
+    protected void fireMemberRemoved(UUID userId) {
+        if (membershipListener != null) {
+            membershipListener.memberRemoved(this, userId);
+        }
+    }
+
+    protected void fireModeratorAdded(UUID userId) {
+        if (membershipListener != null) {
+            membershipListener.moderatorAdded(this, userId);
+        }
+    }
+
+    protected void fireModeratorRemoved(UUID userId) {
+        if (membershipListener != null) {
+            membershipListener.moderatorRemoved(this, userId);
+        }
+    }
+
+    protected void fireOwnerChanged(UUID previousOwnerId, UUID newOwnerId) {
+        if (membershipListener != null) {
+            membershipListener.ownerChanged(this, previousOwnerId, newOwnerId);
+        }
+    }
+
     public boolean isMember(UUID userId) {
         return members.contains(userId);
     }
@@ -0,0 +1,23 @@
+package model;
+
+import java.util.UUID;
+
+/*
+ * Observa as mudanças de participação em grupos e eventos, para que índices
+ * mantidos fora da entidade (usuário -> grupos, por exemplo) acompanhem
+ * qualquer alteração feita por addMember, removeMember, setOwnerId etc.
+ */
+public interface MembershipListener {
+    void memberAdded(MemberEntity entity, UUID userId);
+
+    void memberRemoved(MemberEntity entity, UUID userId);
+
+    default void moderatorAdded(MemberEntity entity, UUID userId) {
+    }
+
+    default void moderatorRemoved(MemberEntity entity, UUID userId) {
+    }
+
+    default void ownerChanged(MemberEntity entity, UUID previousOwnerId, UUID newOwnerId) {
+    }
+}
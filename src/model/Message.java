@@ -6,7 +6,7 @@ import java.time.format.DateTimeFormatter;
 
 public class Message extends Content {
     private UUID receiverId;
-    private boolean read;
+    private volatile boolean read;
 
     public Message(UUID senderId, UUID receiverId, String content) {
         super(senderId, content);
@@ -11,7 +11,7 @@ public class Notification {
     private String title;
     private String message;
     private LocalDateTime createdAt;
-    private boolean isRead;
+    private volatile boolean isRead;
     private UUID relatedId;
 
     public Notification(UUID userId, String type, String title, String message, UUID relatedId) {
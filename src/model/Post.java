@@ -1,15 +1,19 @@
 package model;
 import java.util.UUID;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.HashSet;
 
 public abstract class Post extends Content {
-    private Set<UUID> likes;
+    // Ordinais (UserOrdinals) dos usuários que curtiram; compartilhado com a versão editada do post
+    private volatile PostLikes likes;
 
     public Post(UUID userId, String content) {
         super(userId, content);
-        this.likes = new HashSet<>();
+        this.likes = new PostLikes();
     }
 
     public abstract String getPostType();
@@ -40,18 +44,48 @@ public abstract class Post extends Content {
     }
 
     public boolean like(UUID userId) {
-        return likes.add(userId); 
+        return likes.add(UserOrdinals.of(userId));
     }
 
     public boolean unlike(UUID userId) {
-        return likes.remove(userId); 
+        int ordinal = UserOrdinals.find(userId);
+        return ordinal >= 0 && likes.remove(ordinal);
+    }
+
+    public boolean isLikedBy(UUID userId) {
+        int ordinal = UserOrdinals.find(userId);
+        return ordinal >= 0 && likes.contains(ordinal);
     }
 
     public int getLikeCount() {
-        return likes.size();
+        return likes.getCount();
+    }
+
+    /*
+     * Passa a usar as curtidas de previous, o post que este substitui numa
+     * edição: curtidas que ainda chegarem ao post antigo contam também aqui.
+     */
+    public void adoptLikes(Post previous) {
+        this.likes = previous.likes;
     }
 
+    // Cópia somente leitura das curtidas, em ordem de ordinal
     public Set<UUID> getLikes() {
-        return likes;
+        Set<UUID> likers = new LinkedHashSet<>();
+        for (int ordinal : likes.getOrdinals()) {
+            likers.add(UserOrdinals.userOf(ordinal));
+        }
+        return Collections.unmodifiableSet(likers);
+    }
+
+    // Quais dos usuários informados (ordinais) curtiram o post
+    public List<UUID> getLikesAmong(CompressedBitmap users) {
+        List<UUID> likers = new ArrayList<>();
+        likes.among(users).forEach(ordinal -> likers.add(UserOrdinals.userOf(ordinal)));
+        return likers;
+    }
+
+    public int countLikesAmong(CompressedBitmap users) {
+        return likes.countAmong(users);
     }
-}
\ No newline at end of file
+}
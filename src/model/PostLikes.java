@@ -0,0 +1,252 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Curtidas de um post, guardadas como ordinais de usuário (UserOrdinals). O
+ * total fica num contador distribuído em células (LongAdder), lido sem lock;
+ * ele é atualizado logo depois do conjunto e pode ficar um instante atrás.
+ *
+ * Enquanto o post tem poucas curtidas, quem curtiu fica num CompressedBitmap
+ * protegido pelo lock de leitura e escrita do post, que é o formato mais
+ * compacto. Ao chegar a HOT_LIKES o post é promovido para blocos fixos de
+ * bits, um por grupo de 65536 ordinais (o mesmo mapa de 8 KB que o
+ * CompressedBitmap já usaria nessa densidade), e cada curtida vira um CAS
+ * numa palavra de 64 bits: curtidas de usuários diferentes não se esperam.
+ * Depois da promoção o lock só é pego para criar um bloco que ainda não
+ * existe.
+ */
+public final class PostLikes {
+    private static final int HOT_LIKES = 4096;
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_WORDS = 1 << (BLOCK_BITS - 6);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder count = new LongAdder();
+    // Até a promoção, só sob o lock; depois, null
+    private CompressedBitmap likers = new CompressedBitmap();
+    // Blocos do post promovido (null antes disso); o vetor é trocado inteiro, os blocos nunca
+    private volatile AtomicLongArray[] blocks;
+
+    public boolean add(int ordinal) {
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Ordinal de usuário inválido: " + ordinal);
+        }
+        if (blocks == null) {
+            lock.writeLock().lock();
+            try {
+                if (blocks == null) {
+                    if (!likers.add(ordinal)) {
+                        return false;
+                    }
+                    if (likers.getCardinality() >= HOT_LIKES) {
+                        promote();
+                    }
+                    count.increment();
+                    return true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (!set(blockFor(ordinal), ordinal)) {
+            return false;
+        }
+        count.increment();
+        return true;
+    }
+
+    public boolean remove(int ordinal) {
+        if (ordinal < 0) {
+            return false;
+        }
+        if (blocks == null) {
+            lock.writeLock().lock();
+            try {
+                if (blocks == null) {
+                    if (!likers.remove(ordinal)) {
+                        return false;
+                    }
+                    count.decrement();
+                    return true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        AtomicLongArray block = block(blocks, ordinal);
+        if (block == null || !clear(block, ordinal)) {
+            return false;
+        }
+        count.decrement();
+        return true;
+    }
+
+    public boolean contains(int ordinal) {
+        if (ordinal < 0) {
+            return false;
+        }
+        if (blocks == null) {
+            lock.readLock().lock();
+            try {
+                if (blocks == null) {
+                    return likers.contains(ordinal);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return isSet(blocks, ordinal);
+    }
+
+    public int getCount() {
+        return (int) Math.max(0, count.sum());
+    }
+
+    // Em ordem crescente de ordinal
+    public List<Integer> getOrdinals() {
+        if (blocks == null) {
+            lock.readLock().lock();
+            try {
+                if (blocks == null) {
+                    List<Integer> ordinals = new ArrayList<>(likers.getCardinality());
+                    likers.forEach(ordinals::add);
+                    return ordinals;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        AtomicLongArray[] hot = blocks;
+        List<Integer> ordinals = new ArrayList<>(getCount());
+        for (int index = 0; index < hot.length; index++) {
+            if (hot[index] == null) {
+                continue;
+            }
+            for (int word = 0; word < BLOCK_WORDS; word++) {
+                long bits = hot[index].get(word);
+                while (bits != 0) {
+                    ordinals.add((index << BLOCK_BITS) | (word << 6) | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return ordinals;
+    }
+
+    // Interseção com os usuários informados, em ordem crescente de ordinal
+    public CompressedBitmap among(CompressedBitmap users) {
+        if (blocks == null) {
+            lock.readLock().lock();
+            try {
+                if (blocks == null) {
+                    return likers.and(users);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        AtomicLongArray[] hot = blocks;
+        CompressedBitmap result = new CompressedBitmap();
+        users.forEach(ordinal -> {
+            if (isSet(hot, ordinal)) {
+                result.add(ordinal);
+            }
+        });
+        return result;
+    }
+
+    public int countAmong(CompressedBitmap users) {
+        if (blocks == null) {
+            lock.readLock().lock();
+            try {
+                if (blocks == null) {
+                    return likers.andCardinality(users);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        AtomicLongArray[] hot = blocks;
+        int[] found = new int[1];
+        users.forEach(ordinal -> {
+            if (isSet(hot, ordinal)) {
+                found[0]++;
+            }
+        });
+        return found[0];
+    }
+
+    // Chamado com o lock de escrita: copia o bitmap comprimido para os blocos e o descarta
+    private void promote() {
+        AtomicLongArray[] hot = new AtomicLongArray[0];
+        for (PrimitiveIterator.OfInt it = likers.iterator(); it.hasNext(); ) {
+            int ordinal = it.nextInt();
+            int index = ordinal >>> BLOCK_BITS;
+            if (index >= hot.length) {
+                hot = Arrays.copyOf(hot, index + 1);
+            }
+            if (hot[index] == null) {
+                hot[index] = new AtomicLongArray(BLOCK_WORDS);
+            }
+            set(hot[index], ordinal);
+        }
+        blocks = hot;
+        likers = null;
+    }
+
+    // Bloco do ordinal no post promovido, criando-o (sob o lock) se ainda não existir
+    private AtomicLongArray blockFor(int ordinal) {
+        AtomicLongArray block = block(blocks, ordinal);
+        if (block != null) {
+            return block;
+        }
+        lock.writeLock().lock();
+        try {
+            AtomicLongArray[] hot = blocks;
+            int index = ordinal >>> BLOCK_BITS;
+            if (index < hot.length && hot[index] != null) {
+                return hot[index];
+            }
+            hot = Arrays.copyOf(hot, Math.max(hot.length, index + 1));
+            hot[index] = new AtomicLongArray(BLOCK_WORDS);
+            blocks = hot;
+            return hot[index];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static AtomicLongArray block(AtomicLongArray[] hot, int ordinal) {
+        int index = ordinal >>> BLOCK_BITS;
+        return index < hot.length ? hot[index] : null;
+    }
+
+    private static boolean isSet(AtomicLongArray[] hot, int ordinal) {
+        AtomicLongArray block = block(hot, ordinal);
+        return block != null && (block.get(word(ordinal)) & (1L << ordinal)) != 0;
+    }
+
+    // Curtida repetida não escreve na palavra: só lê
+    private static boolean set(AtomicLongArray block, int ordinal) {
+        long mask = 1L << ordinal;
+        int word = word(ordinal);
+        return (block.get(word) & mask) == 0 && (block.getAndAccumulate(word, mask, (bits, bit) -> bits | bit) & mask) == 0;
+    }
+
+    private static boolean clear(AtomicLongArray block, int ordinal) {
+        long mask = 1L << ordinal;
+        int word = word(ordinal);
+        return (block.get(word) & mask) != 0 && (block.getAndAccumulate(word, ~mask, (bits, keep) -> bits & keep) & mask) != 0;
+    }
+
+    private static int word(int ordinal) {
+        return (ordinal >>> 6) & (BLOCK_WORDS - 1);
+    }
+}
@@ -2,11 +2,12 @@ package model;
 import java.util.UUID;
 public class User
 {
-    private String name;
-    private String email;
-    private String password;
+    // Alterados por UserController.editUser enquanto outras threads leem
+    private volatile String name;
+    private volatile String email;
+    private volatile String password;
     private UUID id;
-    private Privacy privacy;
+    private volatile Privacy privacy;
 
     public User(String name, String email, String password, Privacy privacy)
     {
@@ -38,6 +39,11 @@ public class User
             return id;
         }
 
+    public void setId(UUID id)
+        {
+            this.id = id;
+        }
+
     public Privacy getPrivacy()
         {
             return privacy;
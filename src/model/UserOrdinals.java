@@ -0,0 +1,66 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Numeração densa (0, 1, 2, ...) dos ids de usuário, usada para guardar
+ * conjuntos de usuários em CompressedBitmap. Os ordinais valem apenas para o
+ * processo atual e nunca são reaproveitados; o que é persistido continua
+ * sendo o UUID.
+ */
+public final class UserOrdinals {
+    private static final Map<UUID, Integer> ordinals = new ConcurrentHashMap<>();
+    private static volatile UUID[] users = new UUID[1024];
+    private static int count;
+
+    private UserOrdinals() {
+    }
+
+    // Ordinal do usuário, atribuindo um novo na primeira vez
+    public static int of(UUID userId) {
+        Integer ordinal = ordinals.get(userId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        synchronized (UserOrdinals.class) {
+            ordinal = ordinals.get(userId);
+            if (ordinal == null) {
+                if (count == users.length) {
+                    users = Arrays.copyOf(users, count * 2);
+                }
+                users[count] = userId;
+                ordinal = count++;
+                ordinals.put(userId, ordinal);
+            }
+            return ordinal;
+        }
+    }
+
+    // Ordinal já atribuído, ou -1 se o usuário ainda não tem um
+    public static int find(UUID userId) {
+        Integer ordinal = ordinals.get(userId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public static UUID userOf(int ordinal) {
+        UUID[] snapshot = users;
+        if (ordinal < 0 || ordinal >= snapshot.length || snapshot[ordinal] == null) {
+            throw new IllegalArgumentException("Ordinal de usuário desconhecido: " + ordinal);
+        }
+        return snapshot[ordinal];
+    }
+
+    public static CompressedBitmap toBitmap(Iterable<UUID> userIds) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (UUID userId : userIds) {
+            int ordinal = find(userId);
+            if (ordinal >= 0) {
+                bitmap.add(ordinal);
+            }
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,58 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/*
+ * Formato comum do log e dos snapshots: [tamanho:int][crc32:int][corpo].
+ */
+final class FrameCodec {
+    static final int HEADER_SIZE = 8;
+
+    private FrameCodec() {
+    }
+
+    static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    static void write(ByteBuffer out, byte[] body, int checksum) {
+        out.putInt(body.length);
+        out.putInt(checksum);
+        out.put(body);
+    }
+
+    /*
+     * Entrega ao handler cada frame íntegro a partir da posição atual e
+     * para no primeiro frame incompleto ou corrompido. O buffer fica
+     * posicionado logo após o último frame válido.
+     */
+    static long read(ByteBuffer data, Consumer<ByteBuffer> handler) {
+        CRC32 crc = new CRC32();
+        long count = 0;
+        while (data.remaining() >= HEADER_SIZE) {
+            int start = data.position();
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                data.position(start);
+                break;
+            }
+            ByteBuffer body = data.slice();
+            body.limit(length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                data.position(start);
+                break;
+            }
+            handler.accept(body);
+            data.position(data.position() + length);
+            count++;
+        }
+        return count;
+    }
+}
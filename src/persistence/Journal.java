@@ -0,0 +1,219 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ * Encaminha os registros dos controllers para o write-ahead log e, na
+ * inicialização, devolve cada registro ao controller que o gerou: primeiro
+ * os do snapshot mais recente, depois apenas a cauda do log.
+ *
+ * A compactação nunca lê o estado em uso: ela sela o segmento ativo,
+ * reconstrói uma cópia do estado (snapshot anterior + segmentos selados) em
+ * controllers novos fornecidos pela stateFactory, grava o novo snapshot e
+ * apaga os segmentos que ele cobre. As escritas seguem no segmento novo.
+ */
+public class Journal implements Closeable {
+    private static final String LEGACY_LOG_FILE = "journal.log";
+    private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final Path directory;
+    private final Journaled[] handlers;
+    private final WriteAheadLog log;
+    private final Object snapshotLock = new Object();
+    private final ThreadLocal<long[]> pending = ThreadLocal.withInitial(() -> new long[] {-1});
+    private Supplier<? extends Collection<? extends Journaled>> stateFactory;
+    private ScheduledExecutorService scheduler;
+    private long snapshotSegment;
+    private long recordsAtLastSnapshot;
+    private long restoredRecords;
+    private boolean replaying;
+
+    public Journal(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.handlers = new Journaled[256];
+        this.log = new WriteAheadLog(directory, MAX_SEGMENT_BYTES);
+    }
+
+    public void register(Journaled handler) {
+        int source = handler.getJournalSource() & 0xFF;
+        if (handlers[source] != null) {
+            throw new IllegalStateException("Origem de journal já registrada: " + source);
+        }
+        handlers[source] = handler;
+    }
+
+    public void setStateFactory(Supplier<? extends Collection<? extends Journaled>> stateFactory) {
+        this.stateFactory = stateFactory;
+    }
+
+    /*
+     * Reconstrói o estado dos controllers registrados a partir do snapshot e
+     * do log, e só então conecta o journal a eles, para que novas alterações
+     * sejam gravadas.
+     */
+    public long replay() throws IOException {
+        migrateLegacyLog();
+        long count = 0;
+        replaying = true;
+        try {
+            snapshotSegment = SnapshotFile.latest(directory);
+            if (snapshotSegment > 0) {
+                count += SnapshotFile.read(SnapshotFile.path(directory, snapshotSegment), body -> dispatch(handlers, body));
+            }
+            count += log.replay(snapshotSegment, body -> dispatch(handlers, body));
+        } finally {
+            replaying = false;
+        }
+        for (Journaled handler : handlers) {
+            if (handler != null) {
+                handler.setJournal(this);
+            }
+        }
+        restoredRecords = count;
+        return count;
+    }
+
+    public void append(RecordWriter record) {
+        awaitDurable(appendDeferred(record));
+    }
+
+    /*
+     * Anexa sem esperar o disco e devolve a posição do registro. Quem grava
+     * vários registros seguidos espera uma vez só, pelo último, com
+     * awaitDurable.
+     */
+    public long appendDeferred(RecordWriter record) {
+        if (replaying) {
+            return -1;
+        }
+        return log.append(record.toByteArray());
+    }
+
+    public void awaitDurable(long seq) {
+        if (seq >= 0) {
+            log.awaitDurable(seq);
+        }
+    }
+
+    /*
+     * Para quem grava segurando um lock: anexa sem esperar o disco e guarda
+     * a posição como pendente da thread atual. Depois de soltar o lock, a
+     * thread chama awaitPending: o registro entra no log na ordem das
+     * escritas, mas os outros escritores do lock não esperam o fsync dela.
+     */
+    public void appendPending(RecordWriter record) {
+        long seq = appendDeferred(record);
+        if (seq >= 0) {
+            pending.get()[0] = seq;
+        }
+    }
+
+    // Espera o último registro anexado pela thread com appendPending (e, com ele, os anteriores)
+    public void awaitPending() {
+        long[] seq = pending.get();
+        long last = seq[0];
+        seq[0] = -1;
+        awaitDurable(last);
+    }
+
+    /*
+     * Compacta o log em um novo snapshot. Pode ser chamado de qualquer thread;
+     * só bloqueia os escritores pelo tempo de selar o segmento ativo.
+     */
+    public long snapshot() throws IOException {
+        if (stateFactory == null) {
+            throw new IllegalStateException("Nenhuma fábrica de estado configurada para snapshots");
+        }
+        synchronized (snapshotLock) {
+            long records = log.getRecordCount();
+            long sealed = log.roll();
+
+            Collection<? extends Journaled> state = stateFactory.get();
+            Journaled[] shadow = new Journaled[256];
+            for (Journaled handler : state) {
+                shadow[handler.getJournalSource() & 0xFF] = handler;
+            }
+            Consumer<ByteBuffer> apply = body -> dispatch(shadow, body);
+            if (snapshotSegment > 0) {
+                SnapshotFile.read(SnapshotFile.path(directory, snapshotSegment), apply);
+            }
+            log.readSegments(snapshotSegment, sealed, apply);
+
+            long written = SnapshotFile.write(directory, sealed, state);
+            snapshotSegment = sealed;
+            recordsAtLastSnapshot = records;
+            log.deleteSegmentsUpTo(sealed);
+            SnapshotFile.deleteOlderThan(directory, sealed);
+            return written;
+        }
+    }
+
+    public void startPeriodicSnapshots(long interval, TimeUnit unit) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                if (log.getRecordCount() != recordsAtLastSnapshot) {
+                    snapshot();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Erro ao gerar snapshot: " + e.getMessage());
+            }
+        }, interval, interval, unit);
+    }
+
+    public long getRestoredRecordCount() {
+        return restoredRecords;
+    }
+
+    public long getRecordCount() {
+        return log.getRecordCount();
+    }
+
+    public long getBatchCount() {
+        return log.getBatchCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        log.close();
+    }
+
+    /*
+     * Versões anteriores gravavam um único journal.log; ele vira o primeiro
+     * segmento.
+     */
+    private void migrateLegacyLog() throws IOException {
+        Path legacy = directory.resolve(LEGACY_LOG_FILE);
+        if (Files.exists(legacy)) {
+            Files.move(legacy, directory.resolve(String.format("journal-%020d.log", 1)));
+        }
+    }
+
+    private static void dispatch(Journaled[] handlers, ByteBuffer body) {
+        int source = body.get() & 0xFF;
+        byte op = body.get();
+        Journaled handler = handlers[source];
+        if (handler == null) {
+            throw new IllegalStateException("Registro de origem desconhecida no journal: " + source);
+        }
+        handler.applyRecord(op, new RecordReader(body));
+    }
+}
@@ -0,0 +1,10 @@
+package persistence;
+
+import java.util.function.Consumer;
+
+public interface Journaled {
+    byte getJournalSource();
+    void setJournal(Journal journal);
+    void applyRecord(byte op, RecordReader record);
+    void writeSnapshot(Consumer<RecordWriter> out);
+}
@@ -0,0 +1,68 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+public class RecordReader {
+    private final ByteBuffer buffer;
+
+    public RecordReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public byte readByte() {
+        return buffer.get();
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public int readInt() {
+        return buffer.getInt();
+    }
+
+    public long readLong() {
+        return buffer.getLong();
+    }
+
+    public UUID readUuid() {
+        long most = buffer.getLong();
+        long least = buffer.getLong();
+        return new UUID(most, least);
+    }
+
+    public UUID readNullableUuid() {
+        return readBoolean() ? readUuid() : null;
+    }
+
+    public Set<UUID> readUuids() {
+        int count = buffer.getInt();
+        Set<UUID> values = new HashSet<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            values.add(readUuid());
+        }
+        return values;
+    }
+
+    public String readString() {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public LocalDateTime readDateTime() {
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
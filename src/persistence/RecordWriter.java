@@ -0,0 +1,88 @@
+package persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+
+public class RecordWriter {
+    private byte[] buffer;
+    private int size;
+
+    public RecordWriter(byte source, byte op) {
+        this.buffer = new byte[64];
+        writeByte(source);
+        writeByte(op);
+    }
+
+    public RecordWriter writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    public RecordWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public RecordWriter writeInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    public RecordWriter writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        return writeInt((int) value);
+    }
+
+    public RecordWriter writeUuid(UUID value) {
+        writeLong(value.getMostSignificantBits());
+        return writeLong(value.getLeastSignificantBits());
+    }
+
+    public RecordWriter writeNullableUuid(UUID value) {
+        writeBoolean(value != null);
+        return value != null ? writeUuid(value) : this;
+    }
+
+    public RecordWriter writeUuids(Collection<UUID> values) {
+        writeInt(values.size());
+        for (UUID value : values) {
+            writeUuid(value);
+        }
+        return this;
+    }
+
+    public RecordWriter writeString(String value) {
+        if (value == null) {
+            return writeInt(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    public RecordWriter writeDateTime(LocalDateTime value) {
+        writeLong(value.toEpochSecond(ZoneOffset.UTC));
+        return writeInt(value.getNano());
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
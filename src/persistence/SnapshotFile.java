@@ -0,0 +1,138 @@
+package persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/*
+ * Snapshot do estado de todos os controllers, gravado como uma sequência de
+ * registros no mesmo formato do log. O nome do arquivo (snapshot-<n>.snap)
+ * indica o último segmento do log que ele já incorpora.
+ */
+final class SnapshotFile {
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final int MAGIC = 0x534E4150;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+    private SnapshotFile() {
+    }
+
+    static long latest(Path directory) throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                latest = Math.max(latest, segmentOf(file));
+            }
+        }
+        return latest;
+    }
+
+    static Path path(Path directory, long segment) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, segment, SUFFIX));
+    }
+
+    /*
+     * Grava em um arquivo temporário e só o renomeia depois do fsync, então
+     * um snapshot visível está sempre completo.
+     */
+    static long write(Path directory, long segment, Collection<? extends Journaled> state) throws IOException {
+        Path target = path(directory, segment);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        long[] count = new long[1];
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer[] buffer = { ByteBuffer.allocate(1024 * 1024) };
+            buffer[0].putInt(MAGIC).putInt(VERSION).putLong(segment);
+            for (Journaled controller : state) {
+                controller.writeSnapshot(record -> {
+                    byte[] body = record.toByteArray();
+                    try {
+                        if (buffer[0].remaining() < FrameCodec.HEADER_SIZE + body.length) {
+                            drain(file, buffer[0]);
+                            if (buffer[0].capacity() < FrameCodec.HEADER_SIZE + body.length) {
+                                buffer[0] = ByteBuffer.allocate(FrameCodec.HEADER_SIZE + body.length);
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Falha ao gravar o snapshot", e);
+                    }
+                    FrameCodec.write(buffer[0], body, FrameCodec.checksum(body));
+                    count[0]++;
+                });
+            }
+            drain(file, buffer[0]);
+            file.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count[0];
+    }
+
+    /*
+     * Lê o snapshot por memory-mapped I/O, em janelas, para não copiar o
+     * arquivo para o heap antes de reaplicar os registros.
+     */
+    static long read(Path file, Consumer<ByteBuffer> handler) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, FILE_HEADER_SIZE));
+            if (size < FILE_HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("Snapshot inválido: " + file);
+            }
+
+            long position = FILE_HEADER_SIZE;
+            while (position < size) {
+                long length = Math.min(MAP_WINDOW, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                long read = FrameCodec.read(window, handler);
+                count += read;
+                if (read == 0 || (window.hasRemaining() && position + length == size)) {
+                    throw new IllegalStateException("Snapshot corrompido: " + file);
+                }
+                position += window.position();
+            }
+        }
+        return count;
+    }
+
+    static void deleteOlderThan(Path directory, long segment) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean temp = name.endsWith(".tmp");
+                if (temp || segmentOf(file) < segment) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // No Windows o arquivo ainda pode estar mapeado; será removido na próxima compactação
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao remover snapshots antigos: " + e.getMessage());
+        }
+    }
+
+    private static long segmentOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void drain(FileChannel file, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+        buffer.clear();
+    }
+}
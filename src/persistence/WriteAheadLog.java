@@ -0,0 +1,306 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Log binário append-only dividido em segmentos (journal-<n>.log). Cada
+ * registro é gravado como [tamanho:int][crc32:int][corpo], e uma thread
+ * dedicada faz o group commit: tudo o que foi acumulado enquanto o fsync
+ * anterior estava em andamento vai para o disco com um único write + force.
+ * Segmentos selados nunca mais são alterados, o que permite compactá-los em
+ * segundo plano enquanto as escritas continuam no segmento ativo.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    private FileChannel channel;
+    private long segment;
+    private ByteBuffer pending;
+    private ByteBuffer writing;
+    private long appendedSeq;
+    private long durableSeq;
+    private long batchCount;
+    private boolean rollRequested;
+    private long rollCount;
+    private long lastSealedSegment;
+    private IOException failure;
+    private boolean closed;
+
+    public WriteAheadLog(Path directory, long maxSegmentBytes) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.pending = ByteBuffer.allocate(64 * 1024);
+        this.writing = ByteBuffer.allocate(64 * 1024);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /*
+     * Reaplica os segmentos posteriores a afterSegment (os anteriores já
+     * estão cobertos por um snapshot e são apagados). Um registro incompleto
+     * no final do último segmento (queda durante a escrita) é descartado e o
+     * arquivo é truncado antes de aceitar novas escritas.
+     */
+    public long replay(long afterSegment, Consumer<ByteBuffer> handler) throws IOException {
+        deleteSegmentsUpTo(afterSegment);
+        List<Long> segments = listSegments();
+        long count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long number = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            try (FileChannel file = FileChannel.open(segmentPath(number), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer data = readFully(file);
+                count += FrameCodec.read(data, handler);
+                if (data.hasRemaining()) {
+                    if (!last) {
+                        throw new IllegalStateException("Segmento selado corrompido: " + segmentPath(number));
+                    }
+                    file.truncate(data.position());
+                    file.force(true);
+                }
+            }
+        }
+
+        segment = segments.isEmpty() ? afterSegment + 1 : segments.get(segments.size() - 1);
+        channel = openSegment(segment);
+        flusher.start();
+        return count;
+    }
+
+    /*
+     * Lê segmentos já selados sem tocar no segmento ativo.
+     */
+    public long readSegments(long afterSegment, long upToSegment, Consumer<ByteBuffer> handler) throws IOException {
+        long count = 0;
+        for (long number : listSegments()) {
+            if (number <= afterSegment || number > upToSegment) {
+                continue;
+            }
+            try (FileChannel file = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+                ByteBuffer data = readFully(file);
+                count += FrameCodec.read(data, handler);
+                if (data.hasRemaining()) {
+                    throw new IllegalStateException("Segmento selado corrompido: " + segmentPath(number));
+                }
+            }
+        }
+        return count;
+    }
+
+    public long append(byte[] body) {
+        int checksum = FrameCodec.checksum(body);
+        synchronized (lock) {
+            checkWritable();
+            if (pending.remaining() < FrameCodec.HEADER_SIZE + body.length) {
+                pending = grow(pending, FrameCodec.HEADER_SIZE + body.length);
+            }
+            FrameCodec.write(pending, body, checksum);
+            appendedSeq++;
+            lock.notifyAll();
+            return appendedSeq;
+        }
+    }
+
+    public void awaitDurable(long seq) {
+        synchronized (lock) {
+            while (durableSeq < seq && failure == null) {
+                waitOnLock();
+            }
+            if (durableSeq < seq) {
+                throw new IllegalStateException("Falha ao gravar o log", failure);
+            }
+        }
+    }
+
+    /*
+     * Sela o segmento ativo (com tudo o que foi anexado até agora) e passa a
+     * escrever no próximo. Devolve o número do segmento selado.
+     */
+    public long roll() {
+        synchronized (lock) {
+            checkWritable();
+            long before = rollCount;
+            rollRequested = true;
+            lock.notifyAll();
+            while (rollCount == before && failure == null) {
+                waitOnLock();
+            }
+            if (rollCount == before) {
+                throw new IllegalStateException("Falha ao selar o segmento do log", failure);
+            }
+            return lastSealedSegment;
+        }
+    }
+
+    public void deleteSegmentsUpTo(long upToSegment) throws IOException {
+        for (long number : listSegments()) {
+            if (number <= upToSegment) {
+                Files.deleteIfExists(segmentPath(number));
+            }
+        }
+    }
+
+    public long getRecordCount() {
+        synchronized (lock) {
+            return appendedSeq;
+        }
+    }
+
+    public long getBatchCount() {
+        synchronized (lock) {
+            return batchCount;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        if (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            boolean roll;
+            synchronized (lock) {
+                while (pending.position() == 0 && !rollRequested && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0 && !rollRequested) {
+                    return;
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                target = appendedSeq;
+                roll = rollRequested;
+                rollRequested = false;
+            }
+
+            long sealed = -1;
+            boolean wrote = writing.position() > 0;
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+                writing.clear();
+                if (roll || channel.size() >= maxSegmentBytes) {
+                    sealed = segment;
+                    channel.close();
+                    segment++;
+                    channel = openSegment(segment);
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableSeq = target;
+                if (wrote) {
+                    batchCount++;
+                }
+                if (sealed >= 0) {
+                    lastSealedSegment = sealed;
+                    rollCount++;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        FileChannel file = FileChannel.open(segmentPath(number),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        file.position(file.size());
+        return file;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private void waitOnLock() {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando a gravação do log", e);
+        }
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new IllegalStateException("Log indisponível após falha de escrita", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Log já foi fechado");
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel file) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) file.size());
+        while (data.hasRemaining() && file.read(data, data.position()) >= 0) {
+            // lê o segmento inteiro
+        }
+        data.flip();
+        return data;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int extra) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,165 @@
+package server;
+
+import controller.SocialNetwork;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import model.Privacy;
+import persistence.Journal;
+
+/*
+ * Carga contra a API num servidor local: sobe um ApiServer numa porta livre
+ * de 127.0.0.1 com uma rede sintética (usuários, amizades e posts) e mede
+ * vazão e latência de feed, curtidas e posts novos com clientes HTTP/1.1
+ * concorrentes, cada um com conexão keep-alive.
+ *
+ *   java -cp bin server.ApiBenchmark [clientes] [requisições por cliente]
+ *
+ * Com -Dsocialapp.dataDir=... as escritas também passam pelo journal
+ * nesse diretório (use um diretório descartável).
+ */
+public class ApiBenchmark {
+    private static final int USERS = 2000;
+    private static final int FRIENDS_PER_USER = 20;
+    private static final int POSTS = 20000;
+    private static final String[] MODES = {"feed", "like", "post"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int perClient = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        if (clients <= 0 || perClient <= 0) {
+            throw new IllegalArgumentException("Clientes e requisições devem ser positivos");
+        }
+
+        SocialNetwork network = new SocialNetwork();
+        Journal journal = null;
+        String dataDir = System.getProperty("socialapp.dataDir");
+        if (dataDir != null) {
+            journal = network.openJournal(Paths.get(dataDir));
+        }
+        List<UUID> users = new ArrayList<>();
+        List<UUID> posts = new ArrayList<>();
+        seed(network, users, posts);
+
+        ApiServer api = new ApiServer(network, new InetSocketAddress("127.0.0.1", 0),
+            new InetSocketAddress("127.0.0.1", 0), ApiServer.DEFAULT_THREADS);
+        api.start();
+        String base = "http://127.0.0.1:" + api.getAddress().getPort() + ApiHandler.PREFIX;
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients);
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        try {
+            System.out.println(clients + " clientes, " + perClient + " requisições cada"
+                + (journal != null ? ", journal em " + dataDir : ", sem journal"));
+            // Primeira rodada só aquece o JIT e abre as conexões
+            run(http, clientThreads, base, "feed", clients, Math.min(perClient, 200), users, posts);
+            for (String mode : MODES) {
+                run(http, clientThreads, base, mode, clients, perClient, users, posts).print(mode);
+            }
+        } finally {
+            clientThreads.shutdown();
+            api.stop(0);
+            if (journal != null) {
+                journal.close();
+            }
+        }
+        System.exit(0); // O HttpClient mantém threads próprias
+    }
+
+    private static void seed(SocialNetwork network, List<UUID> users, List<UUID> posts) {
+        Random random = new Random(1);
+        for (int i = 0; i < USERS; i++) {
+            users.add(network.getUserController()
+                .createUser("Usuário " + i, "usuario" + i + "@bench.local", "123456", Privacy.PUBLIC).getId());
+        }
+        for (UUID user : users) {
+            for (int k = 0; k < FRIENDS_PER_USER; k++) {
+                UUID other = users.get(random.nextInt(USERS));
+                if (!other.equals(user) && network.getFriendController().sendFriendRequest(user, other)) {
+                    network.getFriendController().acceptRequest(other, user);
+                }
+            }
+        }
+        for (int i = 0; i < POSTS; i++) {
+            posts.add(network.getPostController().createTextPost(users.get(random.nextInt(USERS)), "post " + i).getId());
+        }
+    }
+
+    private static Round run(HttpClient http, ExecutorService clientThreads, String base, String mode,
+            int clients, int perClient, List<UUID> users, List<UUID> posts) throws Exception {
+        long[][] latencies = new long[clients][perClient];
+        List<Future<?>> running = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            running.add(clientThreads.submit(() -> {
+                Random random = new Random(client);
+                for (int i = 0; i < perClient; i++) {
+                    UUID user = users.get(random.nextInt(users.size()));
+                    HttpRequest request = request(base, mode, user, posts.get(random.nextInt(posts.size())), i);
+                    long sent = System.nanoTime();
+                    HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                    latencies[client][i] = System.nanoTime() - sent;
+                    if (response.statusCode() >= 300) {
+                        throw new IOException(mode + ": status " + response.statusCode() + " " + new String(response.body()));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> client : running) {
+            client.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Round(elapsed, Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray());
+    }
+
+    private static HttpRequest request(String base, String mode, UUID user, UUID post, int i) {
+        HttpRequest.Builder builder;
+        switch (mode) {
+            case "like":
+                builder = HttpRequest.newBuilder(URI.create(base + "posts/" + post + "/like"))
+                    .POST(HttpRequest.BodyPublishers.noBody());
+                break;
+            case "post":
+                builder = HttpRequest.newBuilder(URI.create(base + "posts"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"content\":\"post de carga " + i + "\"}"));
+                break;
+            default:
+                builder = HttpRequest.newBuilder(URI.create(base + "feed?limit=20"));
+        }
+        return builder.header("X-User-Id", user.toString()).timeout(Duration.ofSeconds(10)).build();
+    }
+
+    // Tempo total da rodada e latências de todas as requisições (ordenadas), em nanossegundos
+    private static final class Round {
+        private final long elapsed;
+        private final long[] latencies;
+
+        private Round(long elapsed, long[] latencies) {
+            this.elapsed = elapsed;
+            this.latencies = latencies;
+        }
+
+        private void print(String mode) {
+            System.out.printf("%-5s %8.0f req/s   p50 %7.2f ms   p99 %7.2f ms   p99.9 %7.2f ms%n", mode,
+                latencies.length / (elapsed / 1e9), percentile(0.50), percentile(0.99), percentile(0.999));
+        }
+
+        private double percentile(double p) {
+            return latencies[Math.min(latencies.length - 1, (int) (latencies.length * p))] / 1e6;
+        }
+    }
+}
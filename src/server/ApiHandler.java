@@ -0,0 +1,765 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import controller.EventController;
+import controller.FeedController;
+import controller.FriendController;
+import controller.GroupChatController;
+import controller.GroupController;
+import controller.MessageController;
+import controller.NotificationController;
+import controller.PostController;
+import controller.SocialNetwork;
+import controller.UserController;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import model.Event;
+import model.Group;
+import model.GroupMessage;
+import model.ImagePost;
+import model.Message;
+import model.Notification;
+import model.Post;
+import model.Privacy;
+import model.User;
+import model.VideoPost;
+
+/*
+ * Rotas da API em /api/. O usuário que faz a requisição vem do cabeçalho
+ * X-User-Id (o id devolvido por POST /api/login); não há sessão nem token,
+ * então o servidor é para clientes confiáveis e testes de carga. As regras
+ * de visibilidade são as mesmas da interface: posts e amigos de perfis
+ * privados só para amigos, mensagens de grupo só para membros.
+ */
+final class ApiHandler implements HttpHandler {
+    static final String PREFIX = "/api/";
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 200;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final UserController users;
+    private final PostController posts;
+    private final FeedController feed;
+    private final FriendController friends;
+    private final MessageController messages;
+    private final GroupController groups;
+    private final GroupChatController groupChat;
+    private final EventController events;
+    private final NotificationController notifications;
+
+    ApiHandler(SocialNetwork network) {
+        this.users = network.getUserController();
+        this.posts = network.getPostController();
+        this.feed = network.getFeedController();
+        this.friends = network.getFriendController();
+        this.messages = network.getMessageController();
+        this.groups = network.getGroupController();
+        this.groupChat = network.getGroupChatController();
+        this.events = network.getEventController();
+        this.notifications = network.getNotificationController();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        JsonWriter json = JsonWriter.forThread();
+        int status;
+        try {
+            status = route(new Request(exchange), json);
+        } catch (HttpError e) {
+            status = e.getStatus();
+            json = error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            json = error(e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Erro na requisição " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e);
+            status = 500;
+            json = error("Erro interno");
+        }
+
+        // Tamanho fixo (sem chunked): a conexão continua aberta para a próxima requisição
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, json.size());
+        try (OutputStream body = exchange.getResponseBody()) {
+            json.writeTo(body);
+        }
+    }
+
+    private int route(Request request, JsonWriter json) {
+        switch (request.segment(0)) {
+            case "login":
+                return login(request, json);
+            case "users":
+                return users(request, json);
+            case "posts":
+                return posts(request, json);
+            case "feed":
+                return feed(request, json);
+            case "friends":
+                return friends(request, json);
+            case "messages":
+                return messages(request, json);
+            case "groups":
+                return groups(request, json);
+            case "events":
+                return events(request, json);
+            case "notifications":
+                return notifications(request, json);
+            case "metrics":
+                return metrics(request, json);
+            default:
+                throw HttpError.notFound("Rota não encontrada");
+        }
+    }
+
+    private int login(Request request, JsonWriter json) {
+        request.requireMethod("POST");
+        Map<String, String> body = request.body();
+        User user = users.authenticate(body.get("email"), body.get("password"));
+        if (user == null) {
+            throw new HttpError(401, "Email ou senha inválidos");
+        }
+        writeUser(json, user, user.getId());
+        return 200;
+    }
+
+    private int users(Request request, JsonWriter json) {
+        if (request.size() == 1) {
+            if (request.is("POST")) {
+                Map<String, String> body = request.body();
+                User user = users.createUser(required(body, "name"), required(body, "email"), required(body, "password"),
+                    privacy(body.getOrDefault("privacy", "PUBLIC")));
+                writeUser(json, user, user.getId());
+                return 201;
+            }
+            request.requireMethod("GET");
+            UUID viewer = request.optionalActor();
+            List<User> found = users.searchUsers(viewer, request.query("q", ""), request.limit());
+            json.beginArray();
+            for (User user : found) {
+                writeUser(json, user, viewer);
+            }
+            json.endArray();
+            return 200;
+        }
+
+        User user = users.getUserById(request.uuid(1));
+        if (user == null) {
+            throw HttpError.notFound("Usuário não encontrado");
+        }
+        request.requireMethod("GET");
+        UUID viewer = request.optionalActor();
+        if (request.size() == 2) {
+            writeUser(json, user, viewer);
+            return 200;
+        }
+        request.requireSize(3, "posts");
+        if (!canSee(viewer, user.getId())) {
+            throw new HttpError(403, "Perfil privado");
+        }
+        List<Post> authored = posts.getPostsByUserNewestFirst(user.getId());
+        json.beginArray();
+        for (int i = 0; i < authored.size() && i < request.limit(); i++) {
+            writePost(json, authored.get(i), viewer);
+        }
+        json.endArray();
+        return 200;
+    }
+
+    private int posts(Request request, JsonWriter json) {
+        if (request.size() == 1) {
+            if (request.is("POST")) {
+                UUID actor = request.actor();
+                Map<String, String> body = request.body();
+                Post post;
+                switch (body.getOrDefault("type", "TEXT").toUpperCase()) {
+                    case "IMAGE":
+                        post = posts.createImagePost(actor, required(body, "url"), body.getOrDefault("description", ""));
+                        break;
+                    case "VIDEO":
+                        post = posts.createVideoPost(actor, required(body, "url"), body.getOrDefault("description", ""),
+                            integer(body.getOrDefault("duration", "0")));
+                        break;
+                    default:
+                        post = posts.createTextPost(actor, required(body, "content"));
+                }
+                writePost(json, post, actor);
+                return 201;
+            }
+            request.requireMethod("GET");
+            UUID viewer = request.optionalActor();
+            json.beginArray();
+            for (Post post : posts.searchPosts(viewer, request.query("q", ""), request.limit())) {
+                writePost(json, post, viewer);
+            }
+            json.endArray();
+            return 200;
+        }
+
+        UUID postId = request.uuid(1);
+        Post post = posts.getPostById(postId);
+        if (post == null || !canSee(request.optionalActor(), post.getUserId())) {
+            throw HttpError.notFound("Post não encontrado");
+        }
+        if (request.size() == 2) {
+            if (request.is("DELETE")) {
+                if (!post.getUserId().equals(request.actor())) {
+                    throw new HttpError(403, "Apenas o autor pode apagar o post");
+                }
+                json.beginObject().name("deleted").value(posts.deletePost(postId)).endObject();
+                return 200;
+            }
+            request.requireMethod("GET");
+            UUID viewer = request.optionalActor();
+            writePost(json, post, viewer, viewer != null ? posts.countFriendsWhoLiked(postId, viewer) : -1);
+            return 200;
+        }
+
+        request.requireSize(3, "like");
+        UUID actor = request.actor();
+        boolean changed;
+        if (request.is("POST")) {
+            changed = posts.likePost(postId, actor);
+        } else {
+            request.requireMethod("DELETE");
+            changed = posts.unlikePost(postId, actor);
+        }
+        json.beginObject()
+            .name("changed").value(changed)
+            .name("likeCount").value(post.getLikeCount())
+            .endObject();
+        return 200;
+    }
+
+    private int feed(Request request, JsonWriter json) {
+        request.requireMethod("GET");
+        FeedController.FeedPage page = feed.getFriendsFeedPage(request.actor(), request.limit(), request.query("cursor", null));
+        json.beginObject().name("posts").beginArray();
+        for (FeedController.FeedPost item : page.getPosts()) {
+            json.beginObject().name("authorName").value(item.getAuthorName()).name("post");
+            writePost(json, item.getPost(), request.actor());
+            json.endObject();
+        }
+        json.endArray().name("nextCursor").value(page.getNextCursor()).endObject();
+        return 200;
+    }
+
+    private int friends(Request request, JsonWriter json) {
+        UUID actor = request.actor();
+        if (request.size() == 1) {
+            request.requireMethod("GET");
+            writeUsers(json, friends.getFriends(actor), actor);
+            return 200;
+        }
+        switch (request.segment(1)) {
+            case "suggestions":
+                request.requireMethod("GET");
+                json.beginArray();
+                for (FriendController.FriendSuggestion suggestion : friends.getFriendSuggestions(actor, request.limit())) {
+                    json.beginObject()
+                        .name("userId").value(suggestion.getUserId())
+                        .name("mutualFriends").value(suggestion.getMutualFriends())
+                        .endObject();
+                }
+                json.endArray();
+                return 200;
+            case "requests":
+                return friendRequests(request, json, actor);
+            default:
+                request.requireSize(2, null);
+                request.requireMethod("DELETE");
+                json.beginObject().name("removed").value(friends.removeFriend(actor, request.uuid(1))).endObject();
+                return 200;
+        }
+    }
+
+    private int friendRequests(Request request, JsonWriter json, UUID actor) {
+        if (request.size() == 2) {
+            if (request.is("POST")) {
+                UUID receiver = uuid(required(request.body(), "userId"));
+                json.beginObject().name("sent").value(friends.sendFriendRequest(actor, receiver)).endObject();
+                return 201;
+            }
+            request.requireMethod("GET");
+            json.beginObject().name("received");
+            writeUsers(json, friends.getPendingReceived(actor), actor);
+            json.name("sent");
+            writeUsers(json, friends.getPendingSent(actor), actor);
+            json.endObject();
+            return 200;
+        }
+        request.requireMethod("POST");
+        UUID requester = request.uuid(2);
+        boolean done;
+        if (request.size() == 4 && request.segment(3).equals("accept")) {
+            done = friends.acceptRequest(actor, requester);
+        } else {
+            request.requireSize(4, "decline");
+            done = friends.declineRequest(actor, requester);
+        }
+        json.beginObject().name("done").value(done).endObject();
+        return 200;
+    }
+
+    private int messages(Request request, JsonWriter json) {
+        UUID actor = request.actor();
+        if (request.size() == 1) {
+            if (request.is("POST")) {
+                Map<String, String> body = request.body();
+                Message message = messages.sendMessage(actor, uuid(required(body, "to")), body.get("content"));
+                writeMessage(json, message);
+                return 201;
+            }
+            request.requireMethod("GET");
+            writeMessages(json, messages.getMessages(actor), request.limit());
+            return 200;
+        }
+        request.requireSize(2, null);
+        request.requireMethod("GET");
+        writeMessages(json, messages.getConversation(actor, request.uuid(1)), request.limit());
+        return 200;
+    }
+
+    private int groups(Request request, JsonWriter json) {
+        if (request.size() == 1) {
+            if (request.is("POST")) {
+                Map<String, String> body = request.body();
+                Group group = groups.createGroup(body.get("name"), body.get("description"), request.actor(),
+                    privacy(body.getOrDefault("privacy", "PUBLIC")));
+                writeGroup(json, group);
+                return 201;
+            }
+            request.requireMethod("GET");
+            UUID viewer = request.optionalActor();
+            List<Group> found = viewer != null && request.query("member", null) != null
+                ? groups.getGroupsByMember(viewer)
+                : groups.getPublicGroups();
+            json.beginArray();
+            for (Group group : found) {
+                writeGroup(json, group);
+            }
+            json.endArray();
+            return 200;
+        }
+
+        UUID groupId = request.uuid(1);
+        Group group = groups.getGroupById(groupId);
+        if (group == null) {
+            throw HttpError.notFound("Grupo não encontrado");
+        }
+        if (request.size() == 2) {
+            request.requireMethod("GET");
+            writeGroup(json, group);
+            return 200;
+        }
+        UUID actor = request.actor();
+        switch (request.segment(2)) {
+            case "join":
+                request.requireMethod("POST");
+                json.beginObject().name("joined").value(groups.joinGroup(groupId, actor)).endObject();
+                return 200;
+            case "leave":
+                request.requireMethod("POST");
+                json.beginObject().name("left").value(groups.leaveGroup(groupId, actor)).endObject();
+                return 200;
+            case "messages":
+                if (request.is("POST")) {
+                    writeGroupMessage(json, groupChat.sendMessage(groupId, actor, request.body().get("content")));
+                    return 201;
+                }
+                request.requireMethod("GET");
+                if (!groups.isMember(groupId, actor)) {
+                    throw new HttpError(403, "Usuário não é membro deste grupo");
+                }
+                String before = request.query("before", null);
+                List<GroupMessage> page = before != null
+                    ? groupChat.getGroupMessagesBefore(groupId, uuid(before), request.limit())
+                    : groupChat.getGroupMessages(groupId, request.limit());
+                json.beginArray();
+                for (GroupMessage message : page) {
+                    writeGroupMessage(json, message);
+                }
+                json.endArray();
+                return 200;
+            default:
+                throw HttpError.notFound("Rota não encontrada");
+        }
+    }
+
+    private int events(Request request, JsonWriter json) {
+        if (request.size() == 1) {
+            if (request.is("POST")) {
+                Map<String, String> body = request.body();
+                Event event = events.createEvent(body.get("name"), body.get("description"),
+                    dateTime(required(body, "dateTime")), request.actor());
+                writeEvent(json, event);
+                return 201;
+            }
+            request.requireMethod("GET");
+            int limit = request.limit();
+            List<Event> found;
+            switch (request.query("when", "upcoming")) {
+                case "past":
+                    found = events.getPastEvents(limit);
+                    break;
+                case "today":
+                    found = events.getTodayEvents(limit);
+                    break;
+                case "week":
+                    found = events.getThisWeekEvents(limit);
+                    break;
+                default:
+                    found = events.getUpcomingEvents(limit);
+            }
+            json.beginArray();
+            for (Event event : found) {
+                writeEvent(json, event);
+            }
+            json.endArray();
+            return 200;
+        }
+        request.requireSize(2, null);
+        request.requireMethod("GET");
+        Event event = events.getEventById(request.uuid(1));
+        if (event == null) {
+            throw HttpError.notFound("Evento não encontrado");
+        }
+        writeEvent(json, event);
+        return 200;
+    }
+
+    private int notifications(Request request, JsonWriter json) {
+        UUID actor = request.actor();
+        if (request.size() == 1) {
+            request.requireMethod("GET");
+            List<Notification> found = request.query("unread", null) != null
+                ? notifications.getUnreadNotificationsByUser(actor)
+                : notifications.getNotificationsByUser(actor);
+            json.beginArray();
+            for (int i = 0; i < found.size() && i < request.limit(); i++) {
+                writeNotification(json, found.get(i));
+            }
+            json.endArray();
+            return 200;
+        }
+        switch (request.segment(1)) {
+            case "unread-count":
+                request.requireMethod("GET");
+                json.beginObject().name("unread").value(notifications.getUnreadCount(actor)).endObject();
+                return 200;
+            case "read-all":
+                request.requireMethod("POST");
+                notifications.markAllAsRead(actor);
+                json.beginObject().name("done").value(true).endObject();
+                return 200;
+            default:
+                request.requireSize(3, "read");
+                request.requireMethod("POST");
+                UUID notificationId = request.uuid(1);
+                // Só o dono marca: o id sozinho não basta
+                Notification notification = notifications.getNotificationById(notificationId);
+                boolean owned = notification != null && notification.getUserId().equals(actor);
+                json.beginObject().name("done").value(owned && notifications.markAsRead(notificationId)).endObject();
+                return 200;
+        }
+    }
+
+    // Estado da fila de notificações, para acompanhar testes de carga
+    private int metrics(Request request, JsonWriter json) {
+        request.requireSize(1, "metrics");
+        request.requireMethod("GET");
+        json.beginObject().name("notificationQueue").beginObject();
+        for (Map.Entry<String, Long> stat : notifications.getQueueStats().entrySet()) {
+            json.name(stat.getKey()).value(stat.getValue());
+        }
+        json.endObject().endObject();
+        return 200;
+    }
+
+    // Mesma regra da busca de posts: o próprio usuário, perfis públicos e amigos
+    private boolean canSee(UUID viewerId, UUID authorId) {
+        if (authorId.equals(viewerId)) {
+            return true;
+        }
+        User author = users.getUserById(authorId);
+        if (author != null && author.getPrivacy() == Privacy.PUBLIC) {
+            return true;
+        }
+        return viewerId != null && friends.areFriends(viewerId, authorId);
+    }
+
+    private void writeUser(JsonWriter json, User user, UUID viewerId) {
+        json.beginObject()
+            .name("id").value(user.getId())
+            .name("name").value(user.getName())
+            .name("privacy").value(user.getPrivacy().name());
+        if (user.getId().equals(viewerId)) {
+            json.name("email").value(user.getEmail());
+        }
+        json.endObject();
+    }
+
+    private void writeUsers(JsonWriter json, Collection<UUID> userIds, UUID viewerId) {
+        json.beginArray();
+        for (UUID userId : userIds) {
+            User user = users.getUserById(userId);
+            if (user != null) {
+                writeUser(json, user, viewerId);
+            }
+        }
+        json.endArray();
+    }
+
+    private void writePost(JsonWriter json, Post post, UUID viewerId) {
+        writePost(json, post, viewerId, -1);
+    }
+
+    // friendLikes: quantos amigos do viewer curtiram, só na consulta de um post (-1 omite)
+    private void writePost(JsonWriter json, Post post, UUID viewerId, int friendLikes) {
+        json.beginObject()
+            .name("id").value(post.getId())
+            .name("authorId").value(post.getUserId())
+            .name("type").value(post.getPostType())
+            .name("createdAt").value(post.getCreatedAt())
+            .name("likeCount").value(post.getLikeCount());
+        if (viewerId != null) {
+            json.name("likedByMe").value(post.isLikedBy(viewerId));
+        }
+        if (friendLikes >= 0) {
+            json.name("friendLikeCount").value(friendLikes);
+        }
+        if (post instanceof ImagePost) {
+            ImagePost image = (ImagePost) post;
+            json.name("url").value(image.getImageUrl()).name("description").value(image.getDescription());
+        } else if (post instanceof VideoPost) {
+            VideoPost video = (VideoPost) post;
+            json.name("url").value(video.getVideoUrl())
+                .name("description").value(video.getDescription())
+                .name("duration").value(video.getDuration());
+        } else {
+            json.name("content").value(post.getContent());
+        }
+        json.endObject();
+    }
+
+    private void writeMessage(JsonWriter json, Message message) {
+        json.beginObject()
+            .name("id").value(message.getId())
+            .name("senderId").value(message.getSenderId())
+            .name("receiverId").value(message.getReceiverId())
+            .name("content").value(message.getContent())
+            .name("sentAt").value(message.getSentDate())
+            .name("read").value(message.isRead())
+            .endObject();
+    }
+
+    // As limit mais recentes, em ordem de envio
+    private void writeMessages(JsonWriter json, List<Message> all, int limit) {
+        json.beginArray();
+        for (int i = Math.max(0, all.size() - limit); i < all.size(); i++) {
+            writeMessage(json, all.get(i));
+        }
+        json.endArray();
+    }
+
+    private void writeGroup(JsonWriter json, Group group) {
+        json.beginObject()
+            .name("id").value(group.getId())
+            .name("name").value(group.getName())
+            .name("description").value(group.getDescription())
+            .name("ownerId").value(group.getOwnerId())
+            .name("privacy").value(group.getPrivacy().name())
+            .name("memberCount").value(group.getMemberCount())
+            .name("createdAt").value(group.getCreatedAt())
+            .endObject();
+    }
+
+    static void writeGroupMessage(JsonWriter json, GroupMessage message) {
+        json.beginObject()
+            .name("id").value(message.getId())
+            .name("groupId").value(message.getGroupId())
+            .name("senderId").value(message.getSenderId())
+            .name("content").value(message.getContent())
+            .name("sentAt").value(message.getSentAt())
+            .endObject();
+    }
+
+    private void writeEvent(JsonWriter json, Event event) {
+        json.beginObject()
+            .name("id").value(event.getId())
+            .name("name").value(event.getName())
+            .name("description").value(event.getDescription())
+            .name("dateTime").value(event.getEventDateTime())
+            .name("creatorId").value(event.getCreatorId())
+            .name("memberCount").value(event.getMemberCount())
+            .endObject();
+    }
+
+    static void writeNotification(JsonWriter json, Notification notification) {
+        json.beginObject()
+            .name("id").value(notification.getId())
+            .name("type").value(notification.getType())
+            .name("title").value(notification.getTitle())
+            .name("message").value(notification.getMessage())
+            .name("relatedId").value(notification.getRelatedId())
+            .name("createdAt").value(notification.getCreatedAt())
+            .name("read").value(notification.isRead())
+            .endObject();
+    }
+
+    private static JsonWriter error(String message) {
+        JsonWriter json = JsonWriter.forThread();
+        json.beginObject().name("error").value(message != null ? message : "Erro").endObject();
+        return json;
+    }
+
+    private static String required(Map<String, String> body, String field) {
+        String value = body.get(field);
+        if (value == null) {
+            throw new IllegalArgumentException("Campo obrigatório ausente: " + field);
+        }
+        return value;
+    }
+
+    private static UUID uuid(String text) {
+        try {
+            return UUID.fromString(text);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Id inválido: " + text);
+        }
+    }
+
+    private static int integer(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Número inválido: " + text);
+        }
+    }
+
+    private static Privacy privacy(String text) {
+        try {
+            return Privacy.valueOf(text.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Privacidade inválida: " + text);
+        }
+    }
+
+    private static LocalDateTime dateTime(String text) {
+        try {
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Data inválida (use 2024-05-01T14:30): " + text);
+        }
+    }
+
+    // Caminho, parâmetros e corpo de uma requisição, lidos sob demanda
+    private static final class Request {
+        private final HttpExchange exchange;
+        private final String[] segments;
+        private Map<String, String> query;
+        private Map<String, String> body;
+
+        private Request(HttpExchange exchange) {
+            this.exchange = exchange;
+            String path = exchange.getRequestURI().getRawPath();
+            String rest = path.length() > PREFIX.length() ? path.substring(PREFIX.length()) : "";
+            if (rest.endsWith("/")) {
+                rest = rest.substring(0, rest.length() - 1);
+            }
+            this.segments = rest.isEmpty() ? new String[0] : rest.split("/");
+        }
+
+        private int size() {
+            return segments.length;
+        }
+
+        private String segment(int index) {
+            return index < segments.length ? segments[index] : "";
+        }
+
+        private UUID uuid(int index) {
+            return ApiHandler.uuid(segment(index));
+        }
+
+        private boolean is(String method) {
+            return exchange.getRequestMethod().equals(method);
+        }
+
+        private void requireMethod(String method) {
+            if (!is(method)) {
+                throw new HttpError(405, "Método não permitido: " + exchange.getRequestMethod());
+            }
+        }
+
+        // Caminho com exatamente size segmentos, o último igual a last (quando informado)
+        private void requireSize(int size, String last) {
+            if (segments.length != size || (last != null && !segments[size - 1].equals(last))) {
+                throw HttpError.notFound("Rota não encontrada");
+            }
+        }
+
+        private UUID actor() {
+            UUID actor = optionalActor();
+            if (actor == null) {
+                throw new HttpError(401, "Cabeçalho X-User-Id obrigatório");
+            }
+            return actor;
+        }
+
+        private UUID optionalActor() {
+            String header = exchange.getRequestHeaders().getFirst("X-User-Id");
+            return header != null ? ApiHandler.uuid(header.trim()) : null;
+        }
+
+        private String query(String name, String defaultValue) {
+            if (query == null) {
+                query = new HashMap<>();
+                String raw = exchange.getRequestURI().getRawQuery();
+                if (raw != null) {
+                    for (String pair : raw.split("&")) {
+                        int equals = pair.indexOf('=');
+                        String key = equals >= 0 ? pair.substring(0, equals) : pair;
+                        String value = equals >= 0 ? pair.substring(equals + 1) : "";
+                        query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            return query.getOrDefault(name, defaultValue);
+        }
+
+        private int limit() {
+            int limit = integer(query("limit", String.valueOf(DEFAULT_LIMIT)));
+            if (limit <= 0) {
+                throw new IllegalArgumentException("O limite deve ser positivo");
+            }
+            return Math.min(limit, MAX_LIMIT);
+        }
+
+        private Map<String, String> body() {
+            if (body == null) {
+                try (InputStream in = exchange.getRequestBody()) {
+                    byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+                    if (bytes.length > MAX_BODY_BYTES) {
+                        throw new HttpError(413, "Corpo da requisição grande demais");
+                    }
+                    body = JsonReader.readObject(new String(bytes, StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Falha ao ler o corpo da requisição");
+                }
+            }
+            return body;
+        }
+    }
+}
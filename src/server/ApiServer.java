@@ -0,0 +1,114 @@
+package server;
+
+import com.sun.net.httpserver.HttpServer;
+import controller.SocialNetwork;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import persistence.Journal;
+
+/*
+ * Servidor HTTP/JSON sem interface gráfica, sobre o HttpServer do JDK.
+ * Cada requisição roda numa thread do pool e chama os controllers
+ * diretamente (eles já são seguros entre threads). As respostas saem com
+ * Content-Length, então o cliente reaproveita a conexão (keep-alive).
+ * Notificações e chat de grupo também chegam por push, em server-sent
+ * events numa porta à parte (SseServer), por padrão a seguinte à da API.
+ */
+public class ApiServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_THREADS = 64;
+    private static final int BACKLOG = 1024;
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SseServer streams;
+
+    public ApiServer(SocialNetwork network, InetSocketAddress address, InetSocketAddress streamAddress, int threads)
+            throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("O número de threads deve ser positivo");
+        }
+        // Cabeçalhos e corpo saem em escritas separadas: com Nagle ligado, cada resposta
+        // esperava o ACK atrasado do cliente (~40 ms). Lido uma vez, na criação do primeiro servidor.
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        this.server = HttpServer.create(address, BACKLOG);
+        // No JDK 21+ isto vira Executors.newVirtualThreadPerTaskExecutor(): uma thread virtual por requisição
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "api-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(ApiHandler.PREFIX, new ApiHandler(network));
+
+        PushHub hub = new PushHub(network);
+        this.streams = new SseServer(hub, streamAddress);
+        network.getNotificationController().setNotificationListener(hub);
+        network.getGroupChatController().setMessageListener(hub);
+    }
+
+    public void start() {
+        server.start();
+        streams.start();
+    }
+
+    // Espera até delaySeconds pelas requisições em andamento
+    public void stop(int delaySeconds) {
+        streams.stop();
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public InetSocketAddress getStreamAddress() {
+        return streams.getAddress();
+    }
+
+    public static ApiServer launch(int port) throws IOException {
+        SocialNetwork network = new SocialNetwork();
+        openJournal(network);
+
+        int threads = Integer.getInteger("socialapp.apiThreads", DEFAULT_THREADS);
+        int streamPort = Integer.getInteger("socialapp.streamPort", port == 0 ? 0 : port + 1);
+        ApiServer api = new ApiServer(network, new InetSocketAddress(port), new InetSocketAddress(streamPort), threads);
+        api.start();
+        System.out.println("API ouvindo em http://localhost:" + api.getAddress().getPort() + ApiHandler.PREFIX
+            + " (" + threads + " threads)");
+        System.out.println("Push (server-sent events) em http://localhost:" + api.getStreamAddress().getPort() + SseServer.PATH);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> api.stop(1)));
+        return api;
+    }
+
+    private static void openJournal(SocialNetwork network) {
+        Path dataDir = Paths.get(System.getProperty("socialapp.dataDir", "data"));
+        long snapshotMinutes = Long.getLong("socialapp.snapshotMinutes", 10);
+        try {
+            Journal journal = network.openJournal(dataDir);
+            journal.startPeriodicSnapshots(snapshotMinutes, TimeUnit.MINUTES);
+            System.out.println("Journal: " + journal.getRestoredRecordCount() + " registros restaurados de " + dataDir.toAbsolutePath());
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Erro ao fechar o journal: " + e.getMessage());
+                }
+            }));
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir o journal, os dados não serão persistidos: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package server;
+
+import controller.FriendController;
+import controller.GroupChatController;
+import controller.GroupController;
+import controller.MessageController;
+import controller.PostController;
+import controller.SocialNetwork;
+import controller.UserController;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import model.Group;
+import model.GroupMessage;
+import model.Message;
+import model.Post;
+import model.Privacy;
+import model.User;
+import persistence.Journal;
+
+/*
+ * Teste de estresse dos controllers com o journal ligado, em duas etapas:
+ *
+ * 1. Vários escritores em paralelo curtem e descurtem os mesmos posts,
+ *    fazem e desfazem amizades, trocam mensagens, entram e saem de um grupo
+ *    e conversam nele. Cada usuário pertence a um único escritor, então o
+ *    saldo de curtidas de cada post é conhecido exatamente. No fim confere
+ *    curtidas, amizades (simétricas, sem duplicata, iguais às da foto CSR),
+ *    ordem das mensagens, índices de membros e o chat, e depois reabre o
+ *    journal e compara o estado restaurado com o que estava em memória.
+ *
+ * 2. Queda: a mesma carga roda num processo filho, que imprime o id de
+ *    cada mensagem (direta ou do grupo) assim que o envio retorna, isto é,
+ *    depois de o registro estar no disco. O filho é morto no meio da carga
+ *    (SIGKILL), o journal é reaberto e tudo o que foi confirmado precisa
+ *    estar lá, com as mesmas checagens de consistência.
+ *
+ *   java -cp bin server.ConcurrencyStress [escritores] [operações por escritor]
+ *
+ * Sai com status 1 se alguma checagem falhar.
+ */
+public class ConcurrencyStress {
+    private static final int USERS_PER_WRITER = 8;
+    private static final int SHARED_POSTS = 16;
+    private static final String WRITER_MODE = "--writer";
+    private static final String READY = "pronto";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(WRITER_MODE)) {
+            runWriter(Paths.get(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int perWriter = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        if (writers <= 0 || perWriter <= 0) {
+            throw new IllegalArgumentException("Escritores e operações devem ser positivos");
+        }
+
+        boolean ok = stress(writers, perWriter);
+        ok &= crash(writers, perWriter);
+        System.out.println(ok ? "OK" : "FALHOU");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean stress(int writers, int perWriter) throws Exception {
+        Path dir = Files.createTempDirectory("socialapp-stress");
+        SocialNetwork network = new SocialNetwork();
+        Journal journal = network.openJournal(dir);
+        Workload workload = new Workload(network, writers);
+        workload.seed();
+
+        long start = System.nanoTime();
+        long errors = workload.run(perWriter, ack -> { });
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("estresse: %d escritores, %d operações em %.1f s, %d erros%n",
+            writers, (long) writers * perWriter, elapsed / 1e9, errors);
+
+        Checks checks = new Checks("estresse");
+        checks.expect("erros nas threads", errors, 0);
+        int likeMismatches = 0;
+        for (Post post : workload.posts) {
+            if (network.getPostController().getPostById(post.getId()).getLikeCount()
+                    != workload.expectedLikes.get(post.getId()).get()) {
+                likeMismatches++;
+            }
+        }
+        checks.expect("posts com total de curtidas errado", likeMismatches, 0);
+        checks.expect("mensagens no chat do grupo", network.getGroupChatController().getGroupMessageCount(workload.group.getId()),
+            workload.chatMessages.get());
+        consistency(network, checks);
+        journal.close();
+
+        SocialNetwork restored = new SocialNetwork();
+        Journal reopened = restored.openJournal(dir);
+        int replayMismatches = 0;
+        for (Post post : workload.posts) {
+            if (!restored.getPostController().getPostById(post.getId()).getLikes()
+                    .equals(network.getPostController().getPostById(post.getId()).getLikes())) {
+                replayMismatches++;
+            }
+        }
+        for (User user : workload.users) {
+            UUID id = user.getId();
+            if (!restored.getFriendController().getFriends(id).equals(network.getFriendController().getFriends(id))) {
+                replayMismatches++;
+            }
+            if (!ids(restored.getMessageController().getMessages(id)).equals(ids(network.getMessageController().getMessages(id)))) {
+                replayMismatches++;
+            }
+        }
+        if (!restored.getGroupController().getGroupById(workload.group.getId()).getMembers().equals(workload.group.getMembers())) {
+            replayMismatches++;
+        }
+        if (restored.getGroupChatController().getGroupMessageCount(workload.group.getId())
+                != network.getGroupChatController().getGroupMessageCount(workload.group.getId())) {
+            replayMismatches++;
+        }
+        checks.expect("diferenças depois de reabrir o journal", replayMismatches, 0);
+        consistency(restored, checks);
+        reopened.close();
+        return checks.report();
+    }
+
+    /*
+     * Roda a carga num processo filho e o mata quando tiver confirmado cerca
+     * de um terço das mensagens esperadas; as linhas que já estavam no pipe
+     * também contam, pois foram impressas depois do fsync.
+     */
+    private static boolean crash(int writers, int perWriter) throws Exception {
+        Path dir = Files.createTempDirectory("socialapp-crash");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            ConcurrencyStress.class.getName(), WRITER_MODE, dir.toString(), String.valueOf(writers), String.valueOf(perWriter))
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+
+        long killAfter = Math.max(1, (long) writers * perWriter / 12);
+        Set<UUID> acknowledged = new HashSet<>();
+        boolean killed = false;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (!line.equals(READY)) {
+                    acknowledged.add(UUID.fromString(line));
+                }
+                if (!killed && acknowledged.size() >= killAfter) {
+                    // Pelo handle: Process.destroyForcibly também fecharia o pipe ainda não lido
+                    child.toHandle().destroyForcibly();
+                    killed = true;
+                }
+            }
+        }
+        child.waitFor();
+        System.out.printf("queda: filho %s com %d mensagens confirmadas%n",
+            killed ? "morto (SIGKILL)" : "terminou antes da queda", acknowledged.size());
+
+        SocialNetwork restored = new SocialNetwork();
+        Journal reopened = restored.openJournal(dir);
+        Set<UUID> present = new HashSet<>(ids(restored.getMessageController().getAllMessages()));
+        for (Group group : restored.getGroupController().getAllGroups()) {
+            for (GroupMessage message : restored.getGroupChatController().getGroupMessages(group.getId())) {
+                present.add(message.getId());
+            }
+        }
+        int lost = 0;
+        for (UUID id : acknowledged) {
+            if (!present.contains(id)) {
+                lost++;
+            }
+        }
+        Checks checks = new Checks("queda");
+        checks.expect("mensagens confirmadas perdidas", lost, 0);
+        consistency(restored, checks);
+        reopened.close();
+        return checks.report();
+    }
+
+    private static void runWriter(Path dir, int writers, int perWriter) throws Exception {
+        SocialNetwork network = new SocialNetwork();
+        network.openJournal(dir);
+        Workload workload = new Workload(network, writers);
+        workload.seed();
+        System.out.println(READY);
+        workload.run(perWriter, System.out::println);
+        // Sem close: quem termina antes de ser morto também sai sem fechar o journal
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    // Invariantes que valem em qualquer estado, inclusive depois de uma queda
+    private static void consistency(SocialNetwork network, Checks checks) {
+        FriendController friends = network.getFriendController();
+        int asymmetric = 0;
+        int self = 0;
+        long degrees = 0;
+        int unordered = 0;
+        for (User user : network.getUserController().getAllUsers()) {
+            Set<UUID> mine = friends.getFriends(user.getId());
+            degrees += mine.size();
+            for (UUID friend : mine) {
+                if (friend.equals(user.getId())) {
+                    self++;
+                }
+                if (!friends.getFriends(friend).contains(user.getId())) {
+                    asymmetric++;
+                }
+            }
+            List<Message> messages = network.getMessageController().getMessages(user.getId());
+            for (int i = 1; i < messages.size(); i++) {
+                if (messages.get(i - 1).getCreatedAt().isAfter(messages.get(i).getCreatedAt())) {
+                    unordered++;
+                }
+            }
+        }
+        checks.expect("amizades só de um lado", asymmetric, 0);
+        checks.expect("amizades consigo mesmo", self, 0);
+        checks.expect("amizades na foto CSR", friends.getGraphSnapshot().getFriendshipCount(), degrees / 2);
+        checks.expect("mensagens fora de ordem", unordered, 0);
+
+        int likeCounts = 0;
+        for (Post post : network.getPostController().getAllPosts()) {
+            if (post.getLikeCount() != post.getLikes().size()) {
+                likeCounts++;
+            }
+        }
+        checks.expect("posts com contador diferente das curtidas", likeCounts, 0);
+
+        GroupController groups = network.getGroupController();
+        GroupChatController chat = network.getGroupChatController();
+        int memberIndex = 0;
+        int chatCounts = 0;
+        for (Group group : groups.getAllGroups()) {
+            for (User user : network.getUserController().getAllUsers()) {
+                boolean indexed = groups.getGroupsByMember(user.getId()).contains(group);
+                if (indexed != group.isMember(user.getId())) {
+                    memberIndex++;
+                }
+            }
+            if (chat.getGroupMessages(group.getId()).size() != chat.getGroupMessageCount(group.getId())) {
+                chatCounts++;
+            }
+        }
+        checks.expect("membros fora do índice por usuário", memberIndex, 0);
+        checks.expect("chats com contagem diferente do histórico", chatCounts, 0);
+    }
+
+    private static List<UUID> ids(List<Message> messages) {
+        List<UUID> ids = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            ids.add(message.getId());
+        }
+        return ids;
+    }
+
+    // Rede inicial e carga mista; cada escritor só mexe nos próprios usuários
+    private static final class Workload {
+        private final SocialNetwork network;
+        private final int writers;
+        private final List<User> users = new ArrayList<>();
+        private final List<Post> posts = new ArrayList<>();
+        private final Map<UUID, AtomicInteger> expectedLikes = new ConcurrentHashMap<>();
+        private final AtomicLong chatMessages = new AtomicLong();
+        private Group group;
+
+        private Workload(SocialNetwork network, int writers) {
+            this.network = network;
+            this.writers = writers;
+        }
+
+        private void seed() {
+            UserController userController = network.getUserController();
+            for (int i = 0; i < writers * USERS_PER_WRITER; i++) {
+                users.add(userController.createUser("Usuário " + i, "usuario" + i + "@stress.local", "123456", Privacy.PUBLIC));
+            }
+            for (int i = 0; i < SHARED_POSTS; i++) {
+                Post post = network.getPostController().createTextPost(users.get(i % users.size()).getId(), "post " + i);
+                posts.add(post);
+                expectedLikes.put(post.getId(), new AtomicInteger());
+            }
+            group = network.getGroupController().createGroup("Estresse", "Grupo do teste de estresse",
+                users.get(0).getId(), Privacy.PUBLIC);
+        }
+
+        // Devolve o número de escritores que terminaram com exceção
+        private long run(int perWriter, Consumer<String> acknowledge) throws Exception {
+            ExecutorService pool = Executors.newFixedThreadPool(writers);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicLong errors = new AtomicLong();
+            List<Future<?>> running = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                running.add(pool.submit(() -> {
+                    try {
+                        start.await();
+                        write(writer, perWriter, acknowledge);
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                        e.printStackTrace();
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : running) {
+                writer.get();
+            }
+            pool.shutdown();
+            return errors.get();
+        }
+
+        private void write(int writer, int operations, Consumer<String> acknowledge) {
+            PostController postController = network.getPostController();
+            FriendController friends = network.getFriendController();
+            MessageController messages = network.getMessageController();
+            GroupController groups = network.getGroupController();
+            GroupChatController chat = network.getGroupChatController();
+            Random random = new Random(writer);
+            List<User> mine = users.subList(writer * USERS_PER_WRITER, (writer + 1) * USERS_PER_WRITER);
+
+            for (int op = 0; op < operations; op++) {
+                UUID me = mine.get(random.nextInt(mine.size())).getId();
+                UUID other = users.get(random.nextInt(users.size())).getId();
+                Post post = posts.get(random.nextInt(posts.size()));
+                switch (random.nextInt(10)) {
+                    case 0:
+                    case 1:
+                        if (postController.likePost(post.getId(), me)) {
+                            expectedLikes.get(post.getId()).incrementAndGet();
+                        }
+                        break;
+                    case 2:
+                        if (postController.unlikePost(post.getId(), me)) {
+                            expectedLikes.get(post.getId()).decrementAndGet();
+                        }
+                        break;
+                    case 3:
+                        if (!other.equals(me)) {
+                            friends.sendFriendRequest(me, other);
+                            // Só uma das duas aceitações encontra a solicitação
+                            friends.acceptRequest(other, me);
+                            friends.acceptRequest(me, other);
+                        }
+                        break;
+                    case 4:
+                        friends.removeFriend(me, other);
+                        break;
+                    case 5:
+                        if (friends.areFriends(me, other)) {
+                            try {
+                                acknowledge.accept(messages.sendMessage(me, other, "oi " + op).getId().toString());
+                            } catch (IllegalArgumentException unfriended) {
+                                // A amizade acabou entre a checagem e o envio
+                            }
+                        }
+                        break;
+                    case 6:
+                    case 7:
+                        if (groups.isMember(group.getId(), me) || groups.joinGroup(group.getId(), me)) {
+                            GroupMessage sent = chat.sendMessage(group.getId(), me, "mensagem " + op);
+                            chatMessages.incrementAndGet();
+                            acknowledge.accept(sent.getId().toString());
+                        }
+                        break;
+                    case 8:
+                        if (!group.isOwner(me)) {
+                            groups.leaveGroup(group.getId(), me);
+                        }
+                        break;
+                    default:
+                        friends.getFriendSuggestions(me, 5);
+                        friends.getGraphSnapshot();
+                        postController.searchPosts(me, "post", 5);
+                        network.getFeedController().getFriendsFeed(me);
+                        messages.getMessages(me);
+                        chat.getGroupMessages(group.getId(), 20);
+                }
+            }
+        }
+    }
+
+    // Resultado das checagens de uma etapa
+    private static final class Checks {
+        private final String stage;
+        private final List<String> failures = new ArrayList<>();
+
+        private Checks(String stage) {
+            this.stage = stage;
+        }
+
+        private void expect(String what, long actual, long expected) {
+            if (actual != expected) {
+                failures.add(what + ": " + actual + " (esperado " + expected + ")");
+            }
+        }
+
+        private boolean report() {
+            for (String failure : failures) {
+                System.out.println(stage + ": " + failure);
+            }
+            System.out.println(stage + ": " + (failures.isEmpty() ? "ok" : failures.size() + " falha(s)"));
+            return failures.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package server;
+
+import controller.EventController;
+import controller.SocialNetwork;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import model.Event;
+import model.Privacy;
+
+/*
+ * Consultas por período no índice de eventos por data. Cria N eventos
+ * espalhados pelo próximo ano, direto no EventController e sem journal, e
+ * mede o tempo médio por consulta de hoje, amanhã, esta semana, uma janela
+ * de uma hora e os próximos 20, mais a remarcação de um evento (que troca a
+ * chave no índice). Para comparar, mede também a mesma janela de uma hora
+ * filtrando e ordenando a lista inteira, como antes do índice.
+ *
+ *   java -cp bin server.EventRangeBenchmark [eventos] [consultas por tipo]
+ */
+public class EventRangeBenchmark {
+    private static final int CREATORS = 1000;
+    private static final int DAYS = 365;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        if (count <= 0 || queries <= 0) {
+            throw new IllegalArgumentException("Eventos e consultas devem ser positivos");
+        }
+
+        SocialNetwork network = new SocialNetwork();
+        EventController events = network.getEventController();
+        List<UUID> creators = new ArrayList<>(CREATORS);
+        for (int i = 0; i < CREATORS; i++) {
+            creators.add(network.getUserController()
+                .createUser("Usuário " + i, "usuario" + i + "@eventos.local", "123456", Privacy.PUBLIC).getId());
+        }
+        Random random = new Random(1);
+        LocalDateTime start = LocalDateTime.now().plusHours(1);
+        List<Event> created = new ArrayList<>(count);
+        long began = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            created.add(events.createEvent("Evento " + i, "descrição", start.plusMinutes(random.nextInt(DAYS * 24 * 60)),
+                creators.get(random.nextInt(CREATORS))));
+        }
+        System.out.printf("%d eventos criados em %.1f s%n", count, (System.nanoTime() - began) / 1e9);
+
+        // Janelas de uma hora em dias sorteados, as mesmas para o índice e para a varredura
+        LocalDateTime[] windows = new LocalDateTime[queries];
+        for (int i = 0; i < queries; i++) {
+            windows[i] = start.plusMinutes(random.nextInt((DAYS - 1) * 24 * 60));
+        }
+        int[] next = {0};
+        Supplier<List<Event>> hourWindow = () -> {
+            LocalDateTime from = windows[next[0]++ % queries];
+            return events.getEventsByDateRange(from, from.plusHours(1));
+        };
+        Supplier<List<Event>> reschedule = () -> {
+            Event event = created.get(random.nextInt(count));
+            events.editEvent(event.getId(), event.getCreatorId(), null, null,
+                start.plusMinutes(random.nextInt(DAYS * 24 * 60)));
+            return List.of(event);
+        };
+
+        measure("hoje", queries, events::getTodayEvents);
+        measure("amanhã", queries, events::getTomorrowEvents);
+        measure("semana", Math.max(1, queries / 100), events::getThisWeekEvents);
+        measure("semana, 20", queries, () -> events.getThisWeekEvents(20));
+        measure("próximos 20", queries, () -> events.getUpcomingEvents(20));
+        measure("janela 1 h", queries, hourWindow);
+        measure("remarcação", queries, reschedule);
+
+        // O caminho antigo: filtrar a lista inteira e ordenar a cada consulta
+        next[0] = 0;
+        List<Event> all = events.getAllEvents();
+        measure("varredura 1 h", Math.max(1, queries / 1000), () -> {
+            LocalDateTime from = windows[next[0]++ % queries];
+            LocalDateTime to = from.plusHours(1);
+            return all.stream()
+                .filter(event -> event.getEventDateTime().isAfter(from) && event.getEventDateTime().isBefore(to))
+                .sorted(Comparator.comparing(Event::getEventDateTime))
+                .collect(Collectors.toList());
+        });
+    }
+
+    // Uma rodada de aquecimento e uma medida; imprime o tempo médio e o tamanho médio do resultado
+    private static void measure(String name, int queries, Supplier<List<Event>> query) {
+        long found = 0;
+        for (int i = 0; i < queries; i++) {
+            found += query.get().size();
+        }
+        found = 0;
+        long began = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            found += query.get().size();
+        }
+        long elapsed = System.nanoTime() - began;
+        System.out.printf("%-14s %10.2f us/consulta   %8d eventos em média%n", name,
+            elapsed / 1e3 / queries, found / queries);
+    }
+}
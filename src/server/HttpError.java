@@ -0,0 +1,24 @@
+package server;
+
+/*
+ * Erro com status HTTP próprio (404, 401, 405...). Erros de validação dos
+ * controllers continuam como IllegalArgumentException e viram 400.
+ */
+final class HttpError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    HttpError(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    static HttpError notFound(String message) {
+        return new HttpError(404, message);
+    }
+}
@@ -0,0 +1,132 @@
+package server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Lê o corpo das requisições: um objeto JSON plano, com valores texto,
+ * número, booleano ou null. Números e booleanos voltam como o texto
+ * original; campos null são omitidos. Objetos e listas aninhados são
+ * recusados, já que nenhuma rota os usa.
+ */
+final class JsonReader {
+    private final String text;
+    private int position;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    static Map<String, String> readObject(String text) {
+        Map<String, String> fields = new HashMap<>();
+        if (text == null || text.trim().isEmpty()) {
+            return fields;
+        }
+        JsonReader reader = new JsonReader(text);
+        reader.expect('{');
+        if (!reader.consume('}')) {
+            do {
+                String name = reader.string();
+                reader.expect(':');
+                String value = reader.value();
+                if (value != null) {
+                    fields.put(name, value);
+                }
+            } while (reader.consume(','));
+            reader.expect('}');
+        }
+        reader.skipWhitespace();
+        if (reader.position != text.length()) {
+            throw reader.error();
+        }
+        return fields;
+    }
+
+    private String value() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error();
+        }
+        char c = text.charAt(position);
+        if (c == '"') {
+            return string();
+        }
+        int start = position;
+        while (position < text.length() && "{}[],: \t\r\n\"".indexOf(text.charAt(position)) < 0) {
+            position++;
+        }
+        String literal = text.substring(start, position);
+        if (literal.equals("null")) {
+            return null;
+        }
+        if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+            return literal;
+        }
+        throw error();
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder result = new StringBuilder();
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return result.toString();
+            }
+            if (c != '\\') {
+                result.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                break;
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'n': result.append('\n'); break;
+                case 'r': result.append('\r'); break;
+                case 't': result.append('\t'); break;
+                case 'b': result.append('\b'); break;
+                case 'f': result.append('\f'); break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error();
+                    }
+                    try {
+                        result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error();
+                    }
+                    position += 4;
+                    break;
+                default:
+                    result.append(escaped); // \" \\ \/
+            }
+        }
+        throw error();
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw error();
+        }
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (position < text.length() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error() {
+        return new IllegalArgumentException("JSON inválido na posição " + position);
+    }
+}
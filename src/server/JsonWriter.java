@@ -0,0 +1,329 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+/*
+ * Escreve JSON direto num vetor de bytes UTF-8, sem montar Strings
+ * intermediárias: UUIDs, números e datas são convertidos dígito a dígito.
+ * Cada thread do servidor reaproveita o seu escritor entre as requisições
+ * (forThread), então uma resposta comum não aloca nada além do que os
+ * controllers já devolvem.
+ */
+final class JsonWriter {
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    // Um escritor que cresceu para uma resposta enorme não fica preso à thread
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal.withInitial(JsonWriter::new);
+
+    private byte[] buffer;
+    private int size;
+    // Por nível de aninhamento: se já saiu algum elemento (e o próximo leva vírgula)
+    private boolean[] hasElements = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    private JsonWriter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    // Escritor avulso, para quem escreve enquanto a thread monta outra resposta
+    JsonWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    static JsonWriter forThread() {
+        JsonWriter writer = WRITERS.get();
+        if (writer.buffer.length > MAX_RETAINED_CAPACITY) {
+            writer.buffer = new byte[INITIAL_CAPACITY];
+        }
+        writer.size = 0;
+        writer.depth = 0;
+        writer.afterName = false;
+        return writer;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    // Texto ASCII já pronto, fora da estrutura JSON (o enquadramento de um evento SSE, por exemplo)
+    JsonWriter raw(String text) {
+        ascii(text);
+        return this;
+    }
+
+    JsonWriter beginObject() {
+        return open('{');
+    }
+
+    JsonWriter endObject() {
+        return close('}');
+    }
+
+    JsonWriter beginArray() {
+        return open('[');
+    }
+
+    JsonWriter endArray() {
+        return close(']');
+    }
+
+    JsonWriter name(String name) {
+        separate();
+        string(name);
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            ascii("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value) {
+        separate();
+        if (value == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+            return this;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        digits(value);
+        return this;
+    }
+
+    JsonWriter value(boolean value) {
+        separate();
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    JsonWriter value(UUID value) {
+        separate();
+        if (value == null) {
+            ascii("null");
+            return this;
+        }
+        ensure(38);
+        buffer[size++] = '"';
+        long most = value.getMostSignificantBits();
+        long least = value.getLeastSignificantBits();
+        hex(most >>> 32, 8);
+        buffer[size++] = '-';
+        hex(most >>> 16, 4);
+        buffer[size++] = '-';
+        hex(most, 4);
+        buffer[size++] = '-';
+        hex(least >>> 48, 4);
+        buffer[size++] = '-';
+        hex(least, 12);
+        buffer[size++] = '"';
+        return this;
+    }
+
+    // ISO 8601 local, com milissegundos: 2024-05-01T14:30:00.000
+    JsonWriter value(LocalDateTime value) {
+        separate();
+        if (value == null) {
+            ascii("null");
+            return this;
+        }
+        ensure(25);
+        buffer[size++] = '"';
+        padded(value.getYear(), 4);
+        buffer[size++] = '-';
+        padded(value.getMonthValue(), 2);
+        buffer[size++] = '-';
+        padded(value.getDayOfMonth(), 2);
+        buffer[size++] = 'T';
+        padded(value.getHour(), 2);
+        buffer[size++] = ':';
+        padded(value.getMinute(), 2);
+        buffer[size++] = ':';
+        padded(value.getSecond(), 2);
+        buffer[size++] = '.';
+        padded(value.getNano() / 1_000_000, 3);
+        buffer[size++] = '"';
+        return this;
+    }
+
+    JsonWriter nullValue() {
+        separate();
+        ascii("null");
+        return this;
+    }
+
+    private JsonWriter open(char bracket) {
+        separate();
+        put((byte) bracket);
+        if (depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        hasElements[depth++] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) {
+        depth--;
+        put((byte) bracket);
+        return this;
+    }
+
+    // Vírgula antes de todo elemento que não é o primeiro do nível (exceto o valor logo após o nome)
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) {
+                put((byte) ',');
+            }
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private void string(String value) {
+        ensure(value.length() + 2);
+        buffer[size++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                ensure(1);
+                buffer[size++] = (byte) c;
+            } else {
+                special(value, i, c);
+                if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+        put((byte) '"');
+    }
+
+    private void special(String value, int index, char c) {
+        ensure(6);
+        switch (c) {
+            case '"':
+                buffer[size++] = '\\';
+                buffer[size++] = '"';
+                return;
+            case '\\':
+                buffer[size++] = '\\';
+                buffer[size++] = '\\';
+                return;
+            case '\n':
+                buffer[size++] = '\\';
+                buffer[size++] = 'n';
+                return;
+            case '\r':
+                buffer[size++] = '\\';
+                buffer[size++] = 'r';
+                return;
+            case '\t':
+                buffer[size++] = '\\';
+                buffer[size++] = 't';
+                return;
+            default:
+                break;
+        }
+        if (c < 0x20) {
+            buffer[size++] = '\\';
+            buffer[size++] = 'u';
+            hex(c, 4);
+        } else if (c < 0x800) {
+            buffer[size++] = (byte) (0xC0 | (c >> 6));
+            buffer[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            // Surrogate sozinho não é UTF-8 válido: vira o caractere de substituição
+            buffer[size++] = (byte) 0xEF;
+            buffer[size++] = (byte) 0xBF;
+            buffer[size++] = (byte) 0xBD;
+        } else {
+            buffer[size++] = (byte) (0xE0 | (c >> 12));
+            buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void digits(long value) {
+        ensure(20);
+        int start = size;
+        do {
+            buffer[size++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        reverse(start, size - 1);
+    }
+
+    private void padded(int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            buffer[size + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += width;
+    }
+
+    // Os count dígitos hexadecimais menos significativos de value
+    private void hex(long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            buffer[size + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        size += count;
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            byte tmp = buffer[from];
+            buffer[from++] = buffer[to];
+            buffer[to--] = tmp;
+        }
+    }
+
+    private void ascii(String text) {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        buffer[size++] = b;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
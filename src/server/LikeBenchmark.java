@@ -0,0 +1,128 @@
+package server;
+
+import controller.PostController;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import model.Post;
+
+/*
+ * Curtidas concorrentes num único post, com 1, 2, 4... até N threads. Cada
+ * thread tem seus próprios usuários e alterna curtir e descurtir, então o
+ * saldo do post no fim da rodada é conhecido e é conferido. Mede dois casos:
+ *
+ *   frio   post com poucas curtidas (bitmap comprimido sob o lock do post)
+ *   quente post já promovido (mais de 4096 curtidas, CAS por palavra)
+ *
+ * e imprime a vazão de cada rodada e o ganho sobre 1 thread. Roda direto no
+ * PostController, sem journal nem notificações, para medir só o conjunto
+ * de curtidas; o ganho só aparece com vários núcleos livres.
+ *
+ *   java -cp bin server.LikeBenchmark [threads máx.] [operações por thread]
+ */
+public class LikeBenchmark {
+    private static final int USERS_PER_THREAD = 32;
+    private static final int HOT_SEED = 8192;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+            : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        if (maxThreads <= 0 || perThread <= 0) {
+            throw new IllegalArgumentException("Threads e operações devem ser positivas");
+        }
+
+        PostController posts = new PostController();
+        UUID author = UUID.randomUUID();
+        List<List<UUID>> users = new ArrayList<>();
+        for (int t = 0; t < maxThreads; t++) {
+            List<UUID> own = new ArrayList<>();
+            for (int i = 0; i < USERS_PER_THREAD; i++) {
+                own.add(UUID.randomUUID());
+            }
+            users.add(own);
+        }
+        List<UUID> seedUsers = new ArrayList<>();
+        for (int i = 0; i < HOT_SEED; i++) {
+            seedUsers.add(UUID.randomUUID());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(maxThreads);
+        try {
+            System.out.println(Runtime.getRuntime().availableProcessors() + " processadores, "
+                + perThread + " operações por thread");
+            // Primeiras rodadas só aquecem o JIT nos dois caminhos
+            for (int warmup = 0; warmup < 3; warmup++) {
+                run(pool, posts, newPost(posts, author, List.of()), users, maxThreads, perThread);
+                run(pool, posts, newPost(posts, author, seedUsers), users, maxThreads, perThread);
+            }
+            for (String kind : new String[] {"frio", "quente"}) {
+                double base = 0;
+                for (int threads = 1; threads <= maxThreads; threads = next(threads, maxThreads)) {
+                    Post post = newPost(posts, author, kind.equals("quente") ? seedUsers : List.of());
+                    double rate = run(pool, posts, post, users, threads, perThread);
+                    if (threads == 1) {
+                        base = rate;
+                    }
+                    System.out.printf("%-6s %3d threads %12.0f curtidas/s   %5.2fx%n", kind, threads, rate, rate / base);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int next(int threads, int maxThreads) {
+        return threads < maxThreads ? Math.min(threads * 2, maxThreads) : threads + 1;
+    }
+
+    private static Post newPost(PostController posts, UUID author, List<UUID> seedUsers) {
+        Post post = posts.createTextPost(author, "post de carga");
+        for (UUID user : seedUsers) {
+            posts.likePost(post.getId(), user);
+        }
+        return post;
+    }
+
+    // Operações por segundo somando todas as threads
+    private static double run(ExecutorService pool, PostController posts, Post post, List<List<UUID>> users,
+            int threads, int perThread) throws Exception {
+        int before = post.getLikeCount();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<UUID> own = users.get(t);
+            running.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    UUID user = own.get(i % USERS_PER_THREAD);
+                    boolean changed = (i / USERS_PER_THREAD) % 2 == 0
+                        ? posts.likePost(post.getId(), user)
+                        : posts.unlikePost(post.getId(), user);
+                    if (!changed) {
+                        throw new IllegalStateException("Curtida perdida para " + user);
+                    }
+                }
+                return null;
+            }));
+        }
+        long began = System.nanoTime();
+        start.countDown();
+        for (Future<?> thread : running) {
+            thread.get();
+        }
+        long elapsed = System.nanoTime() - began;
+
+        // Rodada terminada no meio de um ciclo deixa curtidas dos últimos usuários
+        int left = perThread % (2 * USERS_PER_THREAD);
+        int expected = before + threads * Math.min(left, 2 * USERS_PER_THREAD - left);
+        if (post.getLikeCount() != expected) {
+            throw new IllegalStateException("Saldo de curtidas " + post.getLikeCount() + ", esperado " + expected);
+        }
+        return (long) threads * perThread / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,133 @@
+package server;
+
+import controller.GroupController;
+import controller.GroupMessageListener;
+import controller.NotificationController;
+import controller.NotificationListener;
+import controller.SocialNetwork;
+import controller.UserController;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import model.Group;
+import model.GroupMessage;
+import model.Notification;
+import model.User;
+
+/*
+ * Publica as mudanças para os clientes conectados por SSE (SseServer):
+ * notificações novas, o total de não lidas e as mensagens dos grupos de
+ * que o usuário participa. Os listeners são chamados sob o lock do
+ * controller, então aqui só se codifica o evento e se enfileira nas
+ * conexões, sem bloquear.
+ */
+final class PushHub implements NotificationListener, GroupMessageListener {
+    private final UserController users;
+    private final GroupController groups;
+    private final NotificationController notifications;
+    private final Map<UUID, Set<SseServer.Connection>> connectionsByUser = new ConcurrentHashMap<>();
+
+    PushHub(SocialNetwork network) {
+        this.users = network.getUserController();
+        this.groups = network.getGroupController();
+        this.notifications = network.getNotificationController();
+    }
+
+    boolean isKnownUser(UUID userId) {
+        return users.getUserById(userId) != null;
+    }
+
+    void subscribe(SseServer.Connection connection) {
+        UUID userId = connection.getUserId();
+        connectionsByUser.compute(userId, (id, set) -> {
+            Set<SseServer.Connection> connections = set != null ? set : ConcurrentHashMap.newKeySet();
+            connections.add(connection);
+            return connections;
+        });
+        // Estado inicial, na mesma ordem das alterações que vierem depois
+        notifications.publishUnreadCount(userId);
+    }
+
+    void unsubscribe(SseServer.Connection connection) {
+        connectionsByUser.computeIfPresent(connection.getUserId(), (id, connections) -> {
+            connections.remove(connection);
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+
+    int getConnectionCount() {
+        int count = 0;
+        for (Set<SseServer.Connection> connections : connectionsByUser.values()) {
+            count += connections.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void notificationCreated(Notification notification, int unreadCount) {
+        Set<SseServer.Connection> connections = connectionsByUser.get(notification.getUserId());
+        if (connections == null) {
+            return;
+        }
+        JsonWriter json = event("notification").beginObject()
+            .name("unread").value(unreadCount)
+            .name("notification");
+        ApiHandler.writeNotification(json, notification);
+        sendAll(connections, endEvent(json.endObject()));
+    }
+
+    @Override
+    public void unreadCountChanged(UUID userId, int unreadCount) {
+        Set<SseServer.Connection> connections = connectionsByUser.get(userId);
+        if (connections == null) {
+            return;
+        }
+        sendAll(connections, endEvent(event("unread").beginObject().name("unread").value(unreadCount).endObject()));
+    }
+
+    @Override
+    public void messageSent(GroupMessage message) {
+        Group group = groups.getGroupById(message.getGroupId());
+        if (group == null || connectionsByUser.isEmpty()) {
+            return;
+        }
+        User sender = users.getUserById(message.getSenderId());
+        JsonWriter json = event("groupMessage").beginObject()
+            .name("senderName").value(sender != null ? sender.getName() : null)
+            .name("message");
+        ApiHandler.writeGroupMessage(json, message);
+        byte[] frame = endEvent(json.endObject());
+
+        // Percorre o lado menor: os membros do grupo ou os usuários conectados
+        if (group.getMemberCount() <= connectionsByUser.size()) {
+            for (UUID memberId : group.getMembers()) {
+                Set<SseServer.Connection> connections = connectionsByUser.get(memberId);
+                if (connections != null) {
+                    sendAll(connections, frame);
+                }
+            }
+        } else {
+            for (Map.Entry<UUID, Set<SseServer.Connection>> entry : connectionsByUser.entrySet()) {
+                if (group.isMember(entry.getKey())) {
+                    sendAll(entry.getValue(), frame);
+                }
+            }
+        }
+    }
+
+    // Cada evento é codificado uma vez e os mesmos bytes vão para todas as conexões
+    private static JsonWriter event(String name) {
+        return new JsonWriter(512).raw("event: ").raw(name).raw("\ndata: ");
+    }
+
+    private static byte[] endEvent(JsonWriter json) {
+        return json.raw("\n\n").toByteArray();
+    }
+
+    private static void sendAll(Set<SseServer.Connection> connections, byte[] frame) {
+        for (SseServer.Connection connection : connections) {
+            connection.send(frame);
+        }
+    }
+}
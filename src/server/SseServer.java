@@ -0,0 +1,432 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Servidor de server-sent events em NIO, numa porta própria e numa única
+ * thread (seletor). O HttpServer do JDK mantém uns 30 KB de buffers por
+ * resposta aberta e escreve bloqueando; aqui uma conexão ociosa custa só o
+ * socket e a fila vazia, e nenhuma escrita bloqueia: quando o buffer do
+ * socket enche, o resto espera OP_WRITE.
+ *
+ * Quem publica (qualquer thread) só enfileira na conexão e acorda o
+ * seletor. Consumidor lento é desligado quando a fila passa do limite ou
+ * quando o socket fica cheio por mais de WRITE_TIMEOUT.
+ */
+final class SseServer {
+    static final String PATH = "/api/stream";
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MAX_BATCH = 64;
+    private static final int MAX_REQUEST_BYTES = 8 * 1024;
+    private static final long TICK_MILLIS = 1000;
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(25);
+    private static final long HANDSHAKE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long WRITE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Comentário SSE: mantém proxies abertos e revela conexões que caíram
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+    // Sem Content-Length: o corpo vai até o fechamento da conexão
+    private static final byte[] STREAM_HEADERS = ("HTTP/1.1 200 OK\r\n"
+        + "Content-Type: text/event-stream; charset=utf-8\r\n"
+        + "Cache-Control: no-cache\r\n"
+        + "Access-Control-Allow-Origin: *\r\n"
+        + "\r\n"
+        + "retry: 5000\n\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final PushHub hub;
+    private final Selector selector;
+    private final ServerSocketChannel acceptor;
+    private final InetSocketAddress address;
+    private final Thread loop;
+    private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    // Só a thread do seletor mexe nestes
+    private final Set<Connection> connections = new HashSet<>();
+    private final ByteBuffer discard = ByteBuffer.allocate(1024);
+    private volatile boolean running;
+
+    SseServer(PushHub hub, InetSocketAddress address) throws IOException {
+        this.hub = hub;
+        this.selector = Selector.open();
+        this.acceptor = ServerSocketChannel.open();
+        acceptor.bind(address, 1024);
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+        this.address = (InetSocketAddress) acceptor.getLocalAddress();
+        this.loop = new Thread(this::run, "push-selector");
+        loop.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        loop.start();
+    }
+
+    // Fecha todas as conexões e espera a thread do seletor por até um segundo
+    void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    private void run() {
+        long lastSweep = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(TICK_MILLIS);
+            } catch (IOException e) {
+                System.err.println("Erro no seletor de push: " + e.getMessage());
+                break;
+            }
+            wakeupRequested.set(false);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            }
+
+            Connection connection;
+            while ((connection = pending.poll()) != null) {
+                connection.flush();
+            }
+
+            long now = System.nanoTime();
+            if (now - lastSweep >= TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS)) {
+                sweep(now);
+                lastSweep = now;
+            }
+        }
+
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+        try {
+            acceptor.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o servidor de push: " + e.getMessage());
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = acceptor.accept()) != null) {
+                channel.configureBlocking(false);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao aceitar conexão de push: " + e.getMessage());
+        }
+    }
+
+    // Handshakes que não terminam, sockets cheios há tempo demais e heartbeat dos ociosos
+    private void sweep(long now) {
+        List<Connection> expired = new ArrayList<>();
+        for (Connection connection : connections) {
+            if (connection.userId == null) {
+                if (now - connection.acceptedAt > HANDSHAKE_TIMEOUT_NANOS) {
+                    expired.add(connection);
+                }
+            } else if (connection.stalledSince != 0 && now - connection.stalledSince > WRITE_TIMEOUT_NANOS) {
+                expired.add(connection);
+            } else if (connection.inflight == null && now - connection.lastWriteAt > HEARTBEAT_NANOS) {
+                connection.send(HEARTBEAT);
+            }
+        }
+        for (Connection connection : expired) {
+            connection.close();
+        }
+    }
+
+    private void wakeup() {
+        if (wakeupRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /*
+     * Uma conexão SSE. A fila e os estados marcados como compartilhados são
+     * protegidos pelo monitor da conexão; o resto só é usado pela thread do
+     * seletor.
+     */
+    final class Connection {
+        private final SocketChannel channel;
+        private final long acceptedAt = System.nanoTime();
+        private SelectionKey key;
+        private ByteBuffer request = ByteBuffer.allocate(512); // Só até o fim do handshake
+        private volatile UUID userId;
+
+        // Compartilhados
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>(4);
+        private boolean scheduled;
+        private boolean closing;
+
+        private ByteBuffer[] inflight;
+        private int inflightStart;
+        private long stalledSince;
+        private long lastWriteAt = System.nanoTime();
+        private boolean closed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        UUID getUserId() {
+            return userId;
+        }
+
+        // Chamado de qualquer thread; nunca bloqueia
+        void send(byte[] frame) {
+            synchronized (this) {
+                if (closing) {
+                    return;
+                }
+                if (queue.size() >= QUEUE_CAPACITY) {
+                    // Consumidor lento: não acumula eventos por ele
+                    closing = true;
+                    queue.clear();
+                } else {
+                    queue.add(frame);
+                    if (scheduled) {
+                        return; // Já está na fila do seletor ou esperando OP_WRITE
+                    }
+                    scheduled = true;
+                }
+            }
+            pending.add(this);
+            wakeup();
+        }
+
+        private void read() {
+            try {
+                if (request == null) {
+                    // O cliente não manda nada depois do pedido: só detecta o fechamento
+                    discard.clear();
+                    if (channel.read(discard) < 0) {
+                        close();
+                    }
+                    return;
+                }
+                if (!request.hasRemaining()) {
+                    if (request.capacity() >= MAX_REQUEST_BYTES) {
+                        reject(431, "Cabeçalhos grandes demais");
+                        return;
+                    }
+                    ByteBuffer larger = ByteBuffer.allocate(request.capacity() * 2);
+                    request.flip();
+                    request = larger.put(request);
+                }
+                if (channel.read(request) < 0) {
+                    close();
+                    return;
+                }
+                String head = new String(request.array(), 0, request.position(), StandardCharsets.ISO_8859_1);
+                int end = head.indexOf("\r\n\r\n");
+                if (end >= 0) {
+                    request = null;
+                    handshake(head.substring(0, end));
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void handshake(String head) {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3) {
+                reject(400, "Pedido inválido");
+                return;
+            }
+            String target = requestLine[1];
+            int question = target.indexOf('?');
+            String path = question >= 0 ? target.substring(0, question) : target;
+            if (!path.equals(PATH)) {
+                reject(404, "Rota não encontrada");
+                return;
+            }
+            if (!requestLine[0].equals("GET")) {
+                reject(405, "Método não permitido: " + requestLine[0]);
+                return;
+            }
+
+            // EventSource não envia cabeçalhos próprios: aceita também ?userId=
+            String id = null;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0 && lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT).equals("x-user-id")) {
+                    id = lines[i].substring(colon + 1).trim();
+                }
+            }
+            if (id == null && question >= 0) {
+                for (String pair : target.substring(question + 1).split("&")) {
+                    if (pair.startsWith("userId=")) {
+                        id = pair.substring("userId=".length());
+                    }
+                }
+            }
+            if (id == null) {
+                reject(401, "Cabeçalho X-User-Id obrigatório");
+                return;
+            }
+            UUID user;
+            try {
+                user = UUID.fromString(id);
+            } catch (IllegalArgumentException e) {
+                reject(400, "Id inválido: " + id);
+                return;
+            }
+            if (!hub.isKnownUser(user)) {
+                reject(404, "Usuário não encontrado");
+                return;
+            }
+
+            // Os cabeçalhos entram na fila antes de qualquer evento
+            send(STREAM_HEADERS);
+            userId = user;
+            hub.subscribe(this);
+        }
+
+        private void reject(int status, String message) {
+            JsonWriter json = new JsonWriter(256);
+            json.beginObject().name("error").value(message).endObject();
+            byte[] body = json.toByteArray();
+            byte[] head = ("HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            try {
+                // Resposta pequena: cabe no buffer do socket, e se não couber o cliente só perde a mensagem
+                channel.write(new ByteBuffer[] { ByteBuffer.wrap(head), ByteBuffer.wrap(body) });
+            } catch (IOException e) {
+                // O cliente já foi embora
+            }
+            close();
+        }
+
+        private String reason(int status) {
+            switch (status) {
+                case 400: return "Bad Request";
+                case 401: return "Unauthorized";
+                case 404: return "Not Found";
+                case 405: return "Method Not Allowed";
+                default: return "Request Header Fields Too Large";
+            }
+        }
+
+        // Escreve o que couber no socket sem bloquear; o resto espera OP_WRITE
+        private void flush() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (true) {
+                    synchronized (this) {
+                        if (closing) {
+                            break;
+                        }
+                        if (inflight == null) {
+                            if (queue.isEmpty()) {
+                                scheduled = false;
+                                key.interestOps(SelectionKey.OP_READ);
+                                return;
+                            }
+                            inflight = new ByteBuffer[Math.min(queue.size(), MAX_BATCH)];
+                            for (int i = 0; i < inflight.length; i++) {
+                                inflight[i] = ByteBuffer.wrap(queue.poll());
+                            }
+                            inflightStart = 0;
+                        }
+                    }
+                    channel.write(inflight, inflightStart, inflight.length - inflightStart);
+                    while (inflightStart < inflight.length && !inflight[inflightStart].hasRemaining()) {
+                        inflightStart++;
+                    }
+                    long now = System.nanoTime();
+                    if (inflightStart < inflight.length) {
+                        if (stalledSince == 0) {
+                            stalledSince = now;
+                        }
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    inflight = null;
+                    stalledSince = 0;
+                    lastWriteAt = now;
+                }
+            } catch (IOException e) {
+                // Cliente desconectou
+            }
+            close();
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (this) {
+                closing = true;
+                queue.clear();
+            }
+            inflight = null;
+            request = null;
+            connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nada a fazer
+            }
+            if (userId != null) {
+                hub.unsubscribe(this);
+            }
+        }
+    }
+}
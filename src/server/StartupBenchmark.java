@@ -0,0 +1,202 @@
+package server;
+
+import controller.SocialNetwork;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import model.Privacy;
+import persistence.Journal;
+
+/*
+ * Tempo de inicialização a frio com snapshot e cauda do log. Gera, pelo
+ * caminho normal dos controllers e com o journal ligado, uma base de
+ * mensagens diretas entre amigos (e as notificações que elas geram), tira
+ * um snapshot, grava mais uma cauda de mensagens só no log e fecha tudo.
+ * Depois sobe um processo novo, que só abre o journal, e mede quanto ele
+ * leva para carregar o snapshot e reaplicar a cauda.
+ *
+ *   java -cp bin server.StartupBenchmark [mensagens] [mensagens na cauda] [diretório]
+ *
+ * Sem diretório, usa um temporário e o apaga no fim. Com um diretório que
+ * já tem dados, pula a geração e só mede a inicialização, o que permite
+ * repetir a medida sobre uma base grande gerada uma vez. A base de 10
+ * milhões de mensagens (o padrão) pede vários GB de heap (-Xmx), tanto na
+ * geração quanto no processo medido, que herda o -Xmx deste.
+ */
+public class StartupBenchmark {
+    private static final String START_MODE = "--start";
+    private static final int USERS = 10000;
+    private static final int FRIENDS_PER_USER = 10;
+    private static final int WRITERS = 64;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(START_MODE)) {
+            start(Paths.get(args[1]));
+            return;
+        }
+        long messages = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        long tail = args.length > 1 ? Long.parseLong(args[1]) : 100_000L;
+        if (messages <= 0 || tail < 0 || tail > messages) {
+            throw new IllegalArgumentException("Mensagens devem ser positivas e a cauda não pode passar do total");
+        }
+        boolean temporary = args.length <= 2;
+        Path dir = temporary ? Files.createTempDirectory("socialapp-startup") : Files.createDirectories(Paths.get(args[2]));
+
+        try {
+            if (hasData(dir)) {
+                System.out.println("usando os dados já gravados em " + dir);
+            } else {
+                generate(dir, messages, tail);
+            }
+            System.out.printf("em disco: %.0f MB%n", size(dir) / 1e6);
+            startChild(dir);
+        } finally {
+            if (temporary) {
+                deleteAll(dir);
+            }
+        }
+    }
+
+    private static void generate(Path dir, long messages, long tail) throws Exception {
+        SocialNetwork network = new SocialNetwork();
+        Journal journal = network.openJournal(dir);
+        try {
+            List<UUID> users = seed(network);
+            long began = System.nanoTime();
+            send(network, users, messages - tail, 1);
+            long sent = System.nanoTime();
+            journal.snapshot();
+            long snapshotted = System.nanoTime();
+            send(network, users, tail, 2);
+            awaitNotifications(network);
+            System.out.printf("geração: %d mensagens em %.1f s, snapshot em %.1f s, cauda de %d mensagens%n",
+                messages - tail, (sent - began) / 1e9, (snapshotted - sent) / 1e9, tail);
+        } finally {
+            journal.close();
+        }
+    }
+
+    // Cada usuário é amigo dos FRIENDS_PER_USER seguintes (em anel)
+    private static List<UUID> seed(SocialNetwork network) {
+        List<UUID> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(network.getUserController()
+                .createUser("Usuário " + i, "usuario" + i + "@startup.local", "123456", Privacy.PUBLIC).getId());
+        }
+        for (int i = 0; i < USERS; i++) {
+            for (int k = 1; k <= FRIENDS_PER_USER / 2; k++) {
+                UUID other = users.get((i + k) % USERS);
+                if (network.getFriendController().sendFriendRequest(users.get(i), other)) {
+                    network.getFriendController().acceptRequest(other, users.get(i));
+                }
+            }
+        }
+        return users;
+    }
+
+    // Vários escritores em paralelo, para os fsyncs serem agrupados como na API
+    private static void send(SocialNetwork network, List<UUID> users, long count, long seed) throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                long share = count / WRITERS + (w < count % WRITERS ? 1 : 0);
+                Random random = new Random(seed * WRITERS + w);
+                running.add(writers.submit(() -> {
+                    for (long i = 0; i < share; i++) {
+                        int sender = random.nextInt(USERS);
+                        int receiver = (sender + 1 + random.nextInt(FRIENDS_PER_USER / 2)) % USERS;
+                        network.getMessageController().sendMessage(users.get(sender), users.get(receiver),
+                            "mensagem " + i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : running) {
+                writer.get();
+            }
+        } finally {
+            writers.shutdown();
+        }
+    }
+
+    // A fila de notificações grava por conta própria; fechar o journal antes perderia o fim dela
+    private static void awaitNotifications(SocialNetwork network) throws InterruptedException {
+        while (true) {
+            Map<String, Long> stats = network.getNotificationController().getQueueStats();
+            if (stats.get("delivered") + stats.get("coalesced") >= stats.get("queued") + stats.get("callerRuns")) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    // Processo novo, para medir também o carregamento de classes e o JIT frio
+    private static void startChild(Path dir) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process child = new ProcessBuilder(java, "-Xmx" + Runtime.getRuntime().maxMemory(),
+            "-cp", System.getProperty("java.class.path"), StartupBenchmark.class.getName(), START_MODE, dir.toString())
+            .redirectErrorStream(true)
+            .start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                System.out.println(line);
+            }
+        }
+        if (child.waitFor() != 0) {
+            throw new IllegalStateException("A inicialização medida terminou com status " + child.exitValue());
+        }
+    }
+
+    private static void start(Path dir) throws IOException {
+        long began = System.nanoTime();
+        SocialNetwork network = new SocialNetwork();
+        Journal journal = network.openJournal(dir);
+        long elapsed = System.nanoTime() - began;
+        try {
+            Runtime runtime = Runtime.getRuntime();
+            runtime.gc();
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+            System.out.printf("inicialização: %.2f s, %d registros restaurados, %d mensagens, heap %.0f MB%n",
+                elapsed / 1e9, journal.getRestoredRecordCount(),
+                network.getMessageController().getAllMessages().size(), heap / 1e6);
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static boolean hasData(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.findAny().isPresent();
+        }
+    }
+
+    private static long size(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteAll(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
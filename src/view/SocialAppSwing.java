@@ -10,6 +10,7 @@ import controller.GroupChatController;
 import controller.EventController;
 import controller.FeedController;
 import controller.NotificationController;
+import controller.SocialNetwork;
 import model.User;
 import model.Post;
 import model.TextPost;
@@ -22,6 +23,7 @@ import model.Group;
 import model.GroupMessage;
 import model.Event;
 import model.Notification;
+import persistence.Journal;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -30,11 +32,15 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.Desktop;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.UUID;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.stream.Collectors;
@@ -50,6 +56,7 @@ public class SocialAppSwing {
     private EventController eventController;
     private FeedController feedService;
     private NotificationController notificationController;
+    private Journal journal;
     
     private User currentUser;
     private JFrame mainFrame;
@@ -59,6 +66,9 @@ public class SocialAppSwing {
     private DefaultListModel<String> userListModel;
     private DefaultListModel<String> postListModel;
     private JList<String> feedList;
+    private DefaultListModel<String> mainFeedModel;
+    private String mainFeedCursor;
+    private JButton loadMoreFeedButton;
     private JList<String> filteredFeedList;
     private JList<String> friendPostsList;
     private JComboBox<String> friendsCombo;
@@ -120,27 +130,49 @@ public class SocialAppSwing {
             System.err.println("Erro ao configurar fontes: " + e.getMessage());
         }
         
-        userController = new UserController();
-        notificationController = new NotificationController(userController);
-        friendRequestController = new FriendRequestController(userController);
-        friendRequestController.setNotificationController(notificationController);
-        friendController = new FriendController(friendRequestController);
-        postController = new PostController();
-        postController.setNotificationController(notificationController);
-        postController.setUserController(userController);
-        messageController = new MessageController(friendController, userController);
-        messageController.setNotificationController(notificationController);
-        groupController = new GroupController(userController);
-        groupChatController = new GroupChatController(groupController, userController);
-        eventController = new EventController(userController);
-        feedService = new FeedController(postController, friendController, userController);
-        
-        addSampleUsers();
-        addSampleGroups();
-        addSampleEvents();
+        SocialNetwork network = new SocialNetwork();
+        userController = network.getUserController();
+        notificationController = network.getNotificationController();
+        friendRequestController = network.getFriendRequestController();
+        friendController = network.getFriendController();
+        postController = network.getPostController();
+        messageController = network.getMessageController();
+        groupController = network.getGroupController();
+        groupChatController = network.getGroupChatController();
+        eventController = network.getEventController();
+        feedService = network.getFeedController();
+        
+        journal = openJournal(network);
+        if (userController.getTotalUsers() == 0) {
+            addSampleUsers();
+            addSampleGroups();
+            addSampleEvents();
+        }
         createAndShowGUI();
     }
     
+    private Journal openJournal(SocialNetwork network) {
+        Path dataDir = Paths.get(System.getProperty("socialapp.dataDir", "data"));
+        long snapshotMinutes = Long.getLong("socialapp.snapshotMinutes", 10);
+        try {
+            Journal journal = network.openJournal(dataDir);
+            journal.startPeriodicSnapshots(snapshotMinutes, TimeUnit.MINUTES);
+            System.out.println("Journal: " + journal.getRestoredRecordCount() + " registros restaurados de " + dataDir.toAbsolutePath());
+            
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Erro ao fechar o journal: " + e.getMessage());
+                }
+            }));
+            return journal;
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir o journal, os dados não serão persistidos: " + e.getMessage());
+            return null;
+        }
+    }
+    
     private void addSampleUsers() {
         User joao = userController.createUser("João Silva", "joao@email.com", "123456", Privacy.PUBLIC);
         User maria = userController.createUser("Maria Santos", "maria@email.com", "654321", Privacy.PRIVATE);
@@ -449,7 +481,12 @@ public class SocialAppSwing {
                 return;
             }
             
-            userController.createUser(name, email, password, privacy);
+            try {
+                userController.createUser(name, email, password, privacy);
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(mainFrame, "Erro ao criar usuário: " + ex.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             JOptionPane.showMessageDialog(mainFrame, "Usuário criado com sucesso!", "Sucesso", JOptionPane.INFORMATION_MESSAGE);
             
             nameField.setText("");
@@ -501,9 +538,34 @@ public class SocialAppSwing {
         refreshButton.setBorder(BorderFactory.createEmptyBorder(12, 24, 12, 24));
         refreshButton.addActionListener(e -> refreshUsersList());
         
+        JTextField searchField = new JTextField(20);
+        searchField.setFont(FONT_BODY);
+        searchField.setBackground(DARKER_BG);
+        searchField.setForeground(TEXT_PRIMARY);
+        searchField.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(BORDER_COLOR, 1),
+            BorderFactory.createEmptyBorder(8, 12, 8, 12)
+        ));
+        searchField.addActionListener(e -> searchUsers(searchField.getText()));
+        
+        JButton searchButton = new JButton("🔍 Buscar");
+        searchButton.setFont(FONT_BUTTON);
+        searchButton.setBackground(ACCENT_COLOR);
+        searchButton.setForeground(TEXT_PRIMARY);
+        searchButton.setBorderPainted(false);
+        searchButton.setFocusPainted(false);
+        searchButton.setOpaque(true);
+        searchButton.addActionListener(e -> searchUsers(searchField.getText()));
+        
+        JPanel bottomPanel = new JPanel(new FlowLayout());
+        bottomPanel.setBackground(DARK_BG);
+        bottomPanel.add(searchField);
+        bottomPanel.add(searchButton);
+        bottomPanel.add(refreshButton);
+        
         panel.add(titleLabel, BorderLayout.NORTH);
         panel.add(scrollPane, BorderLayout.CENTER);
-        panel.add(refreshButton, BorderLayout.SOUTH);
+        panel.add(bottomPanel, BorderLayout.SOUTH);
         
         refreshUsersList();
         return panel;
@@ -689,10 +751,22 @@ public class SocialAppSwing {
         sendButton.setOpaque(true);
         sendButton.setBorder(BorderFactory.createEmptyBorder(12, 24, 12, 24));
         
+        JButton suggestionsButton = new JButton("💡 Sugestões");
+        suggestionsButton.setFont(FONT_BUTTON);
+        suggestionsButton.setBackground(ACCENT_COLOR);
+        suggestionsButton.setForeground(TEXT_PRIMARY);
+        suggestionsButton.setBorderPainted(false);
+        suggestionsButton.setFocusPainted(false);
+        suggestionsButton.setOpaque(true);
+        suggestionsButton.setBorder(BorderFactory.createEmptyBorder(12, 24, 12, 24));
+        suggestionsButton.addActionListener(e -> showFriendSuggestions());
+        
         requestPanel.add(userLabel);
         requestPanel.add(friendsUserCombo);
         requestPanel.add(new JLabel(""));
         requestPanel.add(sendButton);
+        requestPanel.add(new JLabel(""));
+        requestPanel.add(suggestionsButton);
         
         sendButton.addActionListener(e -> {
             if (currentUser == null) {
@@ -724,6 +798,27 @@ public class SocialAppSwing {
         return panel;
     }
     
+    private void showFriendSuggestions() {
+        if (currentUser == null) {
+            JOptionPane.showMessageDialog(mainFrame, "Você precisa estar logado!", "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        List<FriendController.FriendSuggestion> suggestions = friendController.getFriendSuggestions(currentUser.getId(), 10);
+        if (suggestions.isEmpty()) {
+            JOptionPane.showMessageDialog(mainFrame, "Nenhuma sugestão no momento. Adicione mais amigos!", "Sugestões", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        StringBuilder text = new StringBuilder("Pessoas que você talvez conheça:\n\n");
+        for (FriendController.FriendSuggestion suggestion : suggestions) {
+            User user = findUserById(suggestion.getUserId());
+            String name = user != null ? user.getName() : "Usuário desconhecido";
+            text.append(String.format("%s - %d amigo(s) em comum\n", name, suggestion.getMutualFriends()));
+        }
+        JOptionPane.showMessageDialog(mainFrame, text.toString(), "Sugestões", JOptionPane.INFORMATION_MESSAGE);
+    }
+    
     private JPanel createReceivedRequestsPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(new EmptyBorder(20, 20, 20, 20));
@@ -1005,6 +1100,45 @@ public class SocialAppSwing {
         }
     }
     
+    private void searchUsers(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            refreshUsersList();
+            return;
+        }
+        
+        userListModel.clear();
+        UUID viewerId = currentUser != null ? currentUser.getId() : null;
+        List<User> users = userController.searchUsers(viewerId, query, FeedController.DEFAULT_PAGE_SIZE);
+        
+        if (users.isEmpty()) {
+            userListModel.addElement("Nenhum usuário encontrado para: " + query);
+        }
+        for (User user : users) {
+            String display = String.format("%s (%s) - %s%s", 
+                user.getName(), 
+                user.getEmail(), 
+                user.getPrivacy(),
+                describeConnection(user));
+            userListModel.addElement(display);
+        }
+    }
+    
+    private String describeConnection(User user) {
+        if (currentUser == null || currentUser.getId().equals(user.getId())) {
+            return "";
+        }
+        int degrees = friendController.getDegreesOfSeparation(currentUser.getId(), user.getId(), FriendController.MAX_SEPARATION_DEPTH);
+        if (degrees == 1) {
+            return " | Amigo";
+        } else if (degrees == 2) {
+            int mutual = friendController.getMutualFriends(currentUser.getId(), user.getId()).size();
+            return String.format(" | %d amigo(s) em comum", mutual);
+        } else if (degrees > 2) {
+            return String.format(" | Conectado via %d pessoas", degrees - 1);
+        }
+        return "";
+    }
+    
     private void refreshPostsList() {
         postListModel.clear();
         List<Post> posts = postController.getAllPosts();
@@ -1109,10 +1243,18 @@ public class SocialAppSwing {
         thisWeekButton.setOpaque(true);
         thisWeekButton.addActionListener(e -> showThisWeekFeed());
 
+        JButton searchPostsButton = new JButton("🔍 Buscar Posts");
+        searchPostsButton.setFont(FONT_BUTTON);
+        searchPostsButton.setBackground(ACCENT_COLOR);
+        searchPostsButton.setForeground(Color.WHITE);
+        searchPostsButton.setOpaque(true);
+        searchPostsButton.addActionListener(e -> showPostSearch());
+
         controlPanel.add(refreshButton);
         controlPanel.add(mostLikedButton);
         controlPanel.add(todayButton);
         controlPanel.add(thisWeekButton);
+        controlPanel.add(searchPostsButton);
 
         JList<String> feedList = new JList<>();
         feedList.setBackground(DARK_BG);
@@ -1144,14 +1286,24 @@ public class SocialAppSwing {
         viewDetailsButton.setOpaque(true);
         viewDetailsButton.addActionListener(e -> viewPostDetails(feedList));
 
+        JButton loadMoreButton = new JButton("⬇️ Carregar Mais");
+        loadMoreButton.setFont(FONT_BUTTON);
+        loadMoreButton.setBackground(ACCENT_COLOR);
+        loadMoreButton.setForeground(Color.WHITE);
+        loadMoreButton.setOpaque(true);
+        loadMoreButton.setEnabled(false);
+        loadMoreButton.addActionListener(e -> loadMoreMainFeed());
+
         actionPanel.add(likeButton);
         actionPanel.add(viewDetailsButton);
+        actionPanel.add(loadMoreButton);
 
         panel.add(controlPanel, BorderLayout.NORTH);
         panel.add(scrollPane, BorderLayout.CENTER);
         panel.add(actionPanel, BorderLayout.SOUTH);
 
         this.feedList = feedList;
+        this.loadMoreFeedButton = loadMoreButton;
 
         return panel;
     }
@@ -1352,13 +1504,7 @@ public class SocialAppSwing {
     }
     
     private User findUserByCredentials(String email, String password) {
-        List<User> users = userController.getAllUsers();
-        for (User user : users) {
-            if (user.getEmail().equals(email) && user.getPassword().equals(password)) {
-                return user;
-            }
-        }
-        return null;
+        return userController.authenticate(email, password);
     }
     
     private JPanel createGroupsPanel() {
@@ -2659,7 +2805,7 @@ public class SocialAppSwing {
     
     private void showSearchMessagesDialog(UUID groupId) {
         String searchTerm = JOptionPane.showInputDialog(mainFrame, 
-            "Digite o termo para buscar nas mensagens:", 
+            "Digite o termo para buscar nas mensagens\n(use termo* para prefixo e \"aspas\" para frase):", 
             "Buscar Mensagens", 
             JOptionPane.QUESTION_MESSAGE);
         
@@ -3205,23 +3351,11 @@ public class SocialAppSwing {
     }
     
     private User findUserById(UUID userId) {
-        List<User> users = userController.getAllUsers();
-        for (User user : users) {
-            if (user.getId().equals(userId)) {
-                return user;
-            }
-        }
-        return null;
+        return userController.getUserById(userId);
     }
     
     private User findUserByName(String name) {
-        List<User> users = userController.getAllUsers();
-        for (User user : users) {
-            if (user.getName().equals(name)) {
-                return user;
-            }
-        }
-        return null;
+        return userController.getUserByName(name);
     }
 
     private void refreshMainFeed() {
@@ -3230,21 +3364,41 @@ public class SocialAppSwing {
             return;
         }
         
-        List<FeedController.FeedPost> feedPosts = feedService.getFriendsFeedWithAuthorInfo(currentUser.getId());
+        FeedController.FeedPage page = feedService.getFriendsFeedPage(currentUser.getId(), FeedController.DEFAULT_PAGE_SIZE, null);
         DefaultListModel<String> model = new DefaultListModel<>();
         
-        if (feedPosts.isEmpty()) {
+        if (page.getPosts().isEmpty()) {
             model.addElement("Nenhum post encontrado no seu feed.");
             model.addElement("Adicione alguns amigos para ver seus posts!");
         } else {
-            for (FeedController.FeedPost feedPost : feedPosts) {
+            for (FeedController.FeedPost feedPost : page.getPosts()) {
                 model.addElement(feedPost.getDisplayText());
             }
         }
         
+        mainFeedModel = model;
+        mainFeedCursor = page.getNextCursor();
         if (feedList != null) {
             feedList.setModel(model);
         }
+        if (loadMoreFeedButton != null) {
+            loadMoreFeedButton.setEnabled(page.hasMore());
+        }
+    }
+
+    private void loadMoreMainFeed() {
+        if (currentUser == null || mainFeedCursor == null || feedList == null || feedList.getModel() != mainFeedModel) {
+            // Outra visão do feed está na tela: recomeça pela primeira página
+            refreshMainFeed();
+            return;
+        }
+
+        FeedController.FeedPage page = feedService.getFriendsFeedPage(currentUser.getId(), FeedController.DEFAULT_PAGE_SIZE, mainFeedCursor);
+        for (FeedController.FeedPost feedPost : page.getPosts()) {
+            mainFeedModel.addElement(feedPost.getDisplayText());
+        }
+        mainFeedCursor = page.getNextCursor();
+        loadMoreFeedButton.setEnabled(page.hasMore());
     }
     
     private void showMostLikedFeed() {
@@ -3273,6 +3427,40 @@ public class SocialAppSwing {
         }
     }
     
+    private void showPostSearch() {
+        if (currentUser == null) {
+            JOptionPane.showMessageDialog(mainFrame, "Faça login para buscar posts.", "Aviso", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        String query = JOptionPane.showInputDialog(mainFrame, 
+            "Digite os termos para buscar nos posts:", 
+            "Buscar Posts", 
+            JOptionPane.QUESTION_MESSAGE);
+        if (query == null || query.trim().isEmpty()) {
+            return;
+        }
+
+        List<Post> foundPosts = postController.searchPosts(currentUser.getId(), query, FeedController.DEFAULT_PAGE_SIZE);
+        DefaultListModel<String> model = new DefaultListModel<>();
+        
+        if (foundPosts.isEmpty()) {
+            model.addElement("Nenhum post encontrado para: " + query);
+        } else {
+            for (Post post : foundPosts) {
+                User author = findUserById(post.getUserId());
+                String authorName = author != null ? author.getName() : "Usuário desconhecido";
+                String display = String.format("[%s] %s: %s", 
+                    post.getFormattedDate(), authorName, post.getDisplayContent());
+                model.addElement(display);
+            }
+        }
+        
+        if (feedList != null) {
+            feedList.setModel(model);
+        }
+    }
+    
     private void showTodayFeed() {
         if (currentUser == null) {
             JOptionPane.showMessageDialog(mainFrame, "Faça login para ver o feed.", "Aviso", JOptionPane.WARNING_MESSAGE);